@@ -0,0 +1,293 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.iteration.AsyncQueues;
+import com.ibm.asyncutil.iteration.BoundedAsyncQueue;
+import com.ibm.asyncutil.locks.AsyncLock;
+import com.ibm.asyncutil.locks.AsyncNamedReadWriteLock;
+import com.ibm.asyncutil.locks.AsyncSemaphore;
+import com.ibm.asyncutil.locks.FairAsyncLock;
+import com.ibm.asyncutil.locks.FairAsyncNamedReadWriteLock;
+import com.ibm.asyncutil.locks.FairAsyncSemaphore;
+import com.ibm.asyncutil.util.Either;
+
+/**
+ * An open-loop load generator which measures the wait time of the fair async locks and the buffered
+ * queue at a fixed arrival rate.
+ *
+ * <p>
+ * JMH measures closed-loop throughput: a benchmark thread never issues a new request before the
+ * previous one finished, so a stall delays the requests that would have arrived during it instead
+ * of making them wait, and the tail latency is underreported (coordinated omission). Here each
+ * producer thread follows a fixed schedule of intended start times derived from the target rate,
+ * and every operation records the time from its <i>intended</i> start until it was granted. If a
+ * producer falls behind schedule it issues the late requests back to back, and their recorded
+ * times include how late they were issued.
+ *
+ * <p>
+ * The targets are
+ * <ul>
+ * <li>{@code lock}: {@link FairAsyncLock#acquireLock()}
+ * <li>{@code semaphore}: {@link FairAsyncSemaphore#acquire(long)} of one permit
+ * <li>{@code namedLock}: {@link FairAsyncNamedReadWriteLock#acquireWriteLock(Object)} of a random
+ * name
+ * <li>{@code queue}: {@link AsyncQueues#buffered(int)}, the time from the intended send until a
+ * single consumer thread receives the element
+ * </ul>
+ * A granted operation performs {@code hold} microseconds of busy work on the granting thread before
+ * releasing, which models a critical section run in the acquisition's callback (or the consumer's
+ * work per element).
+ *
+ * <p>
+ * Arguments are given as {@code key=value}:
+ *
+ * <pre>
+ * java -cp asyncutil-benchmarks/target/benchmarks.jar com.ibm.asyncutil.benchmarks.OpenLoopHarness \
+ *     target=lock rate=200000 producers=2 hold=2 duration=30 warmup=5 log=lock.hlog
+ * </pre>
+ *
+ * See {@link #DEFAULTS} for all arguments. The percentile distribution of the measured period (in
+ * microseconds) is printed to standard out, and a histogram per second is written to the
+ * {@code log} file in the HdrHistogram log format, which can be compared between builds with the
+ * HdrHistogram {@code HistogramLogProcessor} or plotted with HistogramLogAnalyzer.
+ */
+public final class OpenLoopHarness {
+  private static final Map<String, String> DEFAULTS = new HashMap<>();
+  static {
+    // lock, semaphore, namedLock or queue
+    DEFAULTS.put("target", "lock");
+    // total arrivals per second over all producers
+    DEFAULTS.put("rate", "10000");
+    DEFAULTS.put("producers", "1");
+    // seconds to run before and during measurement
+    DEFAULTS.put("warmup", "5");
+    DEFAULTS.put("duration", "30");
+    // microseconds of work performed while holding a grant
+    DEFAULTS.put("hold", "1");
+    // semaphore permits, named lock names and queue buffer size
+    DEFAULTS.put("permits", "1");
+    DEFAULTS.put("names", "16");
+    DEFAULTS.put("buffer", "1024");
+    // HdrHistogram log of the measured period, defaults to <target>.hlog
+    DEFAULTS.put("log", "");
+  }
+
+  private OpenLoopHarness() {}
+
+  /**
+   * Issues one operation intended to start at the given time, and records its wait time once it
+   * is granted.
+   */
+  private interface Target {
+    void issue(long intendedNanos);
+
+    default void close() {}
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final Map<String, String> options = new HashMap<>(DEFAULTS);
+    for (final String arg : args) {
+      final int eq = arg.indexOf('=');
+      if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+        throw new IllegalArgumentException(
+            "expected key=value with a key in " + DEFAULTS.keySet() + " but got " + arg);
+      }
+      options.put(arg.substring(0, eq), arg.substring(eq + 1));
+    }
+
+    final String targetName = options.get("target");
+    final long rate = Long.parseLong(options.get("rate"));
+    final int producers = Integer.parseInt(options.get("producers"));
+    final long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+    final long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+    final long holdNanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.get("hold")));
+    final String logFile =
+        options.get("log").isEmpty() ? targetName + ".hlog" : options.get("log");
+    if (producers < 1) {
+      throw new IllegalArgumentException("producers must be positive: " + producers);
+    }
+    // each producer's period is a whole number of nanoseconds, so must be at least 1
+    if (rate < 1 || rate > TimeUnit.SECONDS.toNanos(1) * producers) {
+      throw new IllegalArgumentException(
+          "rate must be between 1 and " + TimeUnit.SECONDS.toNanos(1) * producers + ": " + rate);
+    }
+
+    final Recorder recorder = new Recorder(3);
+    final AtomicLong outstanding = new AtomicLong();
+    final Target target = createTarget(targetName, options, recorder, outstanding, holdNanos);
+
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    final long measureStart = start + warmupNanos;
+    final long end = measureStart + durationNanos;
+    final long period = TimeUnit.SECONDS.toNanos(1) * producers / rate;
+
+    final List<Thread> threads = new ArrayList<>(producers);
+    for (int p = 0; p < producers; p++) {
+      // stagger the producers' schedules evenly across the period
+      final long first = start + p * period / producers;
+      final Thread thread = new Thread(() -> {
+        for (long intended = first; intended < end; intended += period) {
+          long now;
+          while ((now = System.nanoTime()) < intended) {
+            LockSupport.parkNanos(intended - now);
+          }
+          outstanding.incrementAndGet();
+          target.issue(intended);
+        }
+      }, "producer-" + p);
+      thread.setDaemon(true);
+      threads.add(thread);
+    }
+    threads.forEach(Thread::start);
+
+    System.out.printf("target=%s rate=%d/s producers=%d hold=%dus warmup=%ds duration=%ds%n",
+        targetName, rate, producers, TimeUnit.NANOSECONDS.toMicros(holdNanos),
+        TimeUnit.NANOSECONDS.toSeconds(warmupNanos),
+        TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+    sleepUntil(measureStart);
+    // discard everything recorded during warmup
+    Histogram interval = recorder.getIntervalHistogram();
+
+    final Histogram total = new Histogram(3);
+    try (PrintStream log = new PrintStream(logFile)) {
+      final HistogramLogWriter writer = new HistogramLogWriter(log);
+      writer.outputLogFormatVersion();
+      writer.outputComment("[" + String.join(" ", args) + "]");
+      writer.outputStartTime(System.currentTimeMillis());
+      writer.setBaseTime(System.currentTimeMillis());
+      writer.outputLegend();
+
+      for (long next = measureStart + TimeUnit.SECONDS.toNanos(1); next <= end
+          + TimeUnit.SECONDS.toNanos(1); next += TimeUnit.SECONDS.toNanos(1)) {
+        sleepUntil(next);
+        interval = recorder.getIntervalHistogram(interval);
+        writer.outputIntervalHistogram(interval);
+        total.add(interval);
+      }
+
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+      // operations still waiting at the end are recorded when granted
+      final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+        Thread.sleep(10);
+      }
+      interval = recorder.getIntervalHistogram(interval);
+      writer.outputIntervalHistogram(interval);
+      total.add(interval);
+    } catch (final FileNotFoundException e) {
+      throw new IllegalArgumentException("cannot write log " + logFile, e);
+    } finally {
+      target.close();
+    }
+
+    System.out.printf("operations=%d outstanding=%d%n", total.getTotalCount(), outstanding.get());
+    System.out.printf("wait (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n",
+        micros(total.getValueAtPercentile(50)), micros(total.getValueAtPercentile(90)),
+        micros(total.getValueAtPercentile(99)), micros(total.getValueAtPercentile(99.9)),
+        micros(total.getValueAtPercentile(99.99)), micros(total.getMaxValue()));
+    total.outputPercentileDistribution(System.out, 1000.0);
+    System.out.println("interval histograms written to " + logFile);
+  }
+
+  private static Target createTarget(final String name, final Map<String, String> options,
+      final Recorder recorder, final AtomicLong outstanding, final long holdNanos) {
+    switch (name) {
+      case "lock": {
+        final AsyncLock lock = new FairAsyncLock();
+        return intended -> lock.acquireLock().thenAccept(token -> {
+          granted(intended, recorder, outstanding, holdNanos);
+          token.releaseLock();
+        });
+      }
+      case "semaphore": {
+        final AsyncSemaphore semaphore =
+            new FairAsyncSemaphore(Long.parseLong(options.get("permits")));
+        return intended -> semaphore.acquire(1).thenRun(() -> {
+          granted(intended, recorder, outstanding, holdNanos);
+          semaphore.release(1);
+        });
+      }
+      case "namedLock": {
+        final AsyncNamedReadWriteLock<Integer> lock = new FairAsyncNamedReadWriteLock<>();
+        final int names = Integer.parseInt(options.get("names"));
+        return intended -> lock.acquireWriteLock(ThreadLocalRandom.current().nextInt(names))
+            .thenAccept(token -> {
+              granted(intended, recorder, outstanding, holdNanos);
+              token.releaseLock();
+            });
+      }
+      case "queue": {
+        final BoundedAsyncQueue<Long> queue =
+            AsyncQueues.buffered(Integer.parseInt(options.get("buffer")));
+        final Thread consumer = new Thread(() -> {
+          Either<End, Long> next;
+          while ((next = queue.nextStage().toCompletableFuture().join()).isRight()) {
+            granted(next.right().get(), recorder, outstanding, holdNanos);
+          }
+        }, "consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+        return new Target() {
+          @Override
+          public void issue(final long intendedNanos) {
+            queue.send(intendedNanos);
+          }
+
+          @Override
+          public void close() {
+            queue.terminate();
+          }
+        };
+      }
+      default:
+        throw new IllegalArgumentException("unknown target " + name);
+    }
+  }
+
+  private static void granted(final long intendedNanos, final Recorder recorder,
+      final AtomicLong outstanding, final long holdNanos) {
+    final long now = System.nanoTime();
+    recorder.recordValue(now - intendedNanos);
+    outstanding.decrementAndGet();
+    // busy work while holding the grant
+    final long holdUntil = now + holdNanos;
+    while (System.nanoTime() < holdUntil) {
+      // spin
+    }
+  }
+
+  private static void sleepUntil(final long deadlineNanos) throws InterruptedException {
+    long remaining;
+    while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+      TimeUnit.NANOSECONDS.sleep(remaining);
+    }
+  }
+
+  private static double micros(final long nanos) {
+    return nanos / 1000.0;
+  }
+}
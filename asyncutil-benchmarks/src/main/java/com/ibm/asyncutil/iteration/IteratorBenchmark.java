@@ -0,0 +1,296 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.util.Combinators;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Per-element throughput of typical {@link AsyncIterator} pipelines over already available
+ * sources.
+ *
+ * <p>
+ * Each invocation pushes {@link #ELEMENTS} elements through a pipeline to a terminal operation, and
+ * scores are reported per element. Running with {@code -prof gc} reports the allocation per
+ * element in {@code gc.alloc.rate.norm}, which is the main cost of these pipelines: each hop
+ * typically allocates at least one stage and one {@link com.ibm.asyncutil.util.Either}. The
+ * {@link AsyncLongIterator} benchmarks run the same pipelines without boxing, and the
+ * {@link java.util.stream.Stream} benchmarks provide a synchronous lower bound for them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(IteratorBenchmark.ELEMENTS)
+public class IteratorBenchmark {
+  static final int ELEMENTS = 1_000_000;
+
+  /** the number of source iterators for concat, and the size of inner iterators for flatten */
+  private static final int FANOUT = 100;
+
+  @Param({"64"})
+  public int batchSize;
+
+  private List<Long> list;
+
+  @Setup
+  public void setup() {
+    this.list = new ArrayList<>(ELEMENTS);
+    for (long i = 0; i < ELEMENTS; i++) {
+      this.list.add(i);
+    }
+  }
+
+  /**
+   * The eager operators are measured with a configurable number of stages executed ahead of the
+   * consumer.
+   */
+  @State(Scope.Benchmark)
+  public static class AheadState {
+    @Param({"1", "16"})
+    public int executeAhead;
+  }
+
+  @Benchmark
+  public long rangeFold() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public List<Long> fromIteratorCollect() {
+    return AsyncIterator.fromIterator(this.list.iterator())
+        .collect(Collectors.toList())
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long thenApplyFilterFold() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenApply(l -> l * 3)
+        .filter(l -> (l & 1) == 0)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long longRangeSum() {
+    return AsyncLongIterator.range(0, ELEMENTS)
+        .sum()
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long longMapFilterSum() {
+    return AsyncLongIterator.range(0, ELEMENTS)
+        .map(l -> l * 3)
+        .filter(l -> (l & 1) == 0)
+        .sum()
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long thenComposeFold() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenCompose(l -> StageSupport.completedStage(l + 1))
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long pipeline() {
+    return AsyncIterator.fromIterator(this.list.iterator())
+        .thenApply(l -> l * 3)
+        .filter(l -> (l & 1) == 0)
+        .thenCompose(l -> StageSupport.completedStage(l + 1))
+        .batch(Collectors.toList(), this.batchSize)
+        .fold(0L, (acc, batch) -> acc + batch.size())
+        .toCompletableFuture()
+        .join();
+  }
+
+  /** a moving sum over the latest batchSize elements, advanced by every element */
+  @Benchmark
+  public long slidingWindow() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .window(this.batchSize, 1, LongSum::new)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long parallelFold(final ParallelState state) {
+    return AsyncIterator.fromIterator(this.list.iterator())
+        .fold(0L, (acc, l) -> acc + mix(l), Long::sum, state.parallelism, ForkJoinPool.commonPool())
+        .toCompletableFuture()
+        .join();
+  }
+
+  /**
+   * The parallel fold is measured with an accumulation that is expensive relative to producing an
+   * element, with a configurable number of concurrent accumulations.
+   */
+  @State(Scope.Benchmark)
+  public static class ParallelState {
+    @Param({"1", "4"})
+    public int parallelism;
+  }
+
+  /** a CPU bound transformation, standing in for an expensive accumulation */
+  private static long mix(final long l) {
+    long h = l;
+    for (int i = 0; i < 32; i++) {
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+    }
+    return h;
+  }
+
+  private static final class LongSum implements WindowAggregator<Long, Long> {
+    private long sum;
+
+    @Override
+    public void add(final Long l) {
+      this.sum += l;
+    }
+
+    @Override
+    public void remove(final Long l) {
+      this.sum -= l;
+    }
+
+    @Override
+    public Long result() {
+      return this.sum;
+    }
+  }
+
+  @Benchmark
+  public long concat() {
+    return AsyncIterator.concat(rangeIterators())
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long merge() {
+    return AsyncIterator.merge(rangeIterators())
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  /** merging by hand, forwarding every source into a shared queue */
+  @Benchmark
+  public long queueMerge() {
+    final AsyncQueue<Long> queue = AsyncQueues.unbounded();
+    final List<CompletionStage<Void>> forwarded = new ArrayList<>(FANOUT);
+    for (final AsyncIterator<Long> it : rangeIterators()) {
+      forwarded.add(it.forEach(queue::send));
+    }
+    Combinators.allOf(forwarded).thenRun(queue::terminate);
+    return queue
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  private static List<AsyncIterator<Long>> rangeIterators() {
+    final List<AsyncIterator<Long>> iterators = new ArrayList<>(FANOUT);
+    final int size = ELEMENTS / FANOUT;
+    for (int i = 0; i < FANOUT; i++) {
+      iterators.add(AsyncIterator.range(i * size, (i + 1) * size));
+    }
+    return iterators;
+  }
+
+  @Benchmark
+  public long zipWith() {
+    return AsyncIterator.zipWith(
+        AsyncIterator.range(0, ELEMENTS),
+        AsyncIterator.fromIterator(this.list.iterator()),
+        (a, b) -> a + b)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long thenComposeAhead(final AheadState state) {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenComposeAhead(l -> StageSupport.completedStage(l + 1), state.executeAhead)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long thenComposeAheadUnordered(final AheadState state) {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenComposeAheadUnordered(l -> StageSupport.completedStage(l + 1), state.executeAhead)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long thenFlattenAhead(final AheadState state) {
+    return AsyncIterator.range(0, ELEMENTS / FANOUT)
+        .thenFlattenAhead(
+            i -> StageSupport.completedStage(AsyncIterator.range(i * FANOUT, (i + 1) * FANOUT)),
+            state.executeAhead)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long streamFold() {
+    return LongStream.range(0, ELEMENTS).boxed().reduce(0L, (acc, l) -> acc + l);
+  }
+
+  @Benchmark
+  public long streamPipeline() {
+    return this.list.stream()
+        .map(l -> l * 3)
+        .filter(l -> (l & 1) == 0)
+        .map(l -> l + 1)
+        .count();
+  }
+}
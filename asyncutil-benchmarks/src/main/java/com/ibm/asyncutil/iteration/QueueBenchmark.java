@@ -0,0 +1,243 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.Either;
+
+/**
+ * Fan-in throughput of the {@link AsyncQueues} with several producers and a single consumer,
+ * compared with {@link ConcurrentLinkedQueue} and {@link ArrayBlockingQueue}.
+ *
+ * <p>
+ * Each invocation transfers {@link #ELEMENTS} elements from {@code producers} threads to the
+ * benchmark thread, and scores are reported per element. Producers on a {@link BoundedAsyncQueue}
+ * wait for each send to be accepted before sending the next element. The consumer drains the queue
+ * with {@link AsyncIterator#nextStage()} (waiting on each stage), by spinning on
+ * {@link AsyncQueue#poll()}, or with {@link AsyncIterator#consume()}. Running with {@code -prof gc}
+ * reports the allocation per element in {@code gc.alloc.rate.norm}.
+ *
+ * <p>
+ * See {@link QueueLatencyBenchmark} for the latency of individual sends.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(QueueBenchmark.ELEMENTS)
+public class QueueBenchmark {
+  static final int ELEMENTS = 100_000;
+
+  @Param({"1", "2", "4", "8"})
+  public int producers;
+
+  @Param({"1024"})
+  public int bufferSize;
+
+  private ExecutorService executor;
+
+  @Setup
+  public void setup() {
+    this.executor = Executors.newFixedThreadPool(this.producers);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * The async queue under test, created fresh for every invocation.
+   */
+  @State(Scope.Benchmark)
+  public static class QueueState {
+    @Param({"unbounded", "bounded", "buffered"})
+    public String queue;
+
+    Queue<Long> q;
+
+    @Setup(Level.Invocation)
+    public void setup(final QueueBenchmark benchmark) {
+      this.q = Queue.create(this.queue, benchmark.bufferSize);
+    }
+  }
+
+  /**
+   * Uniform access to the different flavors of async queue, so that producers and consumers can be
+   * shared between them.
+   */
+  static final class Queue<T> {
+    final AsyncIterator<T> iterator;
+    final Consumer<T> sender;
+    final Runnable terminator;
+    final Supplier<Optional<T>> poller;
+
+    private Queue(final AsyncIterator<T> iterator, final Consumer<T> sender,
+        final Runnable terminator, final Supplier<Optional<T>> poller) {
+      this.iterator = iterator;
+      this.sender = sender;
+      this.terminator = terminator;
+      this.poller = poller;
+    }
+
+    static <T> Queue<T> create(final String kind, final int bufferSize) {
+      switch (kind) {
+        case "unbounded": {
+          final AsyncQueue<T> q = AsyncQueues.unbounded();
+          return new Queue<>(q, q::send, q::terminate, q::poll);
+        }
+        case "bounded":
+          return bounded(AsyncQueues.bounded());
+        case "buffered":
+          return bounded(AsyncQueues.buffered(bufferSize));
+        default:
+          throw new IllegalArgumentException(kind);
+      }
+    }
+
+    private static <T> Queue<T> bounded(final BoundedAsyncQueue<T> q) {
+      return new Queue<>(q, t -> q.send(t).toCompletableFuture().join(), q::terminate, q::poll);
+    }
+  }
+
+  /**
+   * Runs the producers on the executor, the last producer to finish runs {@code terminator}.
+   */
+  private List<Future<?>> produce(final Consumer<Long> sender, final Runnable terminator) {
+    final int perProducer = ELEMENTS / this.producers;
+    final AtomicInteger remaining = new AtomicInteger(this.producers);
+    final List<Future<?>> futures = new ArrayList<>(this.producers);
+    for (int p = 0; p < this.producers; p++) {
+      final long start = (long) p * perProducer;
+      final long end = p == this.producers - 1 ? ELEMENTS : start + perProducer;
+      futures.add(this.executor.submit(() -> {
+        for (long i = start; i < end; i++) {
+          sender.accept(i);
+        }
+        if (remaining.decrementAndGet() == 0) {
+          terminator.run();
+        }
+      }));
+    }
+    return futures;
+  }
+
+  private static void await(final List<Future<?>> futures) throws Exception {
+    for (final Future<?> f : futures) {
+      f.get();
+    }
+  }
+
+  @Benchmark
+  public long nextStage(final QueueState state) throws Exception {
+    final Queue<Long> q = state.q;
+    final List<Future<?>> futures = produce(q.sender, q.terminator);
+    long sum = 0;
+    Either<End, Long> next;
+    while ((next = q.iterator.nextStage().toCompletableFuture().join()).isRight()) {
+      sum += next.right().get();
+    }
+    await(futures);
+    return sum;
+  }
+
+  @Benchmark
+  public long poll(final QueueState state) throws Exception {
+    final Queue<Long> q = state.q;
+    final List<Future<?>> futures = produce(q.sender, () -> {
+    });
+    long sum = 0;
+    for (int received = 0; received < ELEMENTS;) {
+      final Optional<Long> next = q.poller.get();
+      if (next.isPresent()) {
+        sum += next.get();
+        received++;
+      } else {
+        Thread.yield();
+      }
+    }
+    await(futures);
+    q.terminator.run();
+    return sum;
+  }
+
+  @Benchmark
+  public void consume(final QueueState state) throws Exception {
+    final Queue<Long> q = state.q;
+    final List<Future<?>> futures = produce(q.sender, q.terminator);
+    q.iterator.consume().toCompletableFuture().join();
+    await(futures);
+  }
+
+  @Benchmark
+  public long concurrentLinkedQueue() throws Exception {
+    final ConcurrentLinkedQueue<Long> q = new ConcurrentLinkedQueue<>();
+    final List<Future<?>> futures = produce(q::add, () -> {
+    });
+    long sum = 0;
+    for (int received = 0; received < ELEMENTS;) {
+      final Long next = q.poll();
+      if (next != null) {
+        sum += next;
+        received++;
+      } else {
+        Thread.yield();
+      }
+    }
+    await(futures);
+    return sum;
+  }
+
+  @Benchmark
+  public long arrayBlockingQueue() throws Exception {
+    final ArrayBlockingQueue<Long> q = new ArrayBlockingQueue<>(this.bufferSize);
+    final List<Future<?>> futures = produce(l -> {
+      try {
+        q.put(l);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }, () -> {
+    });
+    long sum = 0;
+    for (int received = 0; received < ELEMENTS; received++) {
+      sum += q.take();
+    }
+    await(futures);
+    return sum;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.Either;
+
+/**
+ * End-to-end latency of an element sent through the {@link AsyncQueues}, compared with
+ * {@link ConcurrentLinkedQueue} and {@link ArrayBlockingQueue}.
+ *
+ * <p>
+ * Every benchmark thread is a producer which sends a {@link CompletableFuture} into a shared queue
+ * and waits for it to be completed by a dedicated consumer thread, so each sample covers the send,
+ * the hand-off to the consumer and the notification back to the producer. The async queues are
+ * drained by waiting on {@link AsyncIterator#nextStage()}, the {@link ArrayBlockingQueue} with
+ * {@link ArrayBlockingQueue#take()} and the {@link ConcurrentLinkedQueue} by spinning. The number of
+ * producers is set by the nested subclasses {@link Producers1}, {@link Producers2},
+ * {@link Producers4} and {@link Producers8}; the sampled percentiles are reported by JMH.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class QueueLatencyBenchmark {
+
+  @Param({"unbounded", "bounded", "buffered", "ConcurrentLinkedQueue", "ArrayBlockingQueue"})
+  public String queue;
+
+  @Param({"1024"})
+  public int bufferSize;
+
+  private Consumer<CompletableFuture<Void>> sender;
+  private Runnable stopper;
+  private Thread consumer;
+
+  @Setup
+  public void setup() {
+    switch (this.queue) {
+      case "ConcurrentLinkedQueue": {
+        final ConcurrentLinkedQueue<CompletableFuture<Void>> q = new ConcurrentLinkedQueue<>();
+        this.sender = q::add;
+        this.stopper = () -> this.consumer.interrupt();
+        this.consumer = new Thread(() -> {
+          while (!Thread.currentThread().isInterrupted()) {
+            final CompletableFuture<Void> f = q.poll();
+            if (f != null) {
+              f.complete(null);
+            }
+          }
+        });
+        break;
+      }
+      case "ArrayBlockingQueue": {
+        final ArrayBlockingQueue<CompletableFuture<Void>> q =
+            new ArrayBlockingQueue<>(this.bufferSize);
+        this.sender = f -> {
+          try {
+            q.put(f);
+          } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        };
+        this.stopper = () -> this.consumer.interrupt();
+        this.consumer = new Thread(() -> {
+          try {
+            while (true) {
+              q.take().complete(null);
+            }
+          } catch (final InterruptedException e) {
+            // stopped
+          }
+        });
+        break;
+      }
+      default: {
+        final QueueBenchmark.Queue<CompletableFuture<Void>> q =
+            QueueBenchmark.Queue.create(this.queue, this.bufferSize);
+        this.sender = q.sender;
+        this.stopper = q.terminator;
+        this.consumer = new Thread(() -> {
+          Either<End, CompletableFuture<Void>> next;
+          while ((next = q.iterator.nextStage().toCompletableFuture().join()).isRight()) {
+            next.right().get().complete(null);
+          }
+        });
+        break;
+      }
+    }
+    this.consumer.setDaemon(true);
+    this.consumer.start();
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    this.stopper.run();
+    this.consumer.join();
+  }
+
+  @Benchmark
+  public void sendAndReceive() {
+    final CompletableFuture<Void> f = new CompletableFuture<>();
+    this.sender.accept(f);
+    f.join();
+  }
+
+  @Threads(1)
+  public static class Producers1 extends QueueLatencyBenchmark {
+  }
+
+  @Threads(2)
+  public static class Producers2 extends QueueLatencyBenchmark {
+  }
+
+  @Threads(4)
+  public static class Producers4 extends QueueLatencyBenchmark {
+  }
+
+  @Threads(8)
+  public static class Producers8 extends QueueLatencyBenchmark {
+  }
+}
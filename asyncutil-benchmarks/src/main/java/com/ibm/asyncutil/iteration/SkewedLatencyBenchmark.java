@@ -0,0 +1,96 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to map {@link #ELEMENTS} elements through simulated remote calls with skewed latencies, with
+ * {@link AsyncIterator#thenComposeAhead(java.util.function.Function, int)} (which emits results
+ * in order) and {@link AsyncIterator#thenComposeAheadUnordered(java.util.function.Function, int)}
+ * (which emits them as they complete).
+ *
+ * <p>
+ * Every {@code slowEvery}th call takes {@code slowMicros}, and the others take {@code fastMicros}.
+ * With ordered results a slow call blocks the consumer from the results behind it, so the number
+ * of calls in flight drops until it completes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SkewedLatencyBenchmark {
+  static final int ELEMENTS = 1000;
+
+  @Param({"16"})
+  public int executeAhead;
+
+  @Param({"20"})
+  public int slowEvery;
+
+  @Param({"100"})
+  public long fastMicros;
+
+  @Param({"5000"})
+  public long slowMicros;
+
+  private ScheduledExecutorService scheduler;
+
+  @Setup
+  public void setup() {
+    this.scheduler = Executors.newScheduledThreadPool(4);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.scheduler.shutdownNow();
+  }
+
+  private CompletionStage<Long> call(final long l) {
+    final CompletableFuture<Long> f = new CompletableFuture<>();
+    final long delay = l % this.slowEvery == 0 ? this.slowMicros : this.fastMicros;
+    this.scheduler.schedule(() -> f.complete(l), delay, TimeUnit.MICROSECONDS);
+    return f;
+  }
+
+  @Benchmark
+  public long ordered() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenComposeAhead(this::call, this.executeAhead)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  public long unordered() {
+    return AsyncIterator.range(0, ELEMENTS)
+        .thenComposeAheadUnordered(this::call, this.executeAhead)
+        .fold(0L, (acc, l) -> acc + l)
+        .toCompletableFuture()
+        .join();
+  }
+}
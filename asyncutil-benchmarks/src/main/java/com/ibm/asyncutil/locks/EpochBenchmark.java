@@ -0,0 +1,101 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.locks.AsyncEpoch.EpochToken;
+
+/**
+ * Throughput of {@link AsyncEpoch#enter()} and {@link EpochToken#close()} on the single counter
+ * {@link AsyncEpochImpl} and the striped {@link StripedEpoch}, by number of threads entering the
+ * same epoch.
+ *
+ * <p>
+ * The {@code epoch} parameter selects the implementation: {@code uncontended} for
+ * {@link AsyncEpoch#newUncontendedEpoch()}, {@code striped} for {@link AsyncEpoch#newEpoch()} (which
+ * grows up to one cell per available processor), and {@code striped-N} for a {@link StripedEpoch}
+ * limited to {@code N} cells. The level of contention is set by the nested subclasses
+ * {@link Uncontended}, {@link Threads2}, {@link Threads4}, {@link Threads8} and {@link ThreadsMax}.
+ *
+ * <p>
+ * See {@link EpochLifecycleBenchmark} for the cost of creating and terminating an epoch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class EpochBenchmark {
+
+  @Param({"uncontended", "striped", "striped-2", "striped-8"})
+  public String epoch;
+
+  private AsyncEpoch asyncEpoch;
+
+  @Setup
+  public void setup() {
+    this.asyncEpoch = factory(this.epoch).get();
+  }
+
+  /**
+   * @param kind {@code uncontended}, {@code striped} or {@code striped-N}
+   * @return a factory of epochs of the given kind
+   */
+  static Supplier<AsyncEpoch> factory(final String kind) {
+    if (kind.equals("uncontended")) {
+      return AsyncEpoch::newUncontendedEpoch;
+    } else if (kind.equals("striped")) {
+      return AsyncEpoch::newEpoch;
+    } else if (kind.startsWith("striped-")) {
+      final int maxCells = Integer.parseInt(kind.substring("striped-".length()));
+      return () -> new StripedEpoch(maxCells);
+    }
+    throw new IllegalArgumentException(kind);
+  }
+
+  @Benchmark
+  public void enterClose() {
+    final EpochToken token = this.asyncEpoch.enter().get();
+    token.close();
+  }
+
+  @Threads(1)
+  public static class Uncontended extends EpochBenchmark {
+  }
+
+  @Threads(2)
+  public static class Threads2 extends EpochBenchmark {
+  }
+
+  @Threads(4)
+  public static class Threads4 extends EpochBenchmark {
+  }
+
+  @Threads(8)
+  public static class Threads8 extends EpochBenchmark {
+  }
+
+  @Threads(Threads.MAX)
+  public static class ThreadsMax extends EpochBenchmark {
+  }
+}
@@ -0,0 +1,135 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.locks.AsyncEpoch.EpochToken;
+
+/**
+ * Creation and termination costs of the {@link AsyncEpoch} implementations, for applications which
+ * create an epoch per short lived object such as a connection. The {@code epoch} parameter is the
+ * same as in {@link EpochBenchmark}.
+ *
+ * <p>
+ * {@link #create()} should be run with {@code -prof gc}: {@code gc.alloc.rate.norm} is the
+ * footprint of a new epoch. A {@link StripedEpoch} which has seen contention additionally holds up
+ * to one padded cell (about 280 bytes) per available processor, or per cell it was limited to.
+ *
+ * <p>
+ * {@link #terminate(TerminateState)} samples the time from {@link AsyncEpoch#terminate()} until
+ * {@link AsyncEpoch#awaitCompletion()} completes, including closing the {@code open} tokens that
+ * were still held at termination. Before each sample, {@code contenders} threads enter and close
+ * the fresh epoch concurrently so that a striped epoch has grown its cells. That preparation is not
+ * timed, but its allocations are included in the profiler's figures for this benchmark.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EpochLifecycleBenchmark {
+  private static final int CONTENDER_ITERATIONS = 10_000;
+
+  @Param({"uncontended", "striped", "striped-2", "striped-8"})
+  public String epoch;
+
+  private Supplier<AsyncEpoch> factory;
+
+  @Setup
+  public void setup() {
+    this.factory = EpochBenchmark.factory(this.epoch);
+  }
+
+  @State(Scope.Benchmark)
+  public static class TerminateState {
+    @Param({"0", "4"})
+    public int contenders;
+
+    @Param({"0", "16"})
+    public int open;
+
+    AsyncEpoch asyncEpoch;
+    List<EpochToken> tokens;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+      this.executor = Executors.newFixedThreadPool(Math.max(1, this.contenders));
+    }
+
+    @TearDown
+    public void tearDown() {
+      this.executor.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare(final EpochLifecycleBenchmark benchmark) throws Exception {
+      this.asyncEpoch = benchmark.factory.get();
+
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<?>> futures = new ArrayList<>(this.contenders);
+      for (int i = 0; i < this.contenders; i++) {
+        futures.add(this.executor.submit(() -> {
+          start.await();
+          for (int j = 0; j < CONTENDER_ITERATIONS; j++) {
+            this.asyncEpoch.enter().get().close();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (final Future<?> f : futures) {
+        f.get();
+      }
+
+      this.tokens = new ArrayList<>(this.open);
+      for (int i = 0; i < this.open; i++) {
+        this.tokens.add(this.asyncEpoch.enter().get());
+      }
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public AsyncEpoch create() {
+    return this.factory.get();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void terminate(final TerminateState state) {
+    final AsyncEpoch asyncEpoch = state.asyncEpoch;
+    asyncEpoch.terminate();
+    for (final EpochToken token : state.tokens) {
+      token.close();
+    }
+    asyncEpoch.awaitCompletion().toCompletableFuture().join();
+  }
+}
@@ -0,0 +1,352 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.asyncutil.locks.AsyncLock.LockToken;
+import com.ibm.asyncutil.locks.AsyncReadWriteLock.ReadLockToken;
+import com.ibm.asyncutil.locks.AsyncReadWriteLock.WriteLockToken;
+
+/**
+ * Throughput of an acquire/release cycle on the fair async locks, compared with the
+ * {@link java.util.concurrent.locks} primitives they are modeled after.
+ *
+ * <p>
+ * Every benchmark in this class is run at several levels of contention by the nested subclasses:
+ * {@link Uncontended} (a single thread), {@link Threads2}, {@link Threads4}, {@link Threads8} and
+ * {@link ThreadsMax} (one thread per available processor). Async acquisitions which cannot be
+ * satisfied immediately are waited on with {@link java.util.concurrent.CompletableFuture#join()}, so
+ * that each operation covers the full acquire, grant and release path just like the blocking
+ * baselines. Running with {@code -prof gc} reports the allocation per acquire/release in
+ * {@code gc.alloc.rate.norm}.
+ *
+ * <p>
+ * The {@code work} parameter controls the amount of CPU work ({@link Blackhole#consumeCPU(long)
+ * tokens}) performed while the lock is held.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class LockBenchmark {
+
+  @Param({"0", "100"})
+  public int work;
+
+  private FairAsyncLock fairAsyncLock;
+  private Lock reentrantLock;
+  private Lock fairReentrantLock;
+
+  private FairAsyncReadWriteLock fairAsyncReadWriteLock;
+  private ReentrantReadWriteLock reentrantReadWriteLock;
+
+  private FairAsyncStampedLock fairAsyncStampedLock;
+  private StampedLock stampedLock;
+
+  @Setup
+  public void setup() {
+    this.fairAsyncLock = new FairAsyncLock();
+    this.reentrantLock = new ReentrantLock();
+    this.fairReentrantLock = new ReentrantLock(true);
+
+    this.fairAsyncReadWriteLock = new FairAsyncReadWriteLock();
+    this.reentrantReadWriteLock = new ReentrantReadWriteLock(true);
+
+    this.fairAsyncStampedLock = new FairAsyncStampedLock();
+    this.stampedLock = new StampedLock();
+  }
+
+  /**
+   * Semaphores are measured with a configurable number of permits, each operation acquiring and
+   * releasing a single permit.
+   */
+  @State(Scope.Benchmark)
+  public static class SemaphoreState {
+    @Param({"1", "4"})
+    public int permits;
+
+    FairAsyncSemaphore fairAsyncSemaphore;
+    Semaphore semaphore;
+    Semaphore fairSemaphore;
+
+    @Setup
+    public void setup() {
+      this.fairAsyncSemaphore = new FairAsyncSemaphore(this.permits);
+      this.semaphore = new Semaphore(this.permits);
+      this.fairSemaphore = new Semaphore(this.permits, true);
+    }
+  }
+
+  /**
+   * Named locks are measured over a configurable number of distinct names, each thread cycling
+   * through the names in order. The baseline is a map of {@link ReentrantReadWriteLock} which are
+   * never removed.
+   */
+  @State(Scope.Benchmark)
+  public static class NamedLockState {
+    @Param({"1", "64"})
+    public int names;
+
+    FairAsyncNamedReadWriteLock<Integer> fairAsyncNamedReadWriteLock;
+    ConcurrentHashMap<Integer, ReentrantReadWriteLock> lockMap;
+
+    @Setup
+    public void setup() {
+      this.fairAsyncNamedReadWriteLock = new FairAsyncNamedReadWriteLock<>();
+      this.lockMap = new ConcurrentHashMap<>();
+    }
+
+    ReentrantReadWriteLock mapLock(final Integer name) {
+      return this.lockMap.computeIfAbsent(name, ig -> new ReentrantReadWriteLock(true));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class NameCursor {
+    private int next;
+
+    Integer nextName(final NamedLockState state) {
+      final int name = this.next;
+      this.next = name + 1 == state.names ? 0 : name + 1;
+      return name;
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncLock() {
+    final LockToken token = this.fairAsyncLock.acquireLock().toCompletableFuture().join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public void reentrantLock() {
+    this.reentrantLock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      this.reentrantLock.unlock();
+    }
+  }
+
+  @Benchmark
+  public void fairReentrantLock() {
+    this.fairReentrantLock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      this.fairReentrantLock.unlock();
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncReadWriteLockRead() {
+    final ReadLockToken token =
+        this.fairAsyncReadWriteLock.acquireReadLock().toCompletableFuture().join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncReadWriteLockWrite() {
+    final WriteLockToken token =
+        this.fairAsyncReadWriteLock.acquireWriteLock().toCompletableFuture().join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public void reentrantReadWriteLockRead() {
+    final Lock lock = this.reentrantReadWriteLock.readLock();
+    lock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Benchmark
+  public void reentrantReadWriteLockWrite() {
+    final Lock lock = this.reentrantReadWriteLock.writeLock();
+    lock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Benchmark
+  public boolean fairAsyncStampedLockOptimisticRead() {
+    final AsyncStampedLock.Stamp stamp = this.fairAsyncStampedLock.tryOptimisticRead();
+    Blackhole.consumeCPU(this.work);
+    return stamp != null && stamp.validate();
+  }
+
+  @Benchmark
+  public void fairAsyncStampedLockWrite() {
+    final WriteLockToken token =
+        this.fairAsyncStampedLock.acquireWriteLock().toCompletableFuture().join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public boolean stampedLockOptimisticRead() {
+    final long stamp = this.stampedLock.tryOptimisticRead();
+    Blackhole.consumeCPU(this.work);
+    return stamp != 0 && this.stampedLock.validate(stamp);
+  }
+
+  @Benchmark
+  public void stampedLockWrite() {
+    final long stamp = this.stampedLock.writeLock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      this.stampedLock.unlockWrite(stamp);
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncSemaphore(final SemaphoreState state) {
+    state.fairAsyncSemaphore.acquire(1).toCompletableFuture().join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      state.fairAsyncSemaphore.release(1);
+    }
+  }
+
+  @Benchmark
+  public void semaphore(final SemaphoreState state) {
+    state.semaphore.acquireUninterruptibly();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      state.semaphore.release();
+    }
+  }
+
+  @Benchmark
+  public void fairSemaphore(final SemaphoreState state) {
+    state.fairSemaphore.acquireUninterruptibly();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      state.fairSemaphore.release();
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncNamedReadWriteLockRead(final NamedLockState state,
+      final NameCursor cursor) {
+    final ReadLockToken token = state.fairAsyncNamedReadWriteLock
+        .acquireReadLock(cursor.nextName(state))
+        .toCompletableFuture()
+        .join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public void fairAsyncNamedReadWriteLockWrite(final NamedLockState state,
+      final NameCursor cursor) {
+    final WriteLockToken token = state.fairAsyncNamedReadWriteLock
+        .acquireWriteLock(cursor.nextName(state))
+        .toCompletableFuture()
+        .join();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      token.releaseLock();
+    }
+  }
+
+  @Benchmark
+  public void reentrantReadWriteLockMapRead(final NamedLockState state,
+      final NameCursor cursor) {
+    final Lock lock = state.mapLock(cursor.nextName(state)).readLock();
+    lock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Benchmark
+  public void reentrantReadWriteLockMapWrite(final NamedLockState state,
+      final NameCursor cursor) {
+    final Lock lock = state.mapLock(cursor.nextName(state)).writeLock();
+    lock.lock();
+    try {
+      Blackhole.consumeCPU(this.work);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Threads(1)
+  public static class Uncontended extends LockBenchmark {
+  }
+
+  @Threads(2)
+  public static class Threads2 extends LockBenchmark {
+  }
+
+  @Threads(4)
+  public static class Threads4 extends LockBenchmark {
+  }
+
+  @Threads(8)
+  public static class Threads8 extends LockBenchmark {
+  }
+
+  @Threads(Threads.MAX)
+  public static class ThreadsMax extends LockBenchmark {
+  }
+}
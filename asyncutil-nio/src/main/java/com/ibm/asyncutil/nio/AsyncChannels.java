@@ -0,0 +1,657 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import com.ibm.asyncutil.iteration.AsyncIterator;
+import com.ibm.asyncutil.iteration.AsyncTrampoline;
+import com.ibm.asyncutil.util.Combinators;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Static methods to use the callback based {@link java.nio.channels.AsynchronousChannel} API with
+ * {@link CompletionStage CompletionStages} and {@link AsyncIterator AsyncIterators}.
+ *
+ * <p>
+ * Besides stage returning versions of single channel operations, this class provides sources
+ * which {@link #read(AsynchronousFileChannel, long, int, int) read} a channel as an
+ * {@code AsyncIterator<ByteBuffer>} of chunks, and sinks which
+ * {@link #write(AsynchronousFileChannel, long, AsyncIterator, int) write} the buffers of an
+ * {@code AsyncIterator<ByteBuffer>} to a channel. Reads and writes of a file are positional, so
+ * several of them can be outstanding at once; a socket only permits one outstanding read and one
+ * outstanding write, which are issued one after the other.
+ *
+ * <pre>
+ * {@code
+ * // copy a file to a socket, with up to 4 reads of 1MB overlapped
+ * AsyncIterator<ByteBuffer> chunks = AsyncChannels.read(file, 0, 1 << 20, 4);
+ * CompletionStage<Long> copied = AsyncChannels.write(socket, chunks)
+ *     .thenCompose(n -> chunks.close().thenApply(ig -> n));
+ * }
+ * </pre>
+ *
+ * <p>
+ * None of the methods of this class close the channels they are given.
+ */
+public final class AsyncChannels {
+  private AsyncChannels() {}
+
+  /**
+   * Accepts a connection on {@code server}.
+   *
+   * @param server the channel to accept a connection on
+   * @return a {@link CompletionStage} of the channel of the accepted connection
+   * @see AsynchronousServerSocketChannel#accept(Object, CompletionHandler)
+   */
+  public static CompletionStage<AsynchronousSocketChannel> accept(
+      final AsynchronousServerSocketChannel server) {
+    final StageHandler<AsynchronousSocketChannel> handler = new StageHandler<>();
+    try {
+      server.accept(null, handler);
+    } catch (final RuntimeException e) {
+      handler.failed(e, null);
+    }
+    return handler.future;
+  }
+
+  /**
+   * Opens a socket channel and connects it to {@code address}.
+   *
+   * @param address the address to connect to
+   * @return a {@link CompletionStage} of the connected channel
+   */
+  public static CompletionStage<AsynchronousSocketChannel> connect(final SocketAddress address) {
+    final AsynchronousSocketChannel channel;
+    try {
+      channel = AsynchronousSocketChannel.open();
+    } catch (final IOException e) {
+      return StageSupport.exceptionalStage(e);
+    }
+    return StageSupport.thenComposeOrRecover(connect(channel, address), (ig, ex) -> {
+      if (ex != null) {
+        try {
+          channel.close();
+        } catch (final IOException e) {
+          ex.addSuppressed(e);
+        }
+        return StageSupport.exceptionalStage(ex);
+      }
+      return StageSupport.completedStage(channel);
+    });
+  }
+
+  /**
+   * Connects {@code channel} to {@code address}.
+   *
+   * @param channel an unconnected socket channel
+   * @param address the address to connect to
+   * @return a {@link CompletionStage} that completes when the channel is connected
+   * @see AsynchronousSocketChannel#connect(SocketAddress, Object, CompletionHandler)
+   */
+  public static CompletionStage<Void> connect(
+      final AsynchronousSocketChannel channel, final SocketAddress address) {
+    final StageHandler<Void> handler = new StageHandler<>();
+    try {
+      channel.connect(address, null, handler);
+    } catch (final RuntimeException e) {
+      handler.failed(e, null);
+    }
+    return handler.future;
+  }
+
+  /**
+   * Reads from {@code channel} into {@code buffer} starting at {@code position}, until the buffer
+   * is full or the end of the file is reached.
+   *
+   * @param channel the file to read from
+   * @param buffer the buffer to read into, from its position up to its limit
+   * @param position the position in the file to start reading at
+   * @return a {@link CompletionStage} of the number of bytes read, which is less than the buffer's
+   *         remaining bytes only if the end of the file was reached
+   */
+  public static CompletionStage<Integer> readFully(
+      final AsynchronousFileChannel channel, final ByteBuffer buffer, final long position) {
+    final FileTransfer transfer = new FileTransfer(channel, buffer, position, false);
+    transfer.start();
+    return transfer.future;
+  }
+
+  /**
+   * Writes all of the remaining bytes of {@code buffer} to {@code channel} starting at
+   * {@code position}.
+   *
+   * @param channel the file to write to
+   * @param buffer the buffer to write, from its position up to its limit
+   * @param position the position in the file to start writing at
+   * @return a {@link CompletionStage} of the number of bytes written
+   */
+  public static CompletionStage<Integer> writeFully(
+      final AsynchronousFileChannel channel, final ByteBuffer buffer, final long position) {
+    final FileTransfer transfer = new FileTransfer(channel, buffer, position, true);
+    transfer.start();
+    return transfer.future;
+  }
+
+  /**
+   * Reads a sequence of bytes from {@code channel} into {@code buffer}.
+   *
+   * @param channel the socket to read from
+   * @param buffer the buffer to read into
+   * @return a {@link CompletionStage} of the number of bytes read, or -1 if the channel has reached
+   *         end-of-stream
+   * @see AsynchronousSocketChannel#read(ByteBuffer, Object, CompletionHandler)
+   */
+  public static CompletionStage<Integer> read(
+      final AsynchronousSocketChannel channel, final ByteBuffer buffer) {
+    final StageHandler<Integer> handler = new StageHandler<>();
+    try {
+      channel.read(buffer, null, handler);
+    } catch (final RuntimeException e) {
+      handler.failed(e, null);
+    }
+    return handler.future;
+  }
+
+  /**
+   * Writes all of the remaining bytes of {@code buffer} to {@code channel}.
+   *
+   * @param channel the socket to write to
+   * @param buffer the buffer to write, from its position up to its limit
+   * @return a {@link CompletionStage} of the number of bytes written
+   */
+  public static CompletionStage<Integer> writeFully(
+      final AsynchronousSocketChannel channel, final ByteBuffer buffer) {
+    final int length = buffer.remaining();
+    return AsyncTrampoline
+        .asyncWhile(() -> {
+          if (!buffer.hasRemaining()) {
+            return StageSupport.completedStage(false);
+          }
+          final StageHandler<Integer> handler = new StageHandler<>();
+          try {
+            channel.write(buffer, null, handler);
+          } catch (final RuntimeException e) {
+            handler.failed(e, null);
+          }
+          return handler.future.thenApply(ig -> true);
+        })
+        .thenApply(ig -> length);
+  }
+
+  /**
+   * Reads a file as an {@link AsyncIterator} of chunks, starting at {@code position}.
+   *
+   * <p>
+   * Each chunk is a new buffer of {@code chunkSize} bytes, read from the position following the
+   * previous chunk and flipped so that it is ready to be read. Only the last chunk of the file may
+   * be shorter. Up to {@code maxOutstanding} chunks are read concurrently ahead of the consumer, so
+   * that a large file is streamed at the throughput of the device rather than one round trip per
+   * chunk. Since the end of the file is only discovered by reading it, up to
+   * {@code maxOutstanding} reads may be issued past the end.
+   *
+   * <p>
+   * A failed read is emitted as an exceptional stage in place of its chunk, after which reading
+   * continues with the next chunk. The returned iterator must be {@link AsyncIterator#close()
+   * closed}; the stage returned by {@code close} completes once all outstanding reads have
+   * completed. Closing the iterator does not close {@code channel}.
+   *
+   * @param channel the file to read
+   * @param position the position in the file to start reading at
+   * @param chunkSize the size in bytes of the chunks, must be positive
+   * @param maxOutstanding the maximum number of reads issued ahead of the consumer, must be
+   *        positive
+   * @return an {@link AsyncIterator} of the chunks of the file
+   * @throws IllegalArgumentException if {@code chunkSize} or {@code maxOutstanding} is not
+   *         positive, or {@code position} is negative
+   */
+  public static AsyncIterator<ByteBuffer> read(
+      final AsynchronousFileChannel channel,
+      final long position,
+      final int chunkSize,
+      final int maxOutstanding) {
+    return read(channel, position, chunkSize, maxOutstanding, BufferPool.UNPOOLED);
+  }
+
+  /**
+   * Reads a file as an {@link AsyncIterator} of chunks leased from {@code pool}, starting at
+   * {@code position}.
+   *
+   * <p>
+   * This behaves like {@link #read(AsynchronousFileChannel, long, int, int)}, except that each
+   * chunk is {@link BufferPool#lease(int) leased} from {@code pool} instead of being allocated. The
+   * consumer should {@link BufferPool#release(ByteBuffer) release} each chunk once it is done with
+   * it, for instance by writing it with {@link #write(AsynchronousFileChannel, long, AsyncIterator,
+   * int, BufferPool)}. Chunks read past the end of the file, and chunks still outstanding when the
+   * iterator is closed, are released by the iterator.
+   *
+   * @param channel the file to read
+   * @param position the position in the file to start reading at
+   * @param chunkSize the size in bytes of the chunks, must be positive
+   * @param maxOutstanding the maximum number of reads issued ahead of the consumer, must be
+   *        positive
+   * @param pool the pool to lease the chunks from
+   * @return an {@link AsyncIterator} of the chunks of the file
+   * @throws IllegalArgumentException if {@code chunkSize} or {@code maxOutstanding} is not
+   *         positive, or {@code position} is negative
+   */
+  public static AsyncIterator<ByteBuffer> read(
+      final AsynchronousFileChannel channel,
+      final long position,
+      final int chunkSize,
+      final int maxOutstanding,
+      final BufferPool pool) {
+    if (position < 0) {
+      throw new IllegalArgumentException("position must not be negative: " + position);
+    }
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    if (maxOutstanding < 1) {
+      throw new IllegalArgumentException("maxOutstanding must be positive: " + maxOutstanding);
+    }
+    return new FileReadAsyncIterator(
+        Objects.requireNonNull(channel), position, chunkSize, maxOutstanding,
+        Objects.requireNonNull(pool));
+  }
+
+  /**
+   * Reads a socket as an {@link AsyncIterator} of chunks, until the socket reaches end-of-stream.
+   *
+   * <p>
+   * Each chunk is a new buffer of up to {@code chunkSize} bytes, holding whatever a single read of
+   * the socket returned, flipped so that it is ready to be read. A socket only permits one
+   * outstanding read, so the next read is only issued when the consumer requests the next chunk.
+   * The returned iterator should be {@link AsyncIterator#close() closed} after use, which does not
+   * close {@code channel}.
+   *
+   * @param channel the socket to read
+   * @param chunkSize the maximum size in bytes of the chunks, must be positive
+   * @return an {@link AsyncIterator} of the bytes read from the socket
+   * @throws IllegalArgumentException if {@code chunkSize} is not positive
+   */
+  public static AsyncIterator<ByteBuffer> read(
+      final AsynchronousSocketChannel channel, final int chunkSize) {
+    return read(channel, chunkSize, BufferPool.UNPOOLED);
+  }
+
+  /**
+   * Reads a socket as an {@link AsyncIterator} of chunks leased from {@code pool}, until the socket
+   * reaches end-of-stream.
+   *
+   * <p>
+   * This behaves like {@link #read(AsynchronousSocketChannel, int)}, except that each chunk is
+   * {@link BufferPool#lease(int) leased} from {@code pool} instead of being allocated. The consumer
+   * should {@link BufferPool#release(ByteBuffer) release} each chunk once it is done with it.
+   *
+   * @param channel the socket to read
+   * @param chunkSize the maximum size in bytes of the chunks, must be positive
+   * @param pool the pool to lease the chunks from
+   * @return an {@link AsyncIterator} of the bytes read from the socket
+   * @throws IllegalArgumentException if {@code chunkSize} is not positive
+   */
+  public static AsyncIterator<ByteBuffer> read(
+      final AsynchronousSocketChannel channel, final int chunkSize, final BufferPool pool) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    Objects.requireNonNull(channel);
+    Objects.requireNonNull(pool);
+    return new AsyncIterator<ByteBuffer>() {
+      @Override
+      public CompletionStage<Either<End, ByteBuffer>> nextStage() {
+        final ByteBuffer buffer = pool.lease(chunkSize);
+        return read(channel, buffer)
+            .whenComplete((n, ex) -> {
+              if (ex != null) {
+                pool.release(buffer);
+              }
+            })
+            .thenApply(n -> {
+              if (n < 0) {
+                pool.release(buffer);
+                return End.end();
+              }
+              buffer.flip();
+              return Either.right(buffer);
+            });
+      }
+    };
+  }
+
+  /**
+   * Writes the buffers of {@code buffers} to a file, one after the other, starting at
+   * {@code position}.
+   *
+   * <p>
+   * The remaining bytes of each buffer are written at the position following the previous buffer.
+   * Up to {@code maxOutstanding} writes are issued concurrently, so the next buffers are requested
+   * from {@code buffers} while earlier writes are in progress; a buffer must therefore not be
+   * modified after it has been emitted by {@code buffers}.
+   *
+   * <p>
+   * If {@code buffers} emits an exceptional stage or a write fails, no further buffers are
+   * requested, and the returned stage completes exceptionally once the outstanding writes have
+   * completed. {@code buffers} is not closed.
+   *
+   * <p>
+   * This is a <i>terminal method</i> of {@code buffers}.
+   *
+   * @param channel the file to write to
+   * @param position the position in the file to write the first buffer at
+   * @param buffers the buffers to write
+   * @param maxOutstanding the maximum number of concurrent writes, must be positive
+   * @return a {@link CompletionStage} of the total number of bytes written, which completes once
+   *         {@code buffers} has ended and all writes have completed
+   * @throws IllegalArgumentException if {@code maxOutstanding} is not positive, or
+   *         {@code position} is negative
+   */
+  public static CompletionStage<Long> write(
+      final AsynchronousFileChannel channel,
+      final long position,
+      final AsyncIterator<? extends ByteBuffer> buffers,
+      final int maxOutstanding) {
+    return write(channel, position, buffers, maxOutstanding, BufferPool.UNPOOLED);
+  }
+
+  /**
+   * Writes the buffers of {@code buffers} to a file, one after the other, starting at
+   * {@code position}, and releases each buffer to {@code pool} once it has been written.
+   *
+   * <p>
+   * This behaves like {@link #write(AsynchronousFileChannel, long, AsyncIterator, int)}, except
+   * that every buffer emitted by {@code buffers} is {@link BufferPool#release(ByteBuffer) released}
+   * to {@code pool} when its write completes, whether or not the write succeeded.
+   *
+   * @param channel the file to write to
+   * @param position the position in the file to write the first buffer at
+   * @param buffers the buffers to write, which are released to {@code pool}
+   * @param maxOutstanding the maximum number of concurrent writes, must be positive
+   * @param pool the pool to release the written buffers to
+   * @return a {@link CompletionStage} of the total number of bytes written, which completes once
+   *         {@code buffers} has ended and all writes have completed
+   * @throws IllegalArgumentException if {@code maxOutstanding} is not positive, or
+   *         {@code position} is negative
+   */
+  public static CompletionStage<Long> write(
+      final AsynchronousFileChannel channel,
+      final long position,
+      final AsyncIterator<? extends ByteBuffer> buffers,
+      final int maxOutstanding,
+      final BufferPool pool) {
+    if (position < 0) {
+      throw new IllegalArgumentException("position must not be negative: " + position);
+    }
+    if (maxOutstanding < 1) {
+      throw new IllegalArgumentException("maxOutstanding must be positive: " + maxOutstanding);
+    }
+    Objects.requireNonNull(channel);
+    Objects.requireNonNull(pool);
+    // the oldest outstanding write is first
+    final ArrayDeque<CompletionStage<Integer>> outstanding = new ArrayDeque<>();
+    // the position of the next write, and the number of bytes of completed writes
+    final long[] state = {position, 0};
+    final CompletionStage<Void> issued = AsyncTrampoline.asyncWhile(() -> {
+      if (outstanding.size() >= maxOutstanding) {
+        return outstanding.poll().thenApply(n -> {
+          state[1] += n;
+          return true;
+        });
+      }
+      return buffers.nextStage().thenApply(either -> either.fold(
+          end -> false,
+          buffer -> {
+            final long writePosition = state[0];
+            state[0] += buffer.remaining();
+            outstanding.add(writeFully(channel, buffer, writePosition)
+                .whenComplete((n, ex) -> pool.release(buffer)));
+            return true;
+          }));
+    });
+    return StageSupport.thenComposeOrRecover(issued, (ig, issueError) -> {
+      final List<CompletionStage<Integer>> remaining = new ArrayList<>(outstanding);
+      return StageSupport.thenComposeOrRecover(
+          Combinators.collect(remaining),
+          (written, writeError) -> {
+            if (issueError != null) {
+              return StageSupport.exceptionalStage(issueError);
+            } else if (writeError != null) {
+              return StageSupport.exceptionalStage(writeError);
+            }
+            long total = state[1];
+            for (final int n : written) {
+              total += n;
+            }
+            return StageSupport.completedStage(total);
+          });
+    });
+  }
+
+  /**
+   * Writes the buffers of {@code buffers} to a socket, one after the other.
+   *
+   * <p>
+   * A socket only permits one outstanding write, so the next buffer is only requested from
+   * {@code buffers} once the previous buffer has been written completely. If {@code buffers} emits
+   * an exceptional stage or a write fails, the returned stage completes exceptionally and no
+   * further buffers are requested. {@code buffers} is not closed.
+   *
+   * <p>
+   * This is a <i>terminal method</i> of {@code buffers}.
+   *
+   * @param channel the socket to write to
+   * @param buffers the buffers to write
+   * @return a {@link CompletionStage} of the total number of bytes written, which completes once
+   *         {@code buffers} has ended and all of its buffers have been written
+   */
+  public static CompletionStage<Long> write(
+      final AsynchronousSocketChannel channel, final AsyncIterator<? extends ByteBuffer> buffers) {
+    return write(channel, buffers, BufferPool.UNPOOLED);
+  }
+
+  /**
+   * Writes the buffers of {@code buffers} to a socket, one after the other, and releases each
+   * buffer to {@code pool} once it has been written.
+   *
+   * <p>
+   * This behaves like {@link #write(AsynchronousSocketChannel, AsyncIterator)}, except that every
+   * buffer emitted by {@code buffers} is {@link BufferPool#release(ByteBuffer) released} to
+   * {@code pool} when its write completes, whether or not the write succeeded.
+   *
+   * @param channel the socket to write to
+   * @param buffers the buffers to write, which are released to {@code pool}
+   * @param pool the pool to release the written buffers to
+   * @return a {@link CompletionStage} of the total number of bytes written, which completes once
+   *         {@code buffers} has ended and all of its buffers have been written
+   */
+  public static CompletionStage<Long> write(
+      final AsynchronousSocketChannel channel,
+      final AsyncIterator<? extends ByteBuffer> buffers,
+      final BufferPool pool) {
+    Objects.requireNonNull(channel);
+    Objects.requireNonNull(pool);
+    return buffers
+        .thenCompose(buffer -> writeFully(channel, buffer)
+            .whenComplete((n, ex) -> pool.release(buffer)))
+        .fold(0L, (total, n) -> total + n);
+  }
+
+  /**
+   * A {@link CompletionHandler} which completes a future.
+   */
+  private static final class StageHandler<V> implements CompletionHandler<V, Void> {
+    final CompletableFuture<V> future = new CompletableFuture<>();
+
+    @Override
+    public void completed(final V result, final Void attachment) {
+      this.future.complete(result);
+    }
+
+    @Override
+    public void failed(final Throwable exc, final Void attachment) {
+      this.future.completeExceptionally(exc);
+    }
+  }
+
+  /**
+   * Repeats a positional read or write of a file until the buffer has no remaining bytes, or a read
+   * reaches the end of the file.
+   */
+  private static final class FileTransfer implements CompletionHandler<Integer, Void> {
+    final CompletableFuture<Integer> future = new CompletableFuture<>();
+    private final AsynchronousFileChannel channel;
+    private final ByteBuffer buffer;
+    private final long position;
+    private final boolean write;
+    private final int start;
+
+    FileTransfer(
+        final AsynchronousFileChannel channel,
+        final ByteBuffer buffer,
+        final long position,
+        final boolean write) {
+      this.channel = channel;
+      this.buffer = buffer;
+      this.position = position;
+      this.write = write;
+      this.start = buffer.position();
+    }
+
+    void start() {
+      final long at = this.position + this.buffer.position() - this.start;
+      try {
+        if (this.write) {
+          this.channel.write(this.buffer, at, null, this);
+        } else {
+          this.channel.read(this.buffer, at, null, this);
+        }
+      } catch (final RuntimeException e) {
+        failed(e, null);
+      }
+    }
+
+    @Override
+    public void completed(final Integer result, final Void attachment) {
+      if (result < 0 || !this.buffer.hasRemaining()) {
+        this.future.complete(this.buffer.position() - this.start);
+      } else {
+        start();
+      }
+    }
+
+    @Override
+    public void failed(final Throwable exc, final Void attachment) {
+      this.future.completeExceptionally(exc);
+    }
+  }
+
+  /**
+   * Reads consecutive chunks of a file with up to {@code maxOutstanding} reads ahead of the
+   * consumer. {@code nextStage} is never called concurrently, so the queue of outstanding reads
+   * is only accessed by the consumer. Buffers which are never handed to the consumer, because their
+   * read failed, found the end of the file, or was outstanding when the iterator ended or was
+   * closed, are released to the pool. The end of the iterator is only produced once the reads
+   * which were outstanding when it ended have released their buffers.
+   */
+  private static final class FileReadAsyncIterator implements AsyncIterator<ByteBuffer> {
+    private final AsynchronousFileChannel channel;
+    private final int chunkSize;
+    private final int maxOutstanding;
+    private final BufferPool pool;
+    // the oldest outstanding read is first
+    private final ArrayDeque<CompletionStage<ByteBuffer>> outstanding = new ArrayDeque<>();
+    // complete once the buffers of reads drained from outstanding have been released
+    private final List<CompletionStage<Void>> releasing = new ArrayList<>();
+    private long nextPosition;
+    // set once a read reaches the end of the file
+    private volatile boolean ended;
+    private boolean closed;
+
+    FileReadAsyncIterator(
+        final AsynchronousFileChannel channel,
+        final long position,
+        final int chunkSize,
+        final int maxOutstanding,
+        final BufferPool pool) {
+      this.channel = channel;
+      this.nextPosition = position;
+      this.chunkSize = chunkSize;
+      this.maxOutstanding = maxOutstanding;
+      this.pool = pool;
+    }
+
+    @Override
+    public CompletionStage<Either<End, ByteBuffer>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      if (this.ended) {
+        return endStage();
+      }
+      while (this.outstanding.size() < this.maxOutstanding) {
+        final ByteBuffer buffer = this.pool.lease(this.chunkSize);
+        this.outstanding.add(readFully(this.channel, buffer, this.nextPosition)
+            .whenComplete((n, ex) -> {
+              if (ex != null) {
+                this.pool.release(buffer);
+              }
+            })
+            .thenApply(n -> {
+              buffer.flip();
+              return buffer;
+            }));
+        this.nextPosition += this.chunkSize;
+      }
+      return this.outstanding.poll().thenCompose(buffer -> {
+        if (buffer.remaining() < this.chunkSize) {
+          // reads past this one can only find the end of the file, so their buffers are released
+          // now rather than when the iterator is closed
+          this.ended = true;
+          releaseOutstanding();
+          if (!buffer.hasRemaining()) {
+            this.pool.release(buffer);
+            return endStage();
+          }
+        }
+        return StageSupport.completedStage(Either.right(buffer));
+      });
+    }
+
+    private void releaseOutstanding() {
+      CompletionStage<ByteBuffer> read;
+      while ((read = this.outstanding.poll()) != null) {
+        // the reads can't be cancelled, wait for them to finish with their buffers
+        this.releasing.add(read.thenAccept(this.pool::release));
+      }
+    }
+
+    private CompletionStage<Either<End, ByteBuffer>> endStage() {
+      return Combinators.allOf(this.releasing).handle((ig, ex) -> End.end());
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      this.closed = true;
+      releaseOutstanding();
+      return Combinators.allOf(this.releasing).handle((ig, ex) -> null);
+    }
+  }
+}
@@ -0,0 +1,370 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A pool of direct {@link ByteBuffer ByteBuffers}, which avoids allocating a new buffer for every
+ * read or write of a channel.
+ *
+ * <p>
+ * Buffers are pooled in size classes of powers of two, from {@value #MIN_CLASS_SIZE} bytes up to
+ * the {@code maxPooledSize} of the pool. A {@link #lease(int) leased} buffer comes from the
+ * smallest class that fits the requested size, and is returned to its class with
+ * {@link #release(ByteBuffer)} once it is no longer used. Each thread keeps a small cache of
+ * buffers per class, so a thread that releases and leases buffers doesn't contend with other
+ * threads; buffers which don't fit in the releasing thread's cache go to a bounded cache shared by
+ * all threads, which lets buffers released on one thread (such as a channel's completion thread)
+ * be leased on another. Requests larger than {@code maxPooledSize} are allocated and dropped
+ * without pooling.
+ *
+ * <p>
+ * A buffer must not be used after it has been released, and must be released at most once. A pool
+ * created with {@link #createDebug(int, int, int, Consumer)} checks these rules: it hands out
+ * tracked duplicates of the pooled buffers, rejects releases of buffers which aren't currently
+ * leased from it, and reports buffers which were garbage collected without being released.
+ *
+ * <pre>
+ * {@code
+ * BufferPool pool = BufferPool.create(1 << 20, 16, 256);
+ * AsyncIterator<ByteBuffer> chunks = AsyncChannels.read(file, 0, 64 * 1024, 4, pool);
+ * // the sink releases each chunk to the pool once it is written
+ * CompletionStage<Long> copied = AsyncChannels.write(socket, chunks, pool);
+ * }
+ * </pre>
+ *
+ * <p>
+ * The methods of this class are thread safe.
+ */
+public final class BufferPool {
+  /**
+   * The capacity of the smallest size class.
+   */
+  public static final int MIN_CLASS_SIZE = 16;
+  private static final int MIN_CLASS_SHIFT = Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+  private static final int MAX_CLASS_SIZE = 1 << 30;
+
+  /**
+   * A pool which allocates a buffer of exactly the requested size for every lease, and drops
+   * released buffers.
+   */
+  static final BufferPool UNPOOLED = new BufferPool(0, 0, 0, null);
+
+  private final int classes;
+  private final int threadCacheSize;
+  private final int sharedCacheSize;
+  private final ThreadLocal<ArrayDeque<ByteBuffer>[]> threadCaches;
+  private final Queue<ByteBuffer>[] sharedCaches;
+  private final AtomicInteger[] sharedCounts;
+  // null unless this is a debug pool
+  private final Debug debug;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private BufferPool(
+      final int maxPooledSize,
+      final int threadCacheSize,
+      final int sharedCacheSize,
+      final Consumer<? super Throwable> leakListener) {
+    this.classes = maxPooledSize == 0 ? 0 : classIndex(maxPooledSize) + 1;
+    this.threadCacheSize = threadCacheSize;
+    this.sharedCacheSize = sharedCacheSize;
+    this.threadCaches = ThreadLocal.withInitial(() -> {
+      final ArrayDeque<ByteBuffer>[] caches = new ArrayDeque[this.classes];
+      for (int i = 0; i < caches.length; i++) {
+        caches[i] = new ArrayDeque<>();
+      }
+      return caches;
+    });
+    this.sharedCaches = new Queue[this.classes];
+    this.sharedCounts = new AtomicInteger[this.classes];
+    for (int i = 0; i < this.classes; i++) {
+      this.sharedCaches[i] = new ConcurrentLinkedQueue<>();
+      this.sharedCounts[i] = new AtomicInteger();
+    }
+    this.debug = leakListener == null ? null : new Debug(leakListener);
+  }
+
+  /**
+   * Creates a pool of direct buffers.
+   *
+   * @param maxPooledSize the largest buffer size that is pooled, rounded up to a power of two.
+   *        Larger buffers are allocated for every lease
+   * @param threadCacheSize the maximum number of released buffers each thread caches per size class
+   * @param sharedCacheSize the maximum number of released buffers shared by all threads per size
+   *        class
+   * @return a new {@link BufferPool}
+   * @throws IllegalArgumentException if {@code maxPooledSize} is not positive or is larger than
+   *         2<sup>30</sup>, or a cache size is negative
+   */
+  public static BufferPool create(
+      final int maxPooledSize, final int threadCacheSize, final int sharedCacheSize) {
+    checkArguments(maxPooledSize, threadCacheSize, sharedCacheSize);
+    return new BufferPool(maxPooledSize, threadCacheSize, sharedCacheSize, null);
+  }
+
+  /**
+   * Creates a pool of direct buffers which checks that buffers are released correctly, at some
+   * cost in performance. This is meant to be used in tests and while debugging.
+   *
+   * <p>
+   * Each lease returns a new {@link ByteBuffer#duplicate() duplicate} of a pooled buffer, and
+   * records where it was leased. {@link #release(ByteBuffer)} throws an
+   * {@link IllegalArgumentException} if the buffer is not currently leased from this pool, which
+   * includes releasing a buffer twice. A leased buffer which becomes unreachable without being
+   * released is a leak: {@code leakListener} is called with an exception whose stack trace shows
+   * where the buffer was leased, and the pooled buffer is reclaimed. Leaks are detected when the
+   * garbage collector has cleared the buffer, on a later call to {@link #lease(int)} or
+   * {@link #release(ByteBuffer)}.
+   *
+   * @param maxPooledSize the largest buffer size that is pooled, rounded up to a power of two.
+   *        Larger buffers are allocated for every lease
+   * @param threadCacheSize the maximum number of released buffers each thread caches per size class
+   * @param sharedCacheSize the maximum number of released buffers shared by all threads per size
+   *        class
+   * @param leakListener called with the lease site of each leaked buffer
+   * @return a new {@link BufferPool} which checks leases and releases
+   * @throws IllegalArgumentException if {@code maxPooledSize} is not positive or is larger than
+   *         2<sup>30</sup>, or a cache size is negative
+   */
+  public static BufferPool createDebug(
+      final int maxPooledSize,
+      final int threadCacheSize,
+      final int sharedCacheSize,
+      final Consumer<? super Throwable> leakListener) {
+    checkArguments(maxPooledSize, threadCacheSize, sharedCacheSize);
+    return new BufferPool(
+        maxPooledSize, threadCacheSize, sharedCacheSize, Objects.requireNonNull(leakListener));
+  }
+
+  private static void checkArguments(
+      final int maxPooledSize, final int threadCacheSize, final int sharedCacheSize) {
+    if (maxPooledSize < 1 || maxPooledSize > MAX_CLASS_SIZE) {
+      throw new IllegalArgumentException("maxPooledSize out of range: " + maxPooledSize);
+    }
+    if (threadCacheSize < 0) {
+      throw new IllegalArgumentException("threadCacheSize must not be negative: "
+          + threadCacheSize);
+    }
+    if (sharedCacheSize < 0) {
+      throw new IllegalArgumentException("sharedCacheSize must not be negative: "
+          + sharedCacheSize);
+    }
+  }
+
+  /**
+   * @return the index of the smallest size class with a capacity of at least {@code size}
+   */
+  private static int classIndex(final int size) {
+    return size <= MIN_CLASS_SIZE
+        ? 0
+        : 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+  }
+
+  /**
+   * Leases a direct buffer with a limit of {@code size} bytes, which should be
+   * {@link #release(ByteBuffer) released} to this pool once it is no longer used.
+   *
+   * <p>
+   * The buffer's position is 0 and its limit is {@code size}. Its capacity may be larger, and its
+   * contents are unspecified.
+   *
+   * @param size the number of bytes needed
+   * @return a direct {@link ByteBuffer} with {@code size} bytes remaining
+   * @throws IllegalArgumentException if {@code size} is negative
+   */
+  public ByteBuffer lease(final int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size must not be negative: " + size);
+    }
+    final ByteBuffer buffer;
+    final int index = classIndex(size);
+    if (index >= this.classes) {
+      buffer = ByteBuffer.allocateDirect(size);
+    } else {
+      final ByteBuffer cached = poll(index);
+      buffer = cached != null ? cached : ByteBuffer.allocateDirect(MIN_CLASS_SIZE << index);
+      buffer.clear().limit(size);
+    }
+    return this.debug == null ? buffer : this.debug.track(buffer);
+  }
+
+  private ByteBuffer poll(final int index) {
+    final ByteBuffer cached = this.threadCaches.get()[index].poll();
+    if (cached != null) {
+      return cached;
+    }
+    final ByteBuffer shared = this.sharedCaches[index].poll();
+    if (shared != null) {
+      this.sharedCounts[index].decrementAndGet();
+    }
+    return shared;
+  }
+
+  /**
+   * Returns a buffer leased from this pool, so that it can be leased again. The buffer must not be
+   * used afterwards.
+   *
+   * <p>
+   * Buffers which don't belong to a size class of this pool, such as heap buffers or buffers
+   * larger than the pool's {@code maxPooledSize}, are dropped, so any buffer produced by a pipeline
+   * which uses this pool may be released. A debug pool instead rejects buffers which are not
+   * currently leased from it.
+   *
+   * @param buffer a buffer leased from this pool
+   * @throws IllegalArgumentException if this is a
+   *         {@link #createDebug(int, int, int, Consumer) debug} pool and {@code buffer} is not
+   *         currently leased from it
+   */
+  public void release(final ByteBuffer buffer) {
+    recycle(this.debug == null ? buffer : this.debug.untrack(buffer));
+  }
+
+  /**
+   * Returns the number of buffers currently leased from this debug pool, which is useful to check
+   * that a pipeline released all of the buffers it leased.
+   *
+   * @return the number of buffers which have been leased and have neither been released nor
+   *         reported as leaked
+   * @throws IllegalStateException if this pool was not created with
+   *         {@link #createDebug(int, int, int, Consumer)}
+   */
+  public int leasedCount() {
+    if (this.debug == null) {
+      throw new IllegalStateException("leases are only tracked by debug pools");
+    }
+    return this.debug.leasedCount();
+  }
+
+  private void recycle(final ByteBuffer buffer) {
+    final int capacity = buffer.capacity();
+    if (!buffer.isDirect()
+        || capacity < MIN_CLASS_SIZE
+        || Integer.bitCount(capacity) != 1
+        || classIndex(capacity) >= this.classes) {
+      return;
+    }
+    final int index = classIndex(capacity);
+    final ArrayDeque<ByteBuffer> cache = this.threadCaches.get()[index];
+    if (cache.size() < this.threadCacheSize) {
+      cache.push(buffer);
+    } else if (this.sharedCounts[index].incrementAndGet() <= this.sharedCacheSize) {
+      this.sharedCaches[index].add(buffer);
+    } else {
+      this.sharedCounts[index].decrementAndGet();
+    }
+  }
+
+  /**
+   * The tracking state of a debug pool. Leased buffers are handed out as duplicates which are only
+   * weakly referenced by their {@link Lease}, so that a leaked duplicate can be garbage collected
+   * and its lease found on the reference queue while the pooled buffer is still held strongly.
+   */
+  private final class Debug {
+    private final Consumer<? super Throwable> leakListener;
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+    // outstanding leases by the identity hash code of their duplicate, since ByteBuffer's
+    // equals compares contents
+    private final Map<Integer, List<Lease>> leases = new HashMap<>();
+
+    Debug(final Consumer<? super Throwable> leakListener) {
+      this.leakListener = leakListener;
+    }
+
+    ByteBuffer track(final ByteBuffer pooled) {
+      reportLeaks();
+      final ByteBuffer duplicate = pooled.duplicate();
+      final Lease lease = new Lease(duplicate, pooled, this.collected);
+      synchronized (this.leases) {
+        this.leases.computeIfAbsent(lease.key, k -> new ArrayList<>(1)).add(lease);
+      }
+      return duplicate;
+    }
+
+    ByteBuffer untrack(final ByteBuffer duplicate) {
+      reportLeaks();
+      final Lease lease = remove(System.identityHashCode(duplicate), duplicate);
+      if (lease == null) {
+        throw new IllegalArgumentException(
+            "buffer is not leased from this pool, it may have been released already");
+      }
+      lease.clear();
+      return lease.pooled;
+    }
+
+    int leasedCount() {
+      reportLeaks();
+      synchronized (this.leases) {
+        int count = 0;
+        for (final List<Lease> candidates : this.leases.values()) {
+          count += candidates.size();
+        }
+        return count;
+      }
+    }
+
+    private Lease remove(final int key, final Object target) {
+      synchronized (this.leases) {
+        final List<Lease> candidates = this.leases.get(key);
+        if (candidates == null) {
+          return null;
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+          final Lease lease = candidates.get(i);
+          if (lease == target || lease.get() == target) {
+            candidates.remove(i);
+            if (candidates.isEmpty()) {
+              this.leases.remove(key);
+            }
+            return lease;
+          }
+        }
+        return null;
+      }
+    }
+
+    private void reportLeaks() {
+      Lease leaked;
+      while ((leaked = (Lease) this.collected.poll()) != null) {
+        // a released lease is cleared before it can be enqueued, so this is a leak
+        if (remove(leaked.key, leaked) != null) {
+          this.leakListener.accept(leaked.site);
+          recycle(leaked.pooled);
+        }
+      }
+    }
+  }
+
+  private static final class Lease extends WeakReference<ByteBuffer> {
+    final int key;
+    final ByteBuffer pooled;
+    final Throwable site;
+
+    Lease(
+        final ByteBuffer duplicate,
+        final ByteBuffer pooled,
+        final ReferenceQueue<ByteBuffer> queue) {
+      super(duplicate, queue);
+      this.key = System.identityHashCode(duplicate);
+      this.pooled = pooled;
+      this.site = new IllegalStateException(
+          "leaked buffer of " + duplicate.capacity() + " bytes was leased here");
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+
+import com.ibm.asyncutil.iteration.AsyncIterator;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Static methods to iterate over the records of a file by memory-mapping it, for scanning local
+ * files such as logs and segments without copying them.
+ *
+ * <p>
+ * The returned iterators map a window of {@code windowSize} bytes of the file at a time, and map a
+ * new window starting at the next record when a record extends past the current one, so a window
+ * that is larger than a record is only remapped once per window rather than once per record.
+ * Each record is emitted as a read-only {@link ByteBuffer#slice() slice} of the window, whose
+ * position is 0 and whose limit is the length of the record; the bytes of the file are never
+ * copied.
+ *
+ * <pre>
+ * {@code
+ * try (FileChannel channel = FileChannel.open(segment)) {
+ *   AsyncIterator<ByteBuffer> records = MappedRecords.lengthPrefixed(
+ *       channel, 0, ByteOrder.BIG_ENDIAN, 64 << 20);
+ *   records.forEach(this::replay)
+ *       .thenCompose(ig -> records.close())
+ *       .toCompletableFuture().join();
+ * }
+ * }
+ * </pre>
+ *
+ * <p>
+ * Reading a mapped file does not go through a system call, which makes scanning a file much
+ * cheaper than reading it into buffers, but reading a part of the file that is not in the page
+ * cache blocks the reading thread on a page fault. The iterators therefore produce their records
+ * synchronously, as already completed stages, and are best suited to files which are mostly
+ * cached or to consumers which can afford to block.
+ *
+ * <p>
+ * The size of the file is read on the first request for a record, and records appended to the
+ * file afterwards are not produced. A record which is cut off by the end of the file is produced
+ * as a stage completed exceptionally with an {@link EOFException}, after which the iterator ends.
+ * Closing an iterator releases its current mapping; the memory of a mapping is unmapped once none
+ * of the slices of it are reachable. Slices remain valid after the iterator or the channel is
+ * closed. None of the methods of this class close the channel they are given.
+ */
+public final class MappedRecords {
+  private MappedRecords() {}
+
+  /**
+   * Iterates over records separated by {@code delimiter}.
+   *
+   * <p>
+   * The delimiters are not included in the records. A record which is not followed by a delimiter
+   * because it ends the file is produced as well, unless it is empty. A record longer than
+   * {@code windowSize} is found by mapping successively larger windows.
+   *
+   * @param channel the file to read, which must be readable
+   * @param position the position in the file of the first record
+   * @param delimiter the byte which follows each record
+   * @param windowSize the number of bytes of the file to map at a time, must be positive
+   * @return an {@link AsyncIterator} of slices of the records of the file
+   * @throws IllegalArgumentException if {@code windowSize} is not positive, or {@code position} is
+   *         negative
+   */
+  public static AsyncIterator<ByteBuffer> delimited(
+      final FileChannel channel, final long position, final byte delimiter,
+      final int windowSize) {
+    checkArguments(position, windowSize);
+    return new MappedRecordAsyncIterator(channel, position, windowSize) {
+      @Override
+      Either<End, ByteBuffer> readRecord() throws IOException {
+        if (remaining() == 0) {
+          return End.end();
+        }
+        // the number of bytes after the start of the record which don't contain the delimiter
+        long searched = 0;
+        while (true) {
+          mapped(Math.max(searched * 2, 1));
+          final int start = windowIndex(this.position);
+          final int end = this.window.limit();
+          for (int i = start + (int) searched; i < end; i++) {
+            if (this.window.get(i) == delimiter) {
+              final ByteBuffer record = slice(start, i - start);
+              this.position += i - start + 1;
+              return Either.right(record);
+            }
+          }
+          searched = end - start;
+          if (searched == remaining()) {
+            // the last record of the file, which has no delimiter
+            final ByteBuffer record = slice(start, end - start);
+            this.position += searched;
+            return Either.right(record);
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Iterates over records which are each preceded by their length as a 4 byte int.
+   *
+   * <p>
+   * The length prefixes are not included in the records. A negative length is reported as an
+   * {@link IOException}, after which the iterator ends.
+   *
+   * @param channel the file to read, which must be readable
+   * @param position the position in the file of the length of the first record
+   * @param order the byte order of the length prefixes
+   * @param windowSize the number of bytes of the file to map at a time, must be positive
+   * @return an {@link AsyncIterator} of slices of the records of the file
+   * @throws IllegalArgumentException if {@code windowSize} is not positive, or {@code position} is
+   *         negative
+   */
+  public static AsyncIterator<ByteBuffer> lengthPrefixed(
+      final FileChannel channel, final long position, final ByteOrder order,
+      final int windowSize) {
+    checkArguments(position, windowSize);
+    Objects.requireNonNull(order);
+    return new MappedRecordAsyncIterator(channel, position, windowSize) {
+      @Override
+      Either<End, ByteBuffer> readRecord() throws IOException {
+        if (remaining() == 0) {
+          return End.end();
+        }
+        if (remaining() < Integer.BYTES) {
+          throw new EOFException("truncated record length at position " + this.position);
+        }
+        mapped(Integer.BYTES);
+        final int start = windowIndex(this.position);
+        final int length = order == ByteOrder.BIG_ENDIAN
+            ? this.window.getInt(start)
+            : Integer.reverseBytes(this.window.getInt(start));
+        if (length < 0) {
+          throw new IOException("negative record length " + length + " at position "
+              + this.position);
+        }
+        if (remaining() < Integer.BYTES + (long) length) {
+          throw new EOFException("truncated record of " + length + " bytes at position "
+              + this.position);
+        }
+        mapped(Integer.BYTES + (long) length);
+        final ByteBuffer record = slice(windowIndex(this.position) + Integer.BYTES, length);
+        this.position += Integer.BYTES + length;
+        return Either.right(record);
+      }
+    };
+  }
+
+  /**
+   * Iterates over records of {@code recordSize} bytes each.
+   *
+   * @param channel the file to read, which must be readable
+   * @param position the position in the file of the first record
+   * @param recordSize the size in bytes of the records, must be positive
+   * @param windowSize the number of bytes of the file to map at a time, must be positive
+   * @return an {@link AsyncIterator} of slices of the records of the file
+   * @throws IllegalArgumentException if {@code recordSize} or {@code windowSize} is not positive,
+   *         or {@code position} is negative
+   */
+  public static AsyncIterator<ByteBuffer> fixedSize(
+      final FileChannel channel, final long position, final int recordSize,
+      final int windowSize) {
+    checkArguments(position, windowSize);
+    if (recordSize < 1) {
+      throw new IllegalArgumentException("recordSize must be positive: " + recordSize);
+    }
+    return new MappedRecordAsyncIterator(channel, position, windowSize) {
+      @Override
+      Either<End, ByteBuffer> readRecord() throws IOException {
+        if (remaining() == 0) {
+          return End.end();
+        }
+        if (remaining() < recordSize) {
+          throw new EOFException("truncated record of " + remaining() + " bytes at position "
+              + this.position);
+        }
+        mapped(recordSize);
+        final ByteBuffer record = slice(windowIndex(this.position), recordSize);
+        this.position += recordSize;
+        return Either.right(record);
+      }
+    };
+  }
+
+  private static void checkArguments(final long position, final int windowSize) {
+    if (position < 0) {
+      throw new IllegalArgumentException("position must not be negative: " + position);
+    }
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+    }
+  }
+
+  /**
+   * Produces the records of a mapped file, as framed by {@link #readRecord()}. Records are read
+   * synchronously when they are requested; {@code nextStage} is never called concurrently, so the
+   * state of the iterator is only accessed by the consumer.
+   */
+  private abstract static class MappedRecordAsyncIterator implements AsyncIterator<ByteBuffer> {
+    private final FileChannel channel;
+    private final int windowSize;
+    // the position in the file of the next record
+    long position;
+    MappedByteBuffer window;
+    // the position in the file of the start of the window
+    private long windowStart;
+    // read on the first request
+    private long size = -1;
+    private boolean ended;
+    private boolean closed;
+
+    MappedRecordAsyncIterator(
+        final FileChannel channel, final long position, final int windowSize) {
+      this.channel = Objects.requireNonNull(channel);
+      this.position = position;
+      this.windowSize = windowSize;
+    }
+
+    /**
+     * Reads the record at {@link #position} and advances past it.
+     *
+     * @return the record, or {@link End} if there are no more records
+     * @throws IOException if the record can't be read, which ends iteration
+     */
+    abstract Either<End, ByteBuffer> readRecord() throws IOException;
+
+    @Override
+    public CompletionStage<Either<End, ByteBuffer>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      if (this.ended) {
+        return End.endStage();
+      }
+      try {
+        if (this.size < 0) {
+          this.size = this.channel.size();
+        }
+        return StageSupport.completedStage(readRecord());
+      } catch (final Throwable e) {
+        this.ended = true;
+        this.window = null;
+        return StageSupport.exceptionalStage(e);
+      }
+    }
+
+    /**
+     * @return the number of bytes of the file after {@link #position}
+     */
+    final long remaining() {
+      return Math.max(this.size - this.position, 0);
+    }
+
+    /**
+     * Ensures that the window includes at least {@code length} bytes following {@link #position},
+     * or all of the remaining bytes of the file if there are fewer, by mapping a new window
+     * starting at {@link #position} if necessary.
+     */
+    final void mapped(final long length) throws IOException {
+      final long needed = Math.min(length, remaining());
+      if (this.window != null
+          && this.position >= this.windowStart
+          && this.position + needed <= this.windowStart + this.window.limit()) {
+        return;
+      }
+      final long mapSize = Math.min(Math.max(needed, this.windowSize), remaining());
+      if (mapSize > Integer.MAX_VALUE) {
+        throw new IOException("record at position " + this.position
+            + " is larger than the maximum mapping size");
+      }
+      // drop the old window first, so it can be unmapped if no slices of it are in use
+      this.window = null;
+      this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, mapSize);
+      this.windowStart = this.position;
+    }
+
+    /**
+     * @return the index in the window of the byte at {@code filePosition}
+     */
+    final int windowIndex(final long filePosition) {
+      return (int) (filePosition - this.windowStart);
+    }
+
+    /**
+     * @return a slice of the {@code length} bytes of the window starting at index {@code start}
+     */
+    final ByteBuffer slice(final int start, final int length) {
+      final ByteBuffer duplicate = this.window.duplicate();
+      duplicate.limit(start + length).position(start);
+      return duplicate.slice();
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      this.closed = true;
+      this.window = null;
+      return StageSupport.voidStage();
+    }
+  }
+}
@@ -0,0 +1,11 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+/**
+ * Provides {@link com.ibm.asyncutil.iteration.AsyncIterator} sources and sinks over
+ * {@link java.nio.channels.AsynchronousChannel asynchronous channels}.
+ */
+package com.ibm.asyncutil.nio;
@@ -0,0 +1,326 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.asyncutil.iteration.AsyncIterator;
+import com.ibm.asyncutil.util.Either;
+
+public class AsyncChannelsTest {
+  private Path file;
+
+  @Before
+  public void createFile() throws IOException {
+    this.file = Files.createTempFile("asyncchannels", null);
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  private static <T> T join(final CompletionStage<T> stage) throws Exception {
+    return stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  private static byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] concat(final List<ByteBuffer> buffers) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (final ByteBuffer buffer : buffers) {
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      out.write(bytes, 0, bytes.length);
+    }
+    return out.toByteArray();
+  }
+
+  private List<ByteBuffer> readChunks(final long position, final int chunkSize,
+      final int maxOutstanding) throws Exception {
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+      final AsyncIterator<ByteBuffer> it =
+          AsyncChannels.read(channel, position, chunkSize, maxOutstanding);
+      final List<ByteBuffer> chunks = join(it.collect(Collectors.toList()));
+      join(it.close());
+      return chunks;
+    }
+  }
+
+  @Test
+  public void testReadFile() throws Exception {
+    final byte[] bytes = randomBytes(10000);
+    Files.write(this.file, bytes);
+    for (final int chunkSize : Arrays.asList(1, 1000, 3001, 10000, 20000)) {
+      for (final int maxOutstanding : Arrays.asList(1, 4)) {
+        final List<ByteBuffer> chunks = readChunks(0, chunkSize, maxOutstanding);
+        Assert.assertEquals((bytes.length + chunkSize - 1) / chunkSize, chunks.size());
+        for (int i = 0; i < chunks.size() - 1; i++) {
+          Assert.assertEquals(chunkSize, chunks.get(i).remaining());
+        }
+        Assert.assertArrayEquals(bytes, concat(chunks));
+      }
+    }
+  }
+
+  @Test
+  public void testReadFilePosition() throws Exception {
+    final byte[] bytes = randomBytes(10000);
+    Files.write(this.file, bytes);
+    Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 2500, 10000),
+        concat(readChunks(2500, 1024, 3)));
+    Assert.assertTrue(readChunks(10000, 1024, 3).isEmpty());
+    Assert.assertTrue(readChunks(20000, 1024, 3).isEmpty());
+  }
+
+  @Test
+  public void testReadEmptyFile() throws Exception {
+    Assert.assertTrue(readChunks(0, 1024, 4).isEmpty());
+  }
+
+  @Test
+  public void testReadFilePartially() throws Exception {
+    Files.write(this.file, randomBytes(10000));
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+      final AsyncIterator<ByteBuffer> it = AsyncChannels.read(channel, 0, 100, 8);
+      Assert.assertEquals(100, join(it.nextStage()).right().get().remaining());
+      // closing waits for the outstanding reads
+      join(it.close());
+    }
+  }
+
+  @Test
+  public void testCopyFilePooled() throws Exception {
+    final byte[] bytes = randomBytes(100000);
+    Files.write(this.file, bytes);
+    final Path copy = Files.createTempFile("asyncchannels", null);
+    final BufferPool pool = BufferPool.createDebug(1 << 16, 4, 16, leak -> {
+      throw new AssertionError(leak);
+    });
+    try (
+        AsynchronousFileChannel source =
+            AsynchronousFileChannel.open(this.file, StandardOpenOption.READ);
+        AsynchronousFileChannel destination =
+            AsynchronousFileChannel.open(copy, StandardOpenOption.WRITE)) {
+      final AsyncIterator<ByteBuffer> chunks = AsyncChannels.read(source, 0, 4096, 4, pool);
+      Assert.assertEquals(100000L,
+          join(AsyncChannels.write(destination, 0, chunks, 4, pool)).longValue());
+      join(chunks.close());
+      // including the reads past the end of the file
+      Assert.assertEquals(0, pool.leasedCount());
+      Assert.assertArrayEquals(bytes, Files.readAllBytes(copy));
+    } finally {
+      Files.delete(copy);
+    }
+  }
+
+  @Test
+  public void testReadFilePartiallyPooled() throws Exception {
+    Files.write(this.file, randomBytes(10000));
+    final BufferPool pool = BufferPool.createDebug(1 << 16, 4, 16, leak -> {
+      throw new AssertionError(leak);
+    });
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+      final AsyncIterator<ByteBuffer> it = AsyncChannels.read(channel, 0, 100, 8, pool);
+      pool.release(join(it.nextStage()).right().get());
+      join(it.close());
+      Assert.assertEquals(0, pool.leasedCount());
+    }
+  }
+
+  @Test
+  public void testReadFileReleasesAtEnd() throws Exception {
+    // ending with a full chunk and with a partial one
+    for (final int size : Arrays.asList(10000, 10500)) {
+      Files.write(this.file, randomBytes(size));
+      final BufferPool pool = BufferPool.createDebug(1 << 16, 4, 16, leak -> {
+        throw new AssertionError(leak);
+      });
+      try (AsynchronousFileChannel channel =
+          AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+        final AsyncIterator<ByteBuffer> it = AsyncChannels.read(channel, 0, 1000, 8, pool);
+        Either<AsyncIterator.End, ByteBuffer> next;
+        while ((next = join(it.nextStage())).isRight()) {
+          pool.release(next.right().get());
+        }
+        // the reads past the end of the file were released without closing the iterator
+        Assert.assertEquals(0, pool.leasedCount());
+        join(it.close());
+      }
+    }
+  }
+
+  @Test
+  public void testWriteFile() throws Exception {
+    final byte[] bytes = randomBytes(10000);
+    final AsyncIterator<ByteBuffer> buffers = AsyncIterator
+        .fromIterator(IntStream.range(0, 10).iterator())
+        .thenApply(i -> ByteBuffer.wrap(bytes, i * 1000, 1000));
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      Assert.assertEquals(10000L, join(AsyncChannels.write(channel, 5, buffers, 3)).longValue());
+    }
+    final byte[] written = Files.readAllBytes(this.file);
+    Assert.assertEquals(10005, written.length);
+    Assert.assertArrayEquals(bytes, Arrays.copyOfRange(written, 5, 10005));
+  }
+
+  @Test
+  public void testWriteFileException() throws Exception {
+    final AsyncIterator<ByteBuffer> buffers = AsyncIterator.concat(Arrays.asList(
+        AsyncIterator.once(ByteBuffer.wrap(randomBytes(10))),
+        AsyncIterator.<ByteBuffer>error(new IOException("source failed"))));
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      join(AsyncChannels.write(channel, 0, buffers, 2));
+      Assert.fail("expected exception");
+    } catch (final ExecutionException e) {
+      Assert.assertEquals("source failed", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCopyFile() throws Exception {
+    final byte[] bytes = randomBytes(100000);
+    Files.write(this.file, bytes);
+    final Path copy = Files.createTempFile("asyncchannels", null);
+    try (
+        AsynchronousFileChannel source =
+            AsynchronousFileChannel.open(this.file, StandardOpenOption.READ);
+        AsynchronousFileChannel destination =
+            AsynchronousFileChannel.open(copy, StandardOpenOption.WRITE)) {
+      final AsyncIterator<ByteBuffer> chunks = AsyncChannels.read(source, 0, 4096, 4);
+      Assert.assertEquals(100000L,
+          join(AsyncChannels.write(destination, 0, chunks, 4)).longValue());
+      join(chunks.close());
+      Assert.assertArrayEquals(bytes, Files.readAllBytes(copy));
+    } finally {
+      Files.delete(copy);
+    }
+  }
+
+  @Test
+  public void testSocket() throws Exception {
+    final byte[] bytes = randomBytes(100000);
+    try (AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      final CompletionStage<AsynchronousSocketChannel> accepted = AsyncChannels.accept(server);
+      try (
+          AsynchronousSocketChannel client =
+              join(AsyncChannels.connect(server.getLocalAddress()));
+          AsynchronousSocketChannel peer = join(accepted)) {
+        final AsyncIterator<ByteBuffer> buffers = AsyncIterator
+            .fromIterator(IntStream.range(0, 100).iterator())
+            .thenApply(i -> ByteBuffer.wrap(bytes, i * 1000, 1000));
+        final CompletionStage<Long> written = AsyncChannels.write(client, buffers)
+            .thenApply(n -> {
+              try {
+                client.shutdownOutput();
+              } catch (final IOException e) {
+                throw new RuntimeException(e);
+              }
+              return n;
+            });
+
+        final BufferPool pool = BufferPool.createDebug(1 << 16, 4, 16, leak -> {
+          throw new AssertionError(leak);
+        });
+        final AsyncIterator<ByteBuffer> chunks = AsyncChannels.read(peer, 4096, pool);
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        join(chunks.forEach(chunk -> {
+          final byte[] chunkBytes = concat(Collections.singletonList(chunk));
+          received.write(chunkBytes, 0, chunkBytes.length);
+          pool.release(chunk);
+        }));
+        join(chunks.close());
+        Assert.assertEquals(100000L, join(written).longValue());
+        Assert.assertArrayEquals(bytes, received.toByteArray());
+        // including the buffer of the read which found end-of-stream
+        Assert.assertEquals(0, pool.leasedCount());
+      }
+    }
+  }
+
+  @Test
+  public void testConnectFailure() throws Exception {
+    final InetSocketAddress address;
+    try (AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      address = (InetSocketAddress) server.getLocalAddress();
+    }
+    try {
+      join(AsyncChannels.connect(address));
+      Assert.fail("expected exception");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadNonPositiveChunk() throws Exception {
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+      AsyncChannels.read(channel, 0, 0, 1);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadNonPositiveOutstanding() throws Exception {
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.READ)) {
+      AsyncChannels.read(channel, 0, 1, 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWriteNegativePosition() throws Exception {
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      AsyncChannels.write(channel, -1, AsyncIterator.empty(), 1);
+    }
+  }
+
+  @Test
+  public void testWriteEmpty() throws Exception {
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      Assert.assertEquals(0L,
+          join(AsyncChannels.write(channel, 0, AsyncIterator.empty(), 1)).longValue());
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+  @Test
+  public void testLease() {
+    final BufferPool pool = BufferPool.create(1024, 4, 4);
+    for (final int size : new int[] {0, 1, 16, 17, 100, 512, 1000, 1024}) {
+      final ByteBuffer buffer = pool.lease(size);
+      Assert.assertTrue(buffer.isDirect());
+      Assert.assertEquals(0, buffer.position());
+      Assert.assertEquals(size, buffer.limit());
+      Assert.assertEquals(Math.max(BufferPool.MIN_CLASS_SIZE, Integer.highestOneBit(size * 2 - 1)),
+          buffer.capacity());
+      pool.release(buffer);
+    }
+    // larger than the largest class
+    final ByteBuffer large = pool.lease(1025);
+    Assert.assertEquals(1025, large.capacity());
+    Assert.assertEquals(1025, large.limit());
+  }
+
+  @Test
+  public void testReuse() {
+    final BufferPool pool = BufferPool.create(1024, 4, 4);
+    final ByteBuffer buffer = pool.lease(100);
+    buffer.putInt(1);
+    pool.release(buffer);
+    final ByteBuffer reused = pool.lease(120);
+    Assert.assertSame(buffer, reused);
+    Assert.assertEquals(0, reused.position());
+    Assert.assertEquals(120, reused.limit());
+    // a different size class
+    Assert.assertNotSame(buffer, pool.lease(10));
+  }
+
+  @Test
+  public void testNotPooled() {
+    final BufferPool pool = BufferPool.create(1024, 4, 4);
+    final ByteBuffer large = pool.lease(2000);
+    pool.release(large);
+    Assert.assertNotSame(large, pool.lease(2000));
+
+    final ByteBuffer heap = ByteBuffer.allocate(128);
+    pool.release(heap);
+    Assert.assertNotSame(heap, pool.lease(128));
+  }
+
+  @Test
+  public void testSharedCache() throws Exception {
+    // no thread cache, so every release goes to the shared cache
+    final BufferPool pool = BufferPool.create(1024, 0, 2);
+    final List<ByteBuffer> leased = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      leased.add(pool.lease(64));
+    }
+    CompletableFuture.runAsync(() -> leased.forEach(pool::release)).get(10, TimeUnit.SECONDS);
+    final List<ByteBuffer> reused = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      reused.add(pool.lease(64));
+    }
+    // only 2 of the buffers fit in the shared cache
+    int same = 0;
+    for (final ByteBuffer buffer : reused) {
+      if (leased.stream().anyMatch(b -> b == buffer)) {
+        same++;
+      }
+    }
+    Assert.assertEquals(2, same);
+  }
+
+  @Test
+  public void testThreadCacheOverflow() throws Exception {
+    final BufferPool pool = BufferPool.create(1024, 1, 1);
+    final ByteBuffer first = pool.lease(64);
+    final ByteBuffer second = pool.lease(64);
+    pool.release(first);
+    // overflows to the shared cache
+    pool.release(second);
+    final AtomicReference<ByteBuffer> other = new AtomicReference<>();
+    CompletableFuture.runAsync(() -> other.set(pool.lease(64))).get(10, TimeUnit.SECONDS);
+    Assert.assertSame(second, other.get());
+    Assert.assertSame(first, pool.lease(64));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDebugDoubleRelease() {
+    final BufferPool pool = BufferPool.createDebug(1024, 4, 4, leak -> {
+    });
+    final ByteBuffer buffer = pool.lease(64);
+    pool.release(buffer);
+    pool.release(buffer);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDebugForeignRelease() {
+    final BufferPool pool = BufferPool.createDebug(1024, 4, 4, leak -> {
+    });
+    pool.release(ByteBuffer.allocateDirect(64));
+  }
+
+  @Test
+  public void testDebugLeasedCount() {
+    final BufferPool pool = BufferPool.createDebug(1024, 4, 4, leak -> {
+    });
+    final ByteBuffer first = pool.lease(64);
+    final ByteBuffer second = pool.lease(4096);
+    Assert.assertEquals(2, pool.leasedCount());
+    pool.release(first);
+    pool.release(second);
+    Assert.assertEquals(0, pool.leasedCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testLeasedCountNotDebug() {
+    BufferPool.create(1024, 4, 4).leasedCount();
+  }
+
+  @Test
+  public void testDebugLeak() throws Exception {
+    final AtomicInteger leaks = new AtomicInteger();
+    final BufferPool pool = BufferPool.createDebug(1024, 4, 4, leak -> {
+      Assert.assertTrue(leak.getMessage().contains("leased here"));
+      leaks.incrementAndGet();
+    });
+    leak(pool);
+    for (int i = 0; i < 100 && leaks.get() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      pool.release(pool.lease(16));
+    }
+    Assert.assertEquals(1, leaks.get());
+    Assert.assertEquals(0, pool.leasedCount());
+  }
+
+  private static void leak(final BufferPool pool) {
+    pool.lease(64).putInt(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveMaxPooledSize() {
+    BufferPool.create(0, 4, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeCacheSize() {
+    BufferPool.create(1024, -1, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeLease() {
+    BufferPool.create(1024, 4, 4).lease(-1);
+  }
+}
@@ -0,0 +1,225 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.asyncutil.iteration.AsyncIterator;
+
+public class MappedRecordsTest {
+  private Path file;
+
+  @Before
+  public void createFile() throws IOException {
+    this.file = Files.createTempFile("mappedrecords", null);
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  private static String string(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private List<String> records(final Function<FileChannel, AsyncIterator<ByteBuffer>> records)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      final AsyncIterator<ByteBuffer> it = records.apply(channel);
+      final List<String> strings = it
+          .thenApply(MappedRecordsTest::string)
+          .collect(Collectors.toList())
+          .toCompletableFuture()
+          .join();
+      it.close().toCompletableFuture().join();
+      return strings;
+    }
+  }
+
+  private static String repeat(final char c, final int n) {
+    final char[] chars = new char[n];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  @Test
+  public void testDelimited() throws IOException {
+    final List<String> lines =
+        Arrays.asList("a", "", "bc", repeat('d', 100), "e", repeat('f', 7), repeat('g', 8));
+    Files.write(this.file, lines);
+    for (final int windowSize : Arrays.asList(1, 3, 8, 16, 1 << 20)) {
+      Assert.assertEquals(lines,
+          records(channel -> MappedRecords.delimited(channel, 0, (byte) '\n', windowSize)));
+    }
+  }
+
+  @Test
+  public void testDelimitedLastRecord() throws IOException {
+    Files.write(this.file, "a,bb,ccc".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(Arrays.asList("a", "bb", "ccc"),
+        records(channel -> MappedRecords.delimited(channel, 0, (byte) ',', 2)));
+    Assert.assertEquals(Arrays.asList("b", "ccc"),
+        records(channel -> MappedRecords.delimited(channel, 3, (byte) ',', 2)));
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    Assert.assertTrue(
+        records(channel -> MappedRecords.delimited(channel, 0, (byte) '\n', 16)).isEmpty());
+    Assert.assertTrue(records(
+        channel -> MappedRecords.lengthPrefixed(channel, 0, ByteOrder.BIG_ENDIAN, 16)).isEmpty());
+    Assert.assertTrue(records(channel -> MappedRecords.fixedSize(channel, 0, 4, 16)).isEmpty());
+    Assert.assertTrue(records(channel -> MappedRecords.fixedSize(channel, 10, 4, 16)).isEmpty());
+  }
+
+  private void writeLengthPrefixed(final List<String> records, final ByteOrder order)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(10000).order(order);
+    for (final String record : records) {
+      final byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+      buffer.putInt(bytes.length).put(bytes);
+    }
+    buffer.flip();
+    Files.write(this.file, Arrays.copyOf(buffer.array(), buffer.limit()));
+  }
+
+  @Test
+  public void testLengthPrefixed() throws IOException {
+    final List<String> records = IntStream.range(0, 50)
+        .mapToObj(i -> repeat((char) ('a' + i % 26), i))
+        .collect(Collectors.toList());
+    for (final ByteOrder order : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+      writeLengthPrefixed(records, order);
+      for (final int windowSize : Arrays.asList(1, 5, 64, 1 << 20)) {
+        Assert.assertEquals(records,
+            records(channel -> MappedRecords.lengthPrefixed(channel, 0, order, windowSize)));
+      }
+    }
+  }
+
+  @Test
+  public void testLengthPrefixedTruncated() throws IOException {
+    writeLengthPrefixed(Arrays.asList("abc", "defg"), ByteOrder.BIG_ENDIAN);
+    final byte[] bytes = Files.readAllBytes(this.file);
+    Files.write(this.file, Arrays.copyOf(bytes, bytes.length - 1));
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      final AsyncIterator<ByteBuffer> it =
+          MappedRecords.lengthPrefixed(channel, 0, ByteOrder.BIG_ENDIAN, 4);
+      Assert.assertEquals("abc", string(it.nextStage().toCompletableFuture().join().right().get()));
+      try {
+        it.nextStage().toCompletableFuture().join();
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof EOFException);
+      }
+      Assert.assertTrue(it.nextStage().toCompletableFuture().join().isLeft());
+      it.close().toCompletableFuture().join();
+    }
+  }
+
+  @Test
+  public void testLengthPrefixedNegative() throws IOException {
+    Files.write(this.file, new byte[] {(byte) 0xff, 0, 0, 0, 1, 2, 3});
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      final AsyncIterator<ByteBuffer> it =
+          MappedRecords.lengthPrefixed(channel, 0, ByteOrder.BIG_ENDIAN, 4);
+      it.nextStage().toCompletableFuture().join();
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void testFixedSize() throws IOException {
+    Files.write(this.file, "aaabbbcccddd".getBytes(StandardCharsets.UTF_8));
+    for (final int windowSize : Arrays.asList(1, 4, 6, 1 << 20)) {
+      Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd"),
+          records(channel -> MappedRecords.fixedSize(channel, 0, 3, windowSize)));
+    }
+    Assert.assertEquals(Arrays.asList("bbb", "ccc", "ddd"),
+        records(channel -> MappedRecords.fixedSize(channel, 3, 3, 5)));
+  }
+
+  @Test
+  public void testFixedSizeTruncated() throws IOException {
+    Files.write(this.file, "aaabbbcc".getBytes(StandardCharsets.UTF_8));
+    try {
+      records(channel -> MappedRecords.fixedSize(channel, 0, 3, 16));
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testSlices() throws IOException {
+    Files.write(this.file, "abc\ndef\n".getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      final AsyncIterator<ByteBuffer> it = MappedRecords.delimited(channel, 0, (byte) '\n', 16);
+      final ByteBuffer first = it.nextStage().toCompletableFuture().join().right().get();
+      final ByteBuffer second = it.nextStage().toCompletableFuture().join().right().get();
+      it.close().toCompletableFuture().join();
+      // slices of the mapping, which stay usable after the iterator is closed
+      Assert.assertTrue(first.isDirect());
+      Assert.assertTrue(first.isReadOnly());
+      Assert.assertEquals(0, second.position());
+      Assert.assertEquals(3, second.limit());
+      Assert.assertEquals(3, second.capacity());
+      Assert.assertEquals("abc", string(first));
+      Assert.assertEquals("def", string(second));
+    }
+  }
+
+  @Test
+  public void testNextAfterClose() throws IOException {
+    Files.write(this.file, "abc\n".getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      final AsyncIterator<ByteBuffer> it = MappedRecords.delimited(channel, 0, (byte) '\n', 16);
+      it.close().toCompletableFuture().join();
+      it.nextStage().toCompletableFuture().join();
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveWindow() throws IOException {
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      MappedRecords.delimited(channel, 0, (byte) '\n', 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveRecordSize() throws IOException {
+    try (FileChannel channel = FileChannel.open(this.file)) {
+      MappedRecords.fixedSize(channel, 0, 0, 16);
+    }
+  }
+}
@@ -12,12 +12,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -25,14 +31,20 @@ import java.util.function.BiPredicate;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.ibm.asyncutil.util.AsyncCloseable;
 import com.ibm.asyncutil.util.Combinators;
 import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.MetricsSink;
 import com.ibm.asyncutil.util.StageSupport;
 
 /**
@@ -269,6 +281,77 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    */
   CompletionStage<Either<End, T>> nextStage();
 
+  /**
+   * Returns a stage that will be completed with one or more of the next elements of {@code this}
+   * iterator when the first of them becomes available, or {@link End} if there are no more
+   * elements.
+   *
+   * <p>
+   * The returned batch contains the next element, followed by up to {@code maxBatchSize - 1}
+   * subsequent elements that were already available at the time; it never waits to fill the batch.
+   * The batch is never empty, and must not be modified by the caller. Elements that are returned in
+   * a batch are consumed as if they had been returned by individual calls to {@link #nextStage()},
+   * and calls to the two methods may be freely interleaved, subject to the same restrictions as
+   * {@link #nextStage()}: this method is <b>not thread safe</b>, and sequential calls should not be
+   * made until the {@link CompletionStage} returned by the previous call has completed.
+   *
+   * <p>
+   * If an element would have been an exceptionally completed stage, the batch ends with the
+   * elements before it, and the exception is emitted by the next call to {@code nextBatchStage} or
+   * {@link #nextStage()}. If the first element is exceptional, the returned stage completes
+   * exceptionally.
+   *
+   * <p>
+   * Retrieving elements in batches amortizes the cost of a {@link CompletionStage} and an
+   * {@link Either} per element, which dominates iteration over sources that can produce many
+   * elements at once. The default implementation returns batches of a single element using
+   * {@link #nextStage()}; sources and intermediate methods which can produce elements without
+   * waiting override it, and the terminal methods on this interface consume iterators in batches.
+   *
+   * @param maxBatchSize the maximum number of elements to return, must be positive
+   * @return A {@link CompletionStage} of a non-empty list of the next elements of this iterator
+   *         held in the {@link Either#right()} position, or an instance of {@link End} held in the
+   *         {@link Either#left()} position indicating the end of iteration.
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive
+   * @see #nextStage()
+   */
+  default CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+    AsyncIterators.checkBatchSize(maxBatchSize);
+    return nextStage().thenApply(AsyncIterators::singletonBatch);
+  }
+
+  /**
+   * Returns the next element of {@code this} iterator if it is available without waiting, or null
+   * if the next element is not (or may not be) immediately available.
+   *
+   * <p>
+   * A non-null result is consumed exactly as if it had been returned by an already completed stage
+   * from {@link #nextStage()}: it holds the next element in the {@link Either#right()} position,
+   * or an instance of {@link End} in the {@link Either#left()} position. If the next element would
+   * have been an exceptionally completed stage, the element is consumed and the exception is
+   * thrown from this method, wrapped in a {@link CompletionException} if it is a checked
+   * exception. A null result does not consume anything. Calls to this method may be freely
+   * interleaved with calls to {@link #nextStage()} and {@link #nextBatchStage(int)}, subject to the
+   * same restrictions: this method is <b>not thread safe</b>, and must not be called until the
+   * {@link CompletionStage} returned by any previous call to those methods has completed.
+   *
+   * <p>
+   * This allows consumers to run through the elements which a source can produce immediately, such
+   * as those of {@link #fromIterator(Iterator)} or the elements buffered in an {@link AsyncQueue},
+   * without creating a {@link CompletionStage} per element, falling back to {@link #nextStage()}
+   * only when the source is actually pending. The terminal methods on this interface do so. The
+   * default implementation always returns null; sources and synchronous intermediate methods which
+   * can produce elements without waiting override it.
+   *
+   * @return the next element held in the {@link Either#right()} position, an instance of
+   *         {@link End} held in the {@link Either#left()} position indicating the end of
+   *         iteration, or null if the next element is not immediately available
+   * @see #nextStage()
+   */
+  default Either<End, T> tryNext() {
+    return null;
+  }
+
   /**
    * Relinquishes any resources associated with this iterator.
    *
@@ -390,6 +473,76 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return AsyncIterators.thenApplyImpl(this, fn, false, executor);
   }
 
+  /**
+   * Transforms {@code this} into an {@link AsyncLongIterator} of the results of {@code fn} applied
+   * to the elements of {@code this}, so that further transformations and reductions of the
+   * resulting values don't box them.
+   *
+   * <pre>
+   * {@code
+   * CompletionStage<Long> totalBytes = fileIterator // f1, f2, f3
+   *     .mapToLong(File::length)
+   *     .sum();
+   * }
+   * </pre>
+   *
+   * Elements are retrieved from {@code this} with {@link #nextBatchStage(int)}. If {@code this}
+   * iterator emits an exceptional stage, or {@code fn} throws, the returned iterator's batch
+   * completes exceptionally; see {@link AsyncLongIterator} for how exceptions are handled.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param fn A function which produces a long from the given T
+   * @return A new AsyncLongIterator which produces the results of {@code fn} applied to the
+   *         elements of {@code this} iterator
+   * @see AsyncLongIterator#boxed()
+   */
+  default AsyncLongIterator mapToLong(final ToLongFunction<? super T> fn) {
+    return new AsyncLongIterator() {
+      @Override
+      public CompletionStage<Boolean> nextBatch(final int maxBatchSize,
+          final LongConsumer action) {
+        return PrimitiveAsyncIterators.nextBatch(
+            AsyncIterator.this, maxBatchSize, t -> action.accept(fn.applyAsLong(t)));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Transforms {@code this} into an {@link AsyncIntIterator} of the results of {@code fn} applied
+   * to the elements of {@code this}, so that further transformations and reductions of the
+   * resulting values don't box them. See {@link #mapToLong(ToLongFunction)}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param fn A function which produces an int from the given T
+   * @return A new AsyncIntIterator which produces the results of {@code fn} applied to the
+   *         elements of {@code this} iterator
+   * @see AsyncIntIterator#boxed()
+   */
+  default AsyncIntIterator mapToInt(final ToIntFunction<? super T> fn) {
+    return new AsyncIntIterator() {
+      @Override
+      public CompletionStage<Boolean> nextBatch(final int maxBatchSize,
+          final IntConsumer action) {
+        return PrimitiveAsyncIterators.nextBatch(
+            AsyncIterator.this, maxBatchSize, t -> action.accept(fn.applyAsInt(t)));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIterator.this.close();
+      }
+    };
+  }
+
   /**
    * Transforms {@code this} into a new AsyncIterator using the produced stages of {@code fn}
    * applied to the output from the stages of {@code this}. When stages in {@code this} iterator
@@ -585,6 +738,324 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return new AsyncIterators.PartiallyEagerAsyncIterator<>(this, executeAhead, eitherF, null);
   }
 
+  /**
+   * Applies a transformation to {@code this} iterator with parallelism, emitting the results in the
+   * order they complete rather than the order of {@code this}. This method will consume results
+   * from {@code this} sequentially, but will apply the mapping function {@code fn} in parallel. At
+   * most {@code executeAhead} calls to {@code fn} can be outstanding at a time, where a call is
+   * outstanding until the consumer of the new iterator has consumed its result.
+   *
+   * <p>
+   * Unlike {@link #thenComposeAhead(Function, int)}, a slow stage does not hold back the results of
+   * stages that were started after it and have already completed, which increases throughput
+   * when the latencies of the stages vary and the order of the results doesn't matter.
+   *
+   * <pre>
+   * {@code
+   * CompletableFuture<Response> request(Server server);
+   * // at most 16 requests in flight, responses are processed as they arrive
+   * AsyncIterator.fromIterator(servers.iterator())
+   *     .thenComposeAheadUnordered(this::request, 16)
+   *     .forEach(this::process);
+   * }
+   * </pre>
+   *
+   * If {@code this} iterator emits an exceptional stage, or a stage produced by {@code fn}
+   * completes exceptionally, the returned iterator emits an exceptional stage in its place. It is
+   * necessary to {@link #close()} the returned iterator; the {@link CompletionStage} returned from
+   * calling {@link #close()} will not complete until all outstanding stages have completed, and
+   * then closes {@code this} iterator.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param fn A function which produces a new CompletionStage
+   * @param executeAhead the maximum number of calls to {@code fn} whose results have not yet been
+   *        consumed
+   * @return A transformed AsyncIterator which emits results in the order of their completion
+   * @throws IllegalArgumentException if {@code executeAhead} is not positive
+   * @see #thenComposeAhead(Function, int)
+   */
+  default <U> AsyncIterator<U> thenComposeAheadUnordered(
+      final Function<? super T, ? extends CompletionStage<U>> fn, final int executeAhead) {
+    return new AsyncIterators.UnorderedEagerAsyncIterator<>(this, executeAhead, fn, null);
+  }
+
+  /**
+   * Applies a transformation and flattening to {@code this} iterator with parallelism, flattening
+   * the produced iterators in the order their stages complete rather than the order of
+   * {@code this}. At most {@code executeAhead} calls to {@code fn} can be outstanding at a time,
+   * where a call is outstanding until the returned iterator starts to emit the elements of the
+   * iterator it produced. Each produced iterator is emitted in its entirety before the next one.
+   *
+   * <p>
+   * Once all elements from an AsyncIterator produced by {@code fn} have been consumed,
+   * {@link #close()} is called on that iterator, with the same exception behavior as
+   * {@link #thenFlattenAhead(Function, int)}. It is still necessary to {@link #close()} the
+   * returned iterator; this will close {@code this} iterator as well as the iterators that have
+   * been eagerly produced by {@code fn} but not yet emitted, once all outstanding stages have
+   * completed.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param fn A function which produces a {@link CompletionStage} which will complete with an
+   *        AsyncIterator
+   * @param executeAhead the maximum number of calls to {@code fn} whose iterators have not yet
+   *        been reached by the consumer
+   * @return A new AsyncIterator consisting of flattened iterators from applying {@code fn} to
+   *         elements of {@code this}, ordered by when the stages produced by {@code fn}
+   *         complete. The elements of each produced iterator are contiguous and in that iterator's
+   *         order
+   * @throws IllegalArgumentException if {@code executeAhead} is not positive
+   * @see #thenFlattenAhead(Function, int)
+   */
+  default <U> AsyncIterator<U> thenFlattenAheadUnordered(
+      final Function<? super T, ? extends CompletionStage<? extends AsyncIterator<U>>> fn,
+      final int executeAhead) {
+    Objects.requireNonNull(fn);
+    final Function<T, CompletionStage<AsyncIterator<U>>> widened =
+        t -> fn.apply(t).thenApply(it -> it);
+    return AsyncIterator.concat(new AsyncIterators.UnorderedEagerAsyncIterator<>(
+        this,
+        executeAhead,
+        widened,
+        // close any unused eagerly evaluated results when we're finished
+        AsyncIterator::close));
+  }
+
+  /**
+   * Returns an iterator which requests up to {@code n} elements of {@code this} iterator ahead of
+   * its consumer, hiding the latency of {@code this} iterator while the consumer is busy. The
+   * returned iterator produces the same elements as {@code this}, in the same order.
+   *
+   * <p>
+   * Unlike {@link #thenComposeAhead(Function, int)}, no function is applied to the elements.
+   * Elements of {@code this} are requested sequentially, and no further element is requested while
+   * {@code n} elements have been requested but not consumed from the returned iterator.
+   * Exceptional stages are buffered like normal elements. Prefetching starts with the first call to
+   * {@link #nextStage()} on the returned iterator.
+   *
+   * <p>
+   * Closing the returned iterator waits for any outstanding request to complete, discards the
+   * buffered elements and then closes {@code this}.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param n the maximum number of elements to request ahead of the consumer, must be positive
+   * @return An AsyncIterator which produces the elements of {@code this}
+   * @throws IllegalArgumentException if {@code n} is not positive
+   * @see #buffer(int, Executor)
+   */
+  default AsyncIterator<T> buffer(final int n) {
+    return new AsyncIterators.MergeAsyncIterator<>(Collections.singletonList(this), n, null);
+  }
+
+  /**
+   * Returns an iterator which requests up to {@code n} elements of {@code this} iterator ahead of
+   * its consumer on {@code executor}, hiding the latency of {@code this} iterator while the
+   * consumer is busy. The returned iterator produces the same elements as {@code this}, in the same
+   * order.
+   *
+   * <p>
+   * Like {@link #buffer(int)}, but prefetching is started on {@code executor} rather than on the
+   * thread that consumed an element, so a consumer never runs {@code this} iterator's
+   * {@link #nextStage()} itself. Subsequent requests in the same prefetching round may run on the
+   * thread that completes the previous request's stage.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param n the maximum number of elements to request ahead of the consumer, must be positive
+   * @param executor the executor on which to request elements of {@code this}
+   * @return An AsyncIterator which produces the elements of {@code this}
+   * @throws IllegalArgumentException if {@code n} is not positive
+   * @see #buffer(int)
+   */
+  default AsyncIterator<T> buffer(final int n, final Executor executor) {
+    return new AsyncIterators.MergeAsyncIterator<>(
+        Collections.singletonList(this), n, Objects.requireNonNull(executor));
+  }
+
+  /**
+   * Returns an iterator which produces the elements of {@code this} iterator with stages that
+   * complete on {@code executor}, hopping to the executor once per batch of elements rather than
+   * once per element.
+   *
+   * <p>
+   * Each time the returned iterator runs out of elements it requests a batch of up to
+   * {@code maxBatch} elements from {@code this} with {@link #nextBatchStage(int)}, and completes
+   * the stage of the first element of the batch on {@code executor}. The rest of the batch is
+   * produced by already completed stages (or {@link #tryNext()}), so a consumer which continues
+   * from the stage it was given keeps processing the batch on the executor without further tasks or
+   * cross-thread hand-offs. This keeps the thread which completes the stages of {@code this} (for
+   * example an I/O thread) free, at the cost of a single task per batch instead of one per element
+   * as with {@link #thenApplyAsync(Function, Executor)}.
+   *
+   * <pre>
+   * {@code
+   * // parse responses on the worker pool rather than on the network thread
+   * AsyncIterator<Response> responses = rawResponses.observeOn(workers, 64).thenApply(parse);
+   * }
+   * </pre>
+   *
+   * <p>
+   * The elements are produced in the same order as {@code this}. Exceptional stages are also
+   * completed on {@code executor}. The batch size only bounds the elements retrieved ahead of the
+   * consumer; batches are only as large as {@code this} iterator can produce them without waiting.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param executor the {@link Executor} on which the returned iterator's stages complete
+   * @param maxBatch the maximum number of elements to retrieve per task, must be positive
+   * @return An AsyncIterator which produces the elements of {@code this} on {@code executor}
+   * @throws IllegalArgumentException if {@code maxBatch} is not positive
+   * @see #nextBatchStage(int)
+   */
+  default AsyncIterator<T> observeOn(final Executor executor, final int maxBatch) {
+    AsyncIterators.checkBatchSize(maxBatch);
+    return new AsyncIterators.ObserveOnAsyncIterator<>(
+        this, Objects.requireNonNull(executor), maxBatch);
+  }
+
+  /**
+   * Returns an iterator which produces the elements of {@code this} iterator, recording the timing
+   * of each of its requests to {@code sink} under {@code name}.
+   *
+   * <p>
+   * For each request to {@code this} iterator, the number of elements produced and the time the
+   * request was pending are recorded with {@link MetricsSink#elements(String, int, long)}, or with
+   * {@link MetricsSink#failure(String, long, Throwable)} if it completes exceptionally. The time
+   * between an element being produced and the next request, which is the time spent downstream of
+   * {@code this} iterator, is recorded with {@link MetricsSink#downstream(String, long)}, and the
+   * time taken by {@link #close()} is recorded with {@link MetricsSink#closed(String, long)}.
+   * Instrumenting several stages of a pipeline shows where its time is spent.
+   *
+   * <pre>
+   * {@code
+   * AsyncIterator<Record> records = blocks
+   *     .instrument("read", sink)
+   *     .thenApply(Block::decode)
+   *     .instrument("decode", sink);
+   * }
+   * </pre>
+   *
+   * <p>
+   * The measurements are recorded before the returned iterator's stages complete, so they include
+   * the time spent in {@code sink}. Batches retrieved with {@link #nextBatchStage(int)} are
+   * recorded as a single request, so instrumentation doesn't add a stage per element to batched
+   * pipelines.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param name the name under which the measurements of {@code this} iterator are recorded
+   * @param sink the {@link MetricsSink} which receives the measurements
+   * @return An AsyncIterator which produces the elements of {@code this}
+   */
+  default AsyncIterator<T> instrument(final String name, final MetricsSink sink) {
+    return new AsyncIterators.InstrumentedAsyncIterator<>(
+        this, Objects.requireNonNull(name), Objects.requireNonNull(sink));
+  }
+
+  /**
+   * Splits {@code this} iterator into groups of elements which share a key, returning an iterator
+   * of the groups in the order their first elements were encountered.
+   *
+   * <pre>
+   * {@code
+   * // process the events of each entity in order, without serializing different entities
+   * events.groupBy(Event::getEntityId, 64, 16)
+   *   .forEach(group -> group
+   *     .thenCompose(event -> apply(event))
+   *     .consume()
+   *     .thenCompose(ig -> group.close()))
+   * }
+   * </pre>
+   *
+   * <p>
+   * {@code this} iterator is advanced sequentially, and each element is added to the buffer of its
+   * group. A group may buffer up to {@code perGroupBuffer} elements which have not been consumed,
+   * and {@code this} is not advanced while the buffer of the element's group is full. A group
+   * occupies one of {@code maxGroups} slots from when its first element is encountered until it is
+   * {@link GroupedAsyncIterator#close() closed}. While all slots are occupied, an element with a
+   * new key is held until a group is closed. Groups are therefore expected to be consumed
+   * concurrently, and to be closed when no longer needed: consuming the groups one after another
+   * can stop iteration once a buffer fills. Every group ends when {@code this} iterator ends.
+   *
+   * <p>
+   * If {@code this} produces an exceptional stage, or {@code keyFn} throws or returns null, an
+   * exceptional stage is included in the returned iterator and grouping continues with the next
+   * element.
+   *
+   * <p>
+   * Closing the returned iterator closes the groups which were not yet consumed from it, and
+   * discards subsequent elements which would have started new groups. {@code this} iterator is
+   * closed once the returned iterator and all of its groups have been closed.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param keyFn a function which produces the non-null key of an element
+   * @param maxGroups the maximum number of groups which may be open at once, must be positive
+   * @param perGroupBuffer the maximum number of unconsumed elements buffered for each group, must
+   *        be positive
+   * @param <K> the type of the keys
+   * @return an AsyncIterator of the groups of the elements of {@code this}
+   * @throws IllegalArgumentException if {@code maxGroups} or {@code perGroupBuffer} is not positive
+   * @see GroupedAsyncIterator
+   */
+  default <K> AsyncIterator<GroupedAsyncIterator<K, T>> groupBy(
+      final Function<? super T, ? extends K> keyFn,
+      final int maxGroups,
+      final int perGroupBuffer) {
+    return new AsyncIterators.GroupByAsyncIterator<>(
+        this, Objects.requireNonNull(keyFn), maxGroups, perGroupBuffer);
+  }
+
+  /**
+   * Returns {@code n} iterators which each produce every element of {@code this} iterator, in
+   * order, while {@code this} is only iterated once.
+   *
+   * <pre>
+   * {@code
+   * List<AsyncIterator<Record>> tees = records.tee(3, 1024);
+   * CompletionStage<Void> indexed = tees.get(0).thenCompose(this::index).consume();
+   * CompletionStage<Void> measured = tees.get(1).forEach(this::measure);
+   * CompletionStage<Void> archived = tees.get(2).thenCompose(this::archive).consume();
+   * }
+   * </pre>
+   *
+   * <p>
+   * The elements are shared through a single ring buffer of {@code bufferSize} elements. An
+   * element is requested from {@code this} when one of the returned iterators has consumed every
+   * element requested so far, and its slot in the buffer is reused once every open iterator has
+   * consumed it. The slowest iterator therefore applies backpressure: the other iterators may get
+   * at most {@code bufferSize} elements ahead of it before they wait for it to catch up. Each of
+   * the returned iterators should be consumed independently, or {@link #close() closed} if it is no
+   * longer needed, which removes it from the buffer. Exceptional stages produced by {@code this}
+   * are seen by every iterator.
+   *
+   * <p>
+   * Each returned iterator must be closed. {@code this} iterator is closed once all of them have
+   * been closed, and the stage returned by the last of those close calls completes after
+   * {@code this} has been closed.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param n the number of iterators to return, must be positive
+   * @param bufferSize the number of elements the fastest iterator may be ahead of the slowest, must
+   *        be positive
+   * @return a list of {@code n} AsyncIterators which each produce the elements of {@code this}
+   * @throws IllegalArgumentException if {@code n} or {@code bufferSize} is not positive
+   */
+  default List<AsyncIterator<T>> tee(final int n, final int bufferSize) {
+    return new AsyncIterators.TeeBuffer<>(this, n, bufferSize).iterators();
+  }
+
   /**
    * Transforms the AsyncIterator into one which will only produce results that match {@code
    * predicate}.
@@ -597,29 +1068,8 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return a new AsyncIterator which will only return results that match predicate
    */
   default AsyncIterator<T> filter(final Predicate<? super T> predicate) {
-
-    // keep looping looking for a value that satisfies predicate as long as the current value
-    // doesn't, and we're not out of elements
-    final Predicate<Either<End, T>> shouldKeepLooking =
-        either -> either.fold(end -> false, predicate.negate()::test);
-
-    return new AsyncIterator<T>() {
-      @Override
-      public CompletionStage<Either<End, T>> nextStage() {
-        return AsyncIterator.this
-            .nextStage()
-            .thenCompose(
-                t -> AsyncTrampoline.asyncWhile(
-                    shouldKeepLooking,
-                    c -> AsyncIterator.this.nextStage(),
-                    t));
-      }
-
-      @Override
-      public CompletionStage<Void> close() {
-        return AsyncIterator.this.close();
-      }
-    };
+    return AsyncIterators.ElementwiseAsyncIterator.fuse(
+        new AsyncIterators.FilterAsyncIterator<>(this, predicate));
   }
 
   /**
@@ -986,6 +1436,143 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return batch(counter, counter);
   }
 
+  /**
+   * Collects the results of this iterator in batches which are emitted either when they reach
+   * {@code batchSize} elements, or when {@code maxDelay} has passed since the first element of the
+   * batch was collected, whichever happens first.
+   *
+   * <p>
+   * This is useful for bulk operations which should use large batches when elements arrive quickly,
+   * while still bounding the latency of each element when they trickle in. When the delay expires
+   * while a call to this iterator's {@link #nextStage()} is still pending, the batch is emitted
+   * without waiting for it, and the element it eventually produces starts the next batch. Batches
+   * are never empty, and the last batch may be smaller than {@code batchSize} due to exhausting the
+   * underlying iterator.
+   *
+   * <pre>
+   * {@code
+   * // write at most 1000 records at a time, and never hold a record back for more than 10ms
+   * AsyncIterator<List<Record>> writes =
+   *     records.batch(Collectors.toList(), 1000, 10, TimeUnit.MILLISECONDS, scheduler);
+   * }
+   * </pre>
+   *
+   * <p>
+   * The timer is only used to schedule the expiry of a batch, so a single
+   * {@link ScheduledExecutorService} may be shared between many iterators. If this iterator
+   * produces an exceptional stage, the batch that was being collected is discarded and the
+   * returned iterator produces an exceptional stage.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param collector a {@link Collector} used to collect the elements of this iterator into
+   *        individual batches. Each batch will be created by invoking the collector's
+   *        {@link Collector#supplier()} method
+   * @param batchSize the maximum number of elements in a batch, must be positive
+   * @param maxDelay the maximum time to wait for a batch to fill after its first element has been
+   *        collected
+   * @param unit the {@link TimeUnit} of {@code maxDelay}
+   * @param scheduler the {@link ScheduledExecutorService} used to expire batches. Batches which
+   *        expire are finished and emitted on the scheduler's thread
+   * @return an AsyncIterator which invokes several iterations of the underlying iterator with each
+   *         advance, collecting these elements into containers provided by the given
+   *         {@link Collector}.
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
+   * @see #batch(Collector, int)
+   */
+  default <A, R> AsyncIterator<R> batch(
+      final Collector<? super T, A, R> collector,
+      final int batchSize,
+      final long maxDelay,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    return new AsyncIterators.TimedBatchAsyncIterator<>(
+        this, collector, batchSize, unit.toNanos(maxDelay), Objects.requireNonNull(scheduler));
+  }
+
+  /**
+   * Aggregates sliding windows of the elements of this iterator, returning an iterator of the
+   * aggregate of each window.
+   *
+   * <p>
+   * Each window holds the latest {@code size} elements, and the window advances by {@code slide}
+   * elements between each result. Rather than aggregating each window from scratch, a single
+   * {@link WindowAggregator} is maintained incrementally: each element is
+   * {@link WindowAggregator#add(Object) added} when it enters the window and
+   * {@link WindowAggregator#remove(Object) removed} when it leaves, so the work per element doesn't
+   * depend on the window size. Only the {@code size} elements of the current window are retained.
+   *
+   * <p>
+   * When {@code slide} is equal to {@code size} the windows are tumbling: each element belongs to
+   * exactly one window, no elements are retained, and a new aggregator is used for each window.
+   *
+   * <pre>
+   * {@code
+   * // the sum of the latest 100 latencies, updated every 10 samples
+   * AsyncIterator<Long> rollups = latencies.window(100, 10, Sum::new);
+   * }
+   * </pre>
+   *
+   * <p>
+   * The first result is produced once the first window is full. If this iterator ends while some
+   * elements have not yet been reflected in a result, a final result is produced for the partial
+   * window of the latest (at most {@code size}) elements. If this iterator produces an exceptional
+   * stage, the returned iterator produces an exceptional stage and the window is unaffected.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param size the number of elements in each window, must be positive
+   * @param slide the number of elements that the window advances between results, must be positive
+   *        and at most {@code size}
+   * @param aggregatorSupplier a supplier of the aggregator of the window, invoked once for sliding
+   *        windows and once per window for tumbling windows
+   * @return an AsyncIterator of the results of the windows of this iterator
+   * @throws IllegalArgumentException if {@code size} is not positive, or {@code slide} is not
+   *         between 1 and {@code size}
+   * @see #batch(Collector, int)
+   */
+  default <R> AsyncIterator<R> window(
+      final int size,
+      final int slide,
+      final Supplier<? extends WindowAggregator<? super T, ? extends R>> aggregatorSupplier) {
+    return new AsyncIterators.WindowAsyncIterator<>(
+        this, size, slide, Objects.requireNonNull(aggregatorSupplier));
+  }
+
+  /**
+   * Aggregates tumbling windows of time of the elements of this iterator, returning an iterator of
+   * the aggregate of each window.
+   *
+   * <p>
+   * A window starts with the first element produced after the previous window was emitted, and is
+   * emitted once {@code period} has passed. Each window is aggregated with a new
+   * {@link WindowAggregator} as its elements arrive, so no elements are retained no matter how
+   * many arrive within a period. Windows are never empty: if no elements arrive, no result is
+   * produced. The windows are scheduled as with {@link #batch(Collector, int, long, TimeUnit,
+   * ScheduledExecutorService)}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param period the duration of each window, measured from its first element
+   * @param unit the {@link TimeUnit} of {@code period}
+   * @param scheduler the {@link ScheduledExecutorService} used to expire windows
+   * @param aggregatorSupplier a supplier of the aggregator of each window
+   * @return an AsyncIterator of the results of the windows of this iterator
+   * @see #batch(Collector, int, long, TimeUnit, ScheduledExecutorService)
+   */
+  default <R> AsyncIterator<R> window(
+      final long period,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler,
+      final Supplier<? extends WindowAggregator<? super T, ? extends R>> aggregatorSupplier) {
+    return new AsyncIterators.TimedBatchAsyncIterator<>(
+        this, aggregatorSupplier::get, WindowAggregator::add, WindowAggregator::result,
+        Integer.MAX_VALUE, unit.toNanos(period), Objects.requireNonNull(scheduler));
+  }
+
   /**
    * Sequentially accumulates the elements of type T in this iterator into a U. This provides an
    * immutable style terminal reduction operation as opposed to the mutable style supported by
@@ -1040,6 +1627,52 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return fold(identity, biAccumulator);
   }
 
+  /**
+   * Accumulates the elements of type T in this iterator into a U in parallel, using several
+   * accumulations which are merged by {@code combiner}. For example, to sum the lengths of Strings
+   * using 4 threads, {@code stringIt.fold(0, (acc, s) -> acc + s.length(), Integer::sum, 4,
+   * executor)}.
+   *
+   * <p>
+   * The elements are distributed and accumulated as described by
+   * {@link #collect(Collector, int, Executor)}. Each accumulation starts with {@code identity}, so
+   * {@code combiner.apply(identity, u)} should be equal to {@code u}, and {@code combiner} must be
+   * compatible with {@code accumulator}.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param identity a starting U value for each accumulation
+   * @param accumulator a function that produces a new accumulation from an existing accumulation
+   *        and a new element
+   * @param combiner a function that combines two accumulations
+   * @param parallelism the number of accumulations which run concurrently, must be positive
+   * @param executor the {@link Executor} which runs the accumulations
+   * @return a {@link CompletionStage} containing the combined U of every accumulation
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @see #collect(Collector, int, Executor)
+   */
+  default <U> CompletionStage<U> fold(
+      final U identity,
+      final BiFunction<U, ? super T, U> accumulator,
+      final BinaryOperator<U> combiner,
+      final int parallelism,
+      final Executor executor) {
+    final Collector<T, U[], U> collector = Collector.of(
+        () -> {
+          @SuppressWarnings("unchecked")
+          final U[] uarr = (U[]) new Object[] {identity};
+          return uarr;
+        },
+        (uarr, t) -> uarr[0] = accumulator.apply(uarr[0], t),
+        (uarr1, uarr2) -> {
+          uarr1[0] = combiner.apply(uarr1[0], uarr2[0]);
+          return uarr1;
+        },
+        uarr -> uarr[0]);
+    return collect(collector, parallelism, executor);
+  }
+
   /**
    * Forces the eager evaluation of the entire iterator, stopping only when {@code this} iterator is
    * out of elements or an exception is encountered.
@@ -1050,7 +1683,12 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return a {@link CompletionStage} that is completed when consumption is finished
    */
   default CompletionStage<Void> consume() {
-    return AsyncTrampoline.asyncWhile(() -> nextStage().thenApply(Either::isRight));
+    return AsyncTrampoline.asyncWhile(
+        () -> AsyncIterators.convertSynchronousException(
+            () -> AsyncIterators.forEachReady(this, ig -> {
+            })
+                ? nextBatchStage(AsyncIterators.TERMINAL_BATCH_SIZE).thenApply(Either::isRight)
+                : StageSupport.completedStage(false)));
   }
 
   /**
@@ -1074,6 +1712,94 @@ public interface AsyncIterator<T> extends AsyncCloseable {
         .thenApply(ig -> AsyncIterators.finishContainer(container, collector));
   }
 
+  /**
+   * Performs a mutable reduction operation using {@code collector} with several containers that
+   * accumulate in parallel, and returns a CompletionStage of the combined result.
+   *
+   * <p>
+   * This iterator is still consumed sequentially, but its elements are distributed in batches, in
+   * turn, to {@code parallelism} containers. Each batch is accumulated into its container by a task
+   * on {@code executor}, while the next batches are retrieved. Once this iterator is exhausted, the
+   * containers are merged in order with the collector's {@link Collector#combiner() combiner} and
+   * then finished. This is useful when the accumulation is expensive enough that a single thread
+   * accumulating the elements can't keep up with the iterator.
+   *
+   * <p>
+   * Each container is only accessed by one task at a time, so the collector needn't be
+   * {@link Collector.Characteristics#CONCURRENT concurrent}. However, the elements are distributed
+   * across the containers, so the combined result only preserves the encounter order of this
+   * iterator if the collector's combiner doesn't depend on it (e.g. a sum or a set). At most one
+   * batch is retrieved ahead for each container, so a slow accumulation applies backpressure to
+   * this iterator. If this iterator or the accumulation produces an exception, the returned stage
+   * completes exceptionally once the running tasks have finished.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param collector a {@link Collector} which will collect the contents of this iterator into
+   *        {@code parallelism} containers, and combine them into an {@code R}
+   * @param parallelism the number of containers accumulating concurrently, must be positive
+   * @param executor the {@link Executor} which runs the accumulations
+   * @param <A> The intermediate type of the accumulated object
+   * @param <R> The final type of the accumulated object
+   * @return a {@link CompletionStage} which will complete with the collected value
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @see #collect(Collector)
+   */
+  default <R, A> CompletionStage<R> collect(
+      final Collector<? super T, A, R> collector,
+      final int parallelism,
+      final Executor executor) {
+    return AsyncIterators.parallelCollect(this, collector, parallelism, executor);
+  }
+
+  /**
+   * Returns a {@link Stream} of the elements of this iterator, which can be processed by CPU bound
+   * stream operations in parallel.
+   *
+   * <p>
+   * The elements are retrieved in batches with {@link #nextBatchStage(int)}, and up to
+   * {@code parallelism} batches are requested ahead of the stream so that this iterator keeps
+   * producing while the stream is busy. If {@code parallelism} is greater than 1 the returned
+   * stream is {@link Stream#isParallel() parallel}, and each batch can be processed by a different
+   * thread of the {@link ForkJoinPool} in which the stream's terminal operation runs.
+   *
+   * <pre>
+   * {@code
+   * // hash the downloaded blocks using every core
+   * try (Stream<Block> blocks = downloads.toStream(4)) {
+   *   return blocks.map(Block::sha256).collect(Collectors.toList());
+   * }
+   * }
+   * </pre>
+   *
+   * <p>
+   * The stream's operations block while waiting for this iterator, so they should not run on a
+   * thread that this iterator's stages depend on. An exceptional stage of this iterator is thrown
+   * by the stream operation as a {@link CompletionException}. {@link Stream#close() Closing} the
+   * stream stops requesting batches, waits for the outstanding requests to complete, and then
+   * closes this iterator and waits for it to be closed.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param parallelism the number of batches requested ahead of the stream, must be positive. The
+   *        returned stream is parallel if this is greater than 1
+   * @return a {@link Stream} of the elements of this iterator
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @see #fromStream(Stream, int)
+   */
+  default Stream<T> toStream(final int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    final AsyncIterators.AsyncIteratorSpliterator<T> spliterator =
+        new AsyncIterators.AsyncIteratorSpliterator<>(this, parallelism);
+    return StreamSupport
+        .stream(spliterator, parallelism > 1)
+        .onClose(() -> spliterator.close().toCompletableFuture().join());
+  }
+
   /**
    * Performs a mutable reduction operation and return a {@link CompletionStage} of the result. A
    * mutable reduction is one where the accumulator has mutable state and additional elements are
@@ -1105,15 +1831,22 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    */
   default CompletionStage<Void> forEach(final Consumer<? super T> action) {
     return AsyncTrampoline.asyncWhile(
-        () -> nextStage()
-            .thenApply(
-                eitherT -> {
-                  eitherT.forEach(
-                      ig -> {
-                      },
-                      action);
-                  return eitherT.isRight();
-                }));
+        () -> AsyncIterators.convertSynchronousException(
+            () -> !AsyncIterators.forEachReady(this, action)
+                ? StageSupport.completedStage(false)
+                : nextBatchStage(AsyncIterators.TERMINAL_BATCH_SIZE)
+                    .thenApply(
+                        eitherBatch -> {
+                          eitherBatch.forEach(
+                              ig -> {
+                              },
+                              batch -> {
+                                for (final T t : batch) {
+                                  action.accept(t);
+                                }
+                              });
+                          return eitherBatch.isRight();
+                        })));
   }
 
   /**
@@ -1258,6 +1991,21 @@ public interface AsyncIterator<T> extends AsyncCloseable {
 
       @Override
       public CompletionStage<Either<End, T>> nextStage() {
+        return next(AsyncIterator::nextStage);
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+        AsyncIterators.checkBatchSize(maxBatchSize);
+        return next(it -> it.nextBatchStage(maxBatchSize));
+      }
+
+      /**
+       * Get a result from curr with {@code fetch}, moving on to the next iterator whenever curr is
+       * out of elements
+       */
+      private <R> CompletionStage<Either<End, R>> next(
+          final Function<AsyncIterator<T>, CompletionStage<Either<End, R>>> fetch) {
         if (this.curr == null) {
           // out of iterators
           return End.endStage();
@@ -1297,13 +2045,13 @@ public interface AsyncIterator<T> extends AsyncCloseable {
 
                           // return the next future from the newly updated curr
                           return this.curr != null
-                              ? this.curr.nextStage()
-                              : End.<T>endStage();
+                              ? fetch.apply(this.curr)
+                              : End.<R>endStage();
                         });
                   },
                   t -> StageSupport.completedStage(either));
             },
-            this.curr.nextStage());
+            fetch.apply(this.curr));
       }
 
       @Override
@@ -1324,6 +2072,69 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     };
   }
 
+  /**
+   * Merges a Collection of AsyncIterators into a single AsyncIterator which emits the elements of
+   * all of the input iterators in the order they become available.
+   *
+   * <pre>
+   * {@code
+   * // consume the records of every partition as soon as they arrive, rather than one partition
+   * // at a time
+   * AsyncIterator.merge(partitions.stream()
+   *   .map(partition -> readRecords(partition))
+   *   .collect(Collectors.toList()))
+   * }
+   * </pre>
+   *
+   * Unlike {@link #concat(Collection)}, a {@link #nextStage()} call is kept outstanding on every
+   * input iterator at once. This is equivalent to {@code merge(asyncIterators, 1)}, see
+   * {@link #merge(Collection, int)}.
+   *
+   * @param asyncIterators a Collection of AsyncIterators to merge
+   * @return A single AsyncIterator that produces the elements of all of {@code asyncIterators} in
+   *         completion order
+   */
+  static <T> AsyncIterator<T> merge(final Collection<? extends AsyncIterator<T>> asyncIterators) {
+    return merge(asyncIterators, 1);
+  }
+
+  /**
+   * Merges a Collection of AsyncIterators into a single AsyncIterator which emits the elements of
+   * all of the input iterators in the order they become available, with up to {@code prefetch}
+   * elements requested ahead from each input iterator.
+   *
+   * <p>
+   * Each input iterator is iterated sequentially, and is not asked for another element while
+   * {@code prefetch} of its elements have been requested but not yet consumed from the returned
+   * iterator. The relative order of the elements of any single input iterator is preserved, but
+   * elements of different input iterators are interleaved in the order in which their stages
+   * complete. The returned iterator ends once all of the input iterators have ended. Input
+   * iterators are not accessed until the first call to {@link #nextStage()}.
+   *
+   * <p>
+   * If an input iterator produces an exceptional stage, an exceptional stage is included in the
+   * returned iterator, and that input iterator continues to be iterated. The consumer may use
+   * manual {@link #nextStage()} iteration to continue past exceptions.
+   *
+   * <p>
+   * Input iterators are not closed when they end. Closing the returned iterator waits for all
+   * outstanding {@link #nextStage()} calls on the input iterators to complete, discards any
+   * elements that were not consumed, and then closes every input iterator. If any of those close
+   * calls produce an exception, the stage returned by {@link #close()} completes exceptionally.
+   *
+   * @param asyncIterators a Collection of AsyncIterators to merge
+   * @param prefetch the maximum number of elements requested ahead from each input iterator,
+   *        must be positive
+   * @return A single AsyncIterator that produces the elements of all of {@code asyncIterators} in
+   *         completion order
+   * @throws IllegalArgumentException if {@code prefetch} is not positive
+   */
+  static <T> AsyncIterator<T> merge(
+      final Collection<? extends AsyncIterator<T>> asyncIterators,
+      final int prefetch) {
+    return new AsyncIterators.MergeAsyncIterator<>(asyncIterators, prefetch, null);
+  }
+
   /**
    * Creates an iterator that is the result of fn applied to iteration elements returned by tIt and
    * uI. If either input iterator terminates, the returned iterator will terminate. If either input
@@ -1382,8 +2193,117 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return A new AsyncIterator which will yield the elements of {@code iterator}
    */
   static <T> AsyncIterator<T> fromIterator(final Iterator<? extends T> iterator) {
-    return () -> StageSupport.completedStage(
-        iterator.hasNext() ? Either.right(iterator.next()) : End.end());
+    return new AsyncIterators.FromIteratorAsyncIterator<>(iterator);
+  }
+
+  /**
+   * Creates an AsyncIterator of the elements of an {@link Iterator} whose methods block, such as an
+   * iterator over lines read from a socket or rows of a database cursor, by reading it on a
+   * dedicated task on {@code executor}.
+   *
+   * <p>
+   * Unlike {@link #fromIterator(Iterator)}, which calls the iterator on the consumer's thread, the
+   * blocking calls never happen on the thread that consumes the returned iterator, so they don't
+   * stall the asynchronous pipeline it feeds. A single reader task runs on {@code executor} from
+   * the first request until the iterator is exhausted or closed, and reads at most
+   * {@code prefetch} elements ahead of the consumer. Since the reader blocks a thread for its whole
+   * lifetime, {@code executor} should not be a pool shared with non-blocking work; on JDK 21 and
+   * later {@code Executors.newVirtualThreadPerTaskExecutor()} is a good fit.
+   *
+   * <p>
+   * Exceptions thrown by {@code hasNext} or {@code next} are produced as exceptionally completed
+   * stages, after which reading continues. Closing the returned iterator interrupts the reader if
+   * it is running, and the returned stage completes once the reader has stopped. If
+   * {@code iterator} is {@link AutoCloseable} it is then closed. A reader blocked in a call which
+   * does not respond to interruption stops when that call returns.
+   *
+   * <pre>
+   * {@code
+   * ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+   * AsyncIterator<String> lines =
+   *     AsyncIterator.fromBlockingIterator(bufferedReader.lines().iterator(), readers, 64);
+   * }
+   * </pre>
+   *
+   * @param iterator an {@link Iterator} of T elements, which must not be used elsewhere
+   * @param executor the {@link Executor} which runs the reader
+   * @param prefetch the maximum number of elements read ahead of the consumer, must be positive
+   * @return A new AsyncIterator which will yield the elements of {@code iterator}
+   * @throws IllegalArgumentException if {@code prefetch} is not positive
+   */
+  static <T> AsyncIterator<T> fromBlockingIterator(
+      final Iterator<? extends T> iterator, final Executor executor, final int prefetch) {
+    return new AsyncIterators.BlockingIteratorAsyncIterator<>(
+        Objects.requireNonNull(iterator), Objects.requireNonNull(executor), prefetch);
+  }
+
+  /**
+   * Creates an AsyncIterator of the elements of a {@link Spliterator}, which are traversed in
+   * parallel on {@code executor}.
+   *
+   * <p>
+   * Unlike {@link #fromIterator(Iterator)}, which traverses its source on the consumer's thread one
+   * element at a time, the spliterator is split into chunks with {@link Spliterator#trySplit()},
+   * and up to {@code parallelism} chunks are traversed concurrently by tasks on {@code executor}.
+   * This is useful when producing the elements is expensive, for example when the spliterator
+   * belongs to a parallel stream with intermediate operations. Both splitting and traversal run on
+   * {@code executor}, lazily as elements are consumed. Each task traverses at most 1024 elements,
+   * and at most {@code parallelism} traversed chunks are held ahead of the consumer, so memory use
+   * is bounded no matter how large the source is (beyond what the spliterator's own
+   * {@code trySplit} buffers).
+   *
+   * <p>
+   * If the spliterator is {@link Spliterator#ORDERED ordered} the elements are produced in
+   * encounter order, otherwise chunks are produced as soon as they have been traversed. How evenly
+   * the work is divided depends on the spliterator's {@code trySplit}. A spliterator which can't be
+   * split, such as the spliterator of a sequential stream with intermediate operations, is
+   * traversed by one task at a time, 1024 elements per task.
+   *
+   * @param spliterator a {@link Spliterator} of T elements, which must not be used elsewhere
+   * @param parallelism the maximum number of chunks traversed concurrently, must be positive
+   * @param executor the {@link Executor} which traverses the chunks
+   * @return A new AsyncIterator which will yield the elements of {@code spliterator}
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @see #fromStream(Stream, int)
+   */
+  @SuppressWarnings("unchecked")
+  static <T> AsyncIterator<T> fromSpliterator(
+      final Spliterator<? extends T> spliterator, final int parallelism, final Executor executor) {
+    // the spliterator is only read from, so it can be viewed as a spliterator of T
+    return AsyncIterators.fromSpliterator(
+        (Spliterator<T>) Objects.requireNonNull(spliterator), parallelism, executor, null);
+  }
+
+  /**
+   * Creates an AsyncIterator of the elements of a {@link Stream}, which are produced in parallel on
+   * the {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * <p>
+   * The stream is made {@link Stream#parallel() parallel}, so that its
+   * {@link Stream#spliterator() spliterator} can be split, and the spliterator is traversed as
+   * described by {@link #fromSpliterator(Spliterator, int, Executor)}. The stream's intermediate
+   * operations therefore run in parallel while the elements are produced in encounter order (if
+   * the stream is ordered). Closing the returned iterator {@link Stream#close() closes} the stream.
+   *
+   * <pre>
+   * {@code
+   * // parse lines on 4 threads, feeding them to an asynchronous pipeline as they are ready
+   * AsyncIterator<Record> records = AsyncIterator.fromStream(lines.map(Record::parse), 4);
+   * }
+   * </pre>
+   *
+   * @param stream a {@link Stream} of T elements, on which no terminal operation has been invoked
+   * @param parallelism the maximum number of chunks of the stream produced concurrently, must be
+   *        positive
+   * @return A new AsyncIterator which will yield the elements of {@code stream}
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @see #toStream(int)
+   */
+  @SuppressWarnings("unchecked")
+  static <T> AsyncIterator<T> fromStream(final Stream<? extends T> stream, final int parallelism) {
+    return AsyncIterators.fromSpliterator(
+        (Spliterator<T>) stream.parallel().spliterator(), parallelism, ForkJoinPool.commonPool(),
+        stream::close);
   }
 
   /**
@@ -1403,6 +2323,13 @@ public interface AsyncIterator<T> extends AsyncCloseable {
         this.curr = End.end();
         return StageSupport.completedStage(prev);
       }
+
+      @Override
+      public Either<End, T> tryNext() {
+        final Either<End, T> prev = this.curr;
+        this.curr = End.end();
+        return prev;
+      }
     };
   }
 
@@ -1427,7 +2354,23 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    */
   static <T> AsyncIterator<T> repeat(final T t) {
     final CompletionStage<Either<End, T>> ret = StageSupport.completedStage(Either.right(t));
-    return () -> ret;
+    return new AsyncIterator<T>() {
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        return ret;
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+        AsyncIterators.checkBatchSize(maxBatchSize);
+        return StageSupport.completedStage(Either.right(Collections.nCopies(maxBatchSize, t)));
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        return Either.right(t);
+      }
+    };
   }
 
   /**
@@ -1437,11 +2380,13 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * Similar to {@code for(i = start; i < end; i++)}.
    *
    * <p>
-   * The stages returned by nextStage will be already completed.
+   * The stages returned by nextStage will be already completed. To iterate over a range without
+   * boxing each value, use {@link AsyncLongIterator#range(long, long)}.
    *
    * @param start the start point of iteration (inclusive)
    * @param end the end point of iteration (exclusive)
    * @return an AsyncIterator that will return longs from start to end
+   * @see AsyncLongIterator#range(long, long)
    */
   static AsyncIterator<Long> range(final long start, final long end) {
     if (start >= end) {
@@ -1458,6 +2403,28 @@ public interface AsyncIterator<T> extends AsyncCloseable {
           return End.endStage();
         }
       }
+
+      @Override
+      public CompletionStage<Either<End, List<Long>>> nextBatchStage(final int maxBatchSize) {
+        AsyncIterators.checkBatchSize(maxBatchSize);
+        if (this.counter < end) {
+          final long batchStart = this.counter;
+          // overflows to a negative distance for ranges longer than Long.MAX_VALUE, whose remainder
+          // is then longer than any batch
+          final long remaining = end - batchStart;
+          this.counter =
+              remaining > 0 && remaining < maxBatchSize ? end : batchStart + maxBatchSize;
+          return StageSupport.completedStage(
+              Either.right(new AsyncIterators.LongRangeList(batchStart, this.counter)));
+        } else {
+          return End.endStage();
+        }
+      }
+
+      @Override
+      public Either<End, Long> tryNext() {
+        return this.counter < end ? Either.right(this.counter++) : End.end();
+      }
     };
   }
 
@@ -1475,6 +2442,20 @@ public interface AsyncIterator<T> extends AsyncCloseable {
       public CompletionStage<Either<End, Long>> nextStage() {
         return StageSupport.completedStage(Either.right(this.counter++));
       }
+
+      @Override
+      public CompletionStage<Either<End, List<Long>>> nextBatchStage(final int maxBatchSize) {
+        AsyncIterators.checkBatchSize(maxBatchSize);
+        final long batchStart = this.counter;
+        this.counter += maxBatchSize;
+        return StageSupport.completedStage(
+            Either.right(new AsyncIterators.LongRangeList(batchStart, this.counter)));
+      }
+
+      @Override
+      public Either<End, Long> tryNext() {
+        return Either.right(this.counter++);
+      }
     };
   }
 
@@ -6,25 +6,43 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.AbstractList;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
-import java.util.stream.Collectors;
 
 import com.ibm.asyncutil.iteration.AsyncIterator.End;
-import com.ibm.asyncutil.locks.FairAsyncLock;
 import com.ibm.asyncutil.util.Combinators;
 import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.MetricsSink;
 import com.ibm.asyncutil.util.StageSupport;
 
 /**
@@ -39,6 +57,14 @@ class AsyncIterators {
 
   static final EmptyAsyncIterator<?> EMPTY_ITERATOR = new EmptyAsyncIterator<>();
 
+  /**
+   * The batch size that terminal methods request from {@link AsyncIterator#nextBatchStage(int)}
+   */
+  static final int TERMINAL_BATCH_SIZE = 256;
+
+  /** The target number of elements of the chunks of a spliterator traversed in parallel */
+  static final int SPLITERATOR_CHUNK_SIZE = 1024;
+
   private static class EmptyAsyncIterator<T> implements AsyncIterator<T> {
 
     @Override
@@ -46,6 +72,11 @@ class AsyncIterators {
       return End.endStage();
     }
 
+    @Override
+    public Either<End, T> tryNext() {
+      return End.end();
+    }
+
     @Override
     public String toString() {
       return "EmptyAsyncIterator";
@@ -61,6 +92,113 @@ class AsyncIterators {
         : collector.finisher().apply(accumulator);
   }
 
+  /**
+   * Collects the elements of an iterator into several containers which accumulate concurrently, see
+   * {@link AsyncIterator#collect(Collector, int, Executor)}.
+   *
+   * <p>
+   * The iterator is consumed sequentially, and its batches are handed to the containers in turn.
+   * Each batch is accumulated by a task on the executor. The next batch for a container isn't
+   * requested until its previous task has completed, so each container is only accessed by one task
+   * at a time, and at most one batch is held per container.
+   */
+  static <T, A, R> CompletionStage<R> parallelCollect(
+      final AsyncIterator<T> it,
+      final Collector<? super T, A, R> collector,
+      final int parallelism,
+      final Executor executor) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    Objects.requireNonNull(executor);
+    final Supplier<A> supplier = collector.supplier();
+    final BiConsumer<A, ? super T> accumulator = collector.accumulator();
+    final List<A> containers = new ArrayList<>(parallelism);
+    final List<CompletableFuture<Void>> tasks = new ArrayList<>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      containers.add(supplier.get());
+      tasks.add(CompletableFuture.completedFuture(null));
+    }
+
+    // only accessed by the sequential loop
+    final int[] nextWorker = {0};
+    final CompletionStage<Void> distributed = AsyncTrampoline.asyncWhile(() -> {
+      final int worker = nextWorker[0];
+      nextWorker[0] = worker + 1 == parallelism ? 0 : worker + 1;
+      return tasks.get(worker)
+          .thenCompose(ig -> it.nextBatchStage(TERMINAL_BATCH_SIZE))
+          .thenApply(eitherBatch -> eitherBatch.fold(
+              end -> false,
+              batch -> {
+                final A container = containers.get(worker);
+                tasks.set(worker, CompletableFuture.runAsync(() -> {
+                  for (final T t : batch) {
+                    accumulator.accept(container, t);
+                  }
+                }, executor));
+                return true;
+              }));
+    });
+
+    return StageSupport.thenComposeOrRecover(distributed, (ig, ex) -> {
+      final CompletionStage<Void> accumulated = Combinators.allOf(tasks);
+      if (ex != null) {
+        // don't report the failure while tasks are still accumulating
+        return accumulated.handle((ig2, ig3) -> null)
+            .thenCompose(ig2 -> StageSupport.<R>exceptionalStage(ex));
+      }
+      return accumulated.thenApply(ig2 -> {
+        final BinaryOperator<A> combiner = collector.combiner();
+        A combined = containers.get(0);
+        for (int i = 1; i < parallelism; i++) {
+          combined = combiner.apply(combined, containers.get(i));
+        }
+        return finishContainer(combined, collector);
+      });
+    });
+  }
+
+  static void checkBatchSize(final int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+    }
+  }
+
+  static <T> Either<End, List<T>> singletonBatch(final Either<End, T> either) {
+    return either.fold(end -> End.end(), t -> Either.right(Collections.singletonList(t)));
+  }
+
+  /**
+   * Passes the elements of {@code it} which are available without waiting to {@code action}.
+   *
+   * @return false if the end of the iterator was reached, true if the next element is not
+   *         immediately available
+   */
+  static <T> boolean forEachReady(final AsyncIterator<T> it, final Consumer<? super T> action) {
+    Either<End, T> next;
+    while ((next = it.tryNext()) != null) {
+      if (!next.isRight()) {
+        return false;
+      }
+      action.accept(next.right().get());
+    }
+    return true;
+  }
+
+  /**
+   * Throws {@code ex} from a synchronous method such as {@link AsyncIterator#tryNext()}, wrapping
+   * it in a {@link CompletionException} if it is checked.
+   */
+  static RuntimeException rethrow(final Throwable ex) {
+    if (ex instanceof RuntimeException) {
+      throw (RuntimeException) ex;
+    }
+    if (ex instanceof Error) {
+      throw (Error) ex;
+    }
+    throw new CompletionException(ex);
+  }
+
   /** Complete dest with whatever result (T or a Throwable) comes out of source */
   static <T> void listen(final CompletionStage<T> source, final CompletableFuture<T> dest) {
     source.whenComplete(
@@ -97,16 +235,17 @@ class AsyncIterators {
       final boolean synchronous,
       final Executor e) {
     assert !synchronous || e == null;
+    if (synchronous) {
+      return ElementwiseAsyncIterator.fuse(new ThenApplyAsyncIterator<>(it, f));
+    }
     return new AsyncIterator<U>() {
       @Override
       public CompletionStage<Either<End, U>> nextStage() {
         final CompletionStage<Either<End, T>> next = it.nextStage();
 
-        return synchronous
-            ? next.thenApply(this::eitherFunction)
-            : e == null
-                ? next.thenApplyAsync(this::eitherFunction)
-                : next.thenApplyAsync(this::eitherFunction, e);
+        return e == null
+            ? next.thenApplyAsync(this::eitherFunction)
+            : next.thenApplyAsync(this::eitherFunction, e);
       }
 
       Either<End, U> eitherFunction(final Either<End, T> either) {
@@ -120,6 +259,368 @@ class AsyncIterators {
     };
   }
 
+  /**
+   * Base for the synchronous intermediate iterators which transform each element of a backing
+   * iterator into at most one element, so that a batch from the backing iterator can be transformed
+   * in a single pass.
+   *
+   * <p>
+   * If the transformation throws partway through a batch, the elements transformed so far are
+   * emitted, the exception is emitted by the following call, and the rest of the batch is
+   * transformed by subsequent calls.
+   *
+   * <p>
+   * An elementwise iterator which is backed by another one that hasn't been advanced yet should be
+   * created with {@link #fuse(ElementwiseAsyncIterator)}, so that a chain of transformations only
+   * needs one stage per element of the original backing iterator.
+   */
+  abstract static class ElementwiseAsyncIterator<T, U> implements AsyncIterator<U> {
+    /** The result of {@link #transform(Object)} for an element which should be dropped */
+    static final Object FILTERED = new Object();
+
+    final AsyncIterator<T> backingIterator;
+    private Throwable deferredException;
+    // elements of the last batch which have not been transformed yet, or null
+    private List<T> remaining;
+    private int remainingIndex;
+    // whether any element has been requested, after which this iterator can't be fused
+    private boolean advanced;
+
+    ElementwiseAsyncIterator(final AsyncIterator<T> backingIterator) {
+      this.backingIterator = backingIterator;
+    }
+
+    /**
+     * @return the transformed element, or {@link #FILTERED} if there is no element for {@code t}
+     */
+    abstract Object transform(T t);
+
+    /**
+     * @return whether {@link #transform(Object)} may return {@link #FILTERED}
+     */
+    abstract boolean mayFilter();
+
+    /**
+     * Fuses {@code it} with its backing iterator if that is an elementwise iterator which hasn't
+     * been advanced, so that both transformations are applied to the elements of the fused
+     * iterator's own backing iterator in a single step.
+     *
+     * @return an iterator equivalent to {@code it}
+     */
+    @SuppressWarnings("unchecked")
+    static <T, U> AsyncIterator<U> fuse(final ElementwiseAsyncIterator<T, U> it) {
+      if (it.backingIterator instanceof ElementwiseAsyncIterator) {
+        final ElementwiseAsyncIterator<?, T> upstream =
+            (ElementwiseAsyncIterator<?, T>) it.backingIterator;
+        if (!upstream.advanced) {
+          return new FusedAsyncIterator<>(upstream, it);
+        }
+      }
+      return it;
+    }
+
+    /**
+     * Emits the result of an earlier batch which has not been returned yet. Subclasses must check
+     * this before retrieving a new element from the backing iterator.
+     *
+     * @return a stage of the next element, or null if there are no buffered elements
+     */
+    final CompletionStage<Either<End, U>> pollRemaining() {
+      this.advanced = true;
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        return StageSupport.exceptionalStage(ex);
+      }
+      if (this.remaining == null) {
+        return null;
+      }
+      try {
+        final Either<End, U> next = tryNextRemaining();
+        return next == null ? null : StageSupport.completedStage(next);
+      } catch (final Throwable ex) {
+        return StageSupport.exceptionalStage(ex);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Either<End, U> tryNextRemaining() {
+      while (this.remaining != null) {
+        final T t = this.remaining.get(this.remainingIndex++);
+        if (this.remainingIndex == this.remaining.size()) {
+          this.remaining = null;
+        }
+        final Object u = transform(t);
+        if (u != FILTERED) {
+          return Either.right((U) u);
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Transforms the elements which the backing iterator can produce without waiting, until one
+     * isn't filtered.
+     *
+     * @return the next element, or null if the backing iterator is pending
+     */
+    @SuppressWarnings("unchecked")
+    final Either<End, U> tryNextBacking() {
+      Either<End, T> next;
+      while ((next = this.backingIterator.tryNext()) != null) {
+        if (!next.isRight()) {
+          return End.end();
+        }
+        final Object u = transform(next.right().get());
+        if (u != FILTERED) {
+          return Either.right((U) u);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Either<End, U> tryNext() {
+      this.advanced = true;
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        throw rethrow(ex);
+      }
+      final Either<End, U> remaining = tryNextRemaining();
+      return remaining != null ? remaining : tryNextBacking();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<U>>> nextBatchStage(final int maxBatchSize) {
+      checkBatchSize(maxBatchSize);
+      this.advanced = true;
+      if (this.deferredException == null && this.remaining != null) {
+        final List<T> batch = this.remaining;
+        this.remaining = null;
+        final List<U> transformed = transformBatch(batch, this.remainingIndex, maxBatchSize);
+        if (transformed != null) {
+          return StageSupport.completedStage(Either.right(transformed));
+        }
+      }
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        return StageSupport.exceptionalStage(ex);
+      }
+
+      // keep requesting batches while every element of the batch was filtered
+      return AsyncTrampoline.asyncWhile(
+          Objects::isNull,
+          ig -> this.backingIterator.nextBatchStage(maxBatchSize).thenApply(
+              eitherBatch -> eitherBatch.fold(
+                  end -> End.<List<U>>end(),
+                  batch -> {
+                    final List<U> transformed = transformBatch(batch, 0, maxBatchSize);
+                    if (transformed != null) {
+                      return Either.right(transformed);
+                    }
+                    if (this.deferredException != null) {
+                      final Throwable ex = this.deferredException;
+                      this.deferredException = null;
+                      throw ex instanceof CompletionException
+                          ? (CompletionException) ex
+                          : new CompletionException(ex);
+                    }
+                    return null;
+                  })),
+          null);
+    }
+
+    /**
+     * Transforms the elements of {@code batch} starting at {@code from}, saving the elements that
+     * don't fit in {@code maxBatchSize} or that follow an exception for later calls.
+     *
+     * @return the non-empty transformed batch, or null if there were no resulting elements (either
+     *         because they were all filtered, or the first transformation threw an exception which
+     *         has been deferred)
+     */
+    @SuppressWarnings("unchecked")
+    private List<U> transformBatch(final List<T> batch, final int from, final int maxBatchSize) {
+      final int size = batch.size();
+      final List<U> transformed = new ArrayList<>(Math.min(size - from, maxBatchSize));
+      for (int i = from; i < size; i++) {
+        if (transformed.size() == maxBatchSize) {
+          this.remaining = batch;
+          this.remainingIndex = i;
+          break;
+        }
+        final Object u;
+        try {
+          u = transform(batch.get(i));
+        } catch (final Throwable ex) {
+          this.deferredException = ex;
+          if (i + 1 < size) {
+            this.remaining = batch;
+            this.remainingIndex = i + 1;
+          }
+          break;
+        }
+        if (u != FILTERED) {
+          transformed.add((U) u);
+        }
+      }
+      return transformed.isEmpty() ? null : transformed;
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  static final class ThenApplyAsyncIterator<T, U> extends ElementwiseAsyncIterator<T, U> {
+    private final Function<? super T, ? extends U> fn;
+
+    ThenApplyAsyncIterator(final AsyncIterator<T> backingIterator,
+        final Function<? super T, ? extends U> fn) {
+      super(backingIterator);
+      this.fn = fn;
+    }
+
+    @Override
+    Object transform(final T t) {
+      return this.fn.apply(t);
+    }
+
+    @Override
+    boolean mayFilter() {
+      return false;
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      final CompletionStage<Either<End, U>> remaining = pollRemaining();
+      if (remaining != null) {
+        return remaining;
+      }
+      return this.backingIterator.nextStage().thenApply(either -> either.map(this.fn));
+    }
+  }
+
+  static final class FilterAsyncIterator<T> extends ElementwiseAsyncIterator<T, T> {
+    private final Predicate<? super T> predicate;
+    private final Predicate<Either<End, T>> shouldKeepLooking;
+
+    FilterAsyncIterator(final AsyncIterator<T> backingIterator,
+        final Predicate<? super T> predicate) {
+      super(backingIterator);
+      this.predicate = predicate;
+      // keep looping looking for a value that satisfies predicate as long as the current value
+      // doesn't, and we're not out of elements
+      this.shouldKeepLooking = either -> either.fold(end -> false, predicate.negate()::test);
+    }
+
+    @Override
+    Object transform(final T t) {
+      return this.predicate.test(t) ? t : FILTERED;
+    }
+
+    @Override
+    boolean mayFilter() {
+      return true;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      final CompletionStage<Either<End, T>> remaining = pollRemaining();
+      if (remaining != null) {
+        return remaining;
+      }
+      // skip over the elements that are already available without a stage per element
+      final Either<End, T> ready;
+      try {
+        ready = tryNextBacking();
+      } catch (final Throwable ex) {
+        return StageSupport.exceptionalStage(ex);
+      }
+      if (ready != null) {
+        return StageSupport.completedStage(ready);
+      }
+      return this.backingIterator
+          .nextStage()
+          .thenCompose(
+              t -> AsyncTrampoline.asyncWhile(
+                  this.shouldKeepLooking,
+                  c -> this.backingIterator.nextStage(),
+                  t));
+    }
+  }
+
+  /**
+   * Two elementwise transformations applied in a single step. The upstream iterator is only used
+   * for its transformation, and its backing iterator is advanced directly. Since a fused iterator
+   * is also elementwise, chains of any length fuse into a single iterator.
+   */
+  static final class FusedAsyncIterator<S, T, U> extends ElementwiseAsyncIterator<S, U> {
+    private final ElementwiseAsyncIterator<S, T> upstream;
+    private final ElementwiseAsyncIterator<T, U> downstream;
+    private final boolean mayFilter;
+
+    FusedAsyncIterator(
+        final ElementwiseAsyncIterator<S, T> upstream,
+        final ElementwiseAsyncIterator<T, U> downstream) {
+      super(upstream.backingIterator);
+      this.upstream = upstream;
+      this.downstream = downstream;
+      this.mayFilter = upstream.mayFilter() || downstream.mayFilter();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object transform(final S s) {
+      final Object t = this.upstream.transform(s);
+      return t == FILTERED ? FILTERED : this.downstream.transform((T) t);
+    }
+
+    @Override
+    boolean mayFilter() {
+      return this.mayFilter;
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      final CompletionStage<Either<End, U>> remaining = pollRemaining();
+      if (remaining != null) {
+        return remaining;
+      }
+      if (!this.mayFilter) {
+        return this.backingIterator.nextStage().thenApply(this::transformOrNull);
+      }
+      // skip over the elements that are already available without a stage per element
+      final Either<End, U> ready;
+      try {
+        ready = tryNextBacking();
+      } catch (final Throwable ex) {
+        return StageSupport.exceptionalStage(ex);
+      }
+      if (ready != null) {
+        return StageSupport.completedStage(ready);
+      }
+      return AsyncTrampoline.asyncWhile(
+          Objects::isNull,
+          ig -> this.backingIterator.nextStage().thenApply(this::transformOrNull),
+          null);
+    }
+
+    /**
+     * @return the transformed element, or null if it was filtered
+     */
+    @SuppressWarnings("unchecked")
+    private Either<End, U> transformOrNull(final Either<End, S> either) {
+      if (!either.isRight()) {
+        return End.end();
+      }
+      final Object u = transform(either.right().get());
+      return u == FILTERED ? null : Either.right((U) u);
+    }
+  }
+
   static <T, U> AsyncIterator<U> thenComposeImpl(
       final AsyncIterator<T> it,
       final Function<? super T, ? extends CompletionStage<U>> f,
@@ -155,15 +656,326 @@ class AsyncIterators {
     };
   }
 
+  /**
+   * Aggregates windows of a backing iterator, see {@link AsyncIterator#window(int, int, Supplier)}.
+   *
+   * <p>
+   * Sliding windows retain the elements of the current window in a ring so they can be removed from
+   * the aggregator when they leave it. Tumbling windows never remove elements, so they retain
+   * nothing and start each window with a new aggregator.
+   */
+  static final class WindowAsyncIterator<T, R> implements AsyncIterator<R> {
+    private final AsyncIterator<T> backingIterator;
+    private final int size;
+    private final int slide;
+    private final Supplier<? extends WindowAggregator<? super T, ? extends R>> aggregatorSupplier;
+    // the elements of the current window, or null for tumbling windows
+    private final Object[] window;
+    private int windowStart;
+    private int windowSize;
+    private WindowAggregator<? super T, ? extends R> aggregator;
+    // the number of elements added since the last result
+    private int unreported;
+    private boolean ended;
+
+    WindowAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final int size,
+        final int slide,
+        final Supplier<? extends WindowAggregator<? super T, ? extends R>> aggregatorSupplier) {
+      if (size < 1) {
+        throw new IllegalArgumentException("size must be positive: " + size);
+      }
+      if (slide < 1 || slide > size) {
+        throw new IllegalArgumentException(
+            "slide must be between 1 and the window size " + size + ": " + slide);
+      }
+      this.backingIterator = backingIterator;
+      this.size = size;
+      this.slide = slide;
+      this.aggregatorSupplier = aggregatorSupplier;
+      this.window = slide == size ? null : new Object[size];
+    }
+
+    @Override
+    public CompletionStage<Either<End, R>> nextStage() {
+      if (this.ended) {
+        return End.endStage();
+      }
+      // aggregate the elements that are already available without a stage per element
+      try {
+        Either<End, T> next;
+        while ((next = this.backingIterator.tryNext()) != null) {
+          final Either<End, R> result = accept(next);
+          if (result != null) {
+            return StageSupport.completedStage(result);
+          }
+        }
+      } catch (final Throwable ex) {
+        return StageSupport.exceptionalStage(ex);
+      }
+      return AsyncTrampoline.asyncWhile(
+          Objects::isNull,
+          ig -> this.backingIterator.nextStage().thenApply(this::accept),
+          null);
+    }
+
+    /**
+     * @return the next result, or null if {@code next} didn't complete a window
+     */
+    @SuppressWarnings("unchecked")
+    private Either<End, R> accept(final Either<End, T> next) {
+      if (!next.isRight()) {
+        this.ended = true;
+        return this.unreported == 0 ? End.end() : Either.right(this.aggregator.result());
+      }
+      final T t = next.right().get();
+      if (this.aggregator == null) {
+        this.aggregator = this.aggregatorSupplier.get();
+      }
+      if (this.window == null) {
+        this.aggregator.add(t);
+        if (++this.unreported < this.size) {
+          return null;
+        }
+        final R result = this.aggregator.result();
+        this.aggregator = null;
+        this.unreported = 0;
+        return Either.right(result);
+      }
+
+      // added before the oldest element is removed, so that if the aggregator rejects it the
+      // window is unchanged
+      this.aggregator.add(t);
+      if (this.windowSize == this.size) {
+        // the oldest element leaves the window
+        final int oldest = this.windowStart;
+        try {
+          this.aggregator.remove((T) this.window[oldest]);
+        } catch (final Throwable e) {
+          // the aggregate no longer matches the window, so no more results can be produced
+          this.ended = true;
+          throw e;
+        }
+        this.window[oldest] = t;
+        this.windowStart = oldest + 1 == this.size ? 0 : oldest + 1;
+      } else {
+        this.window[this.windowSize++] = t;
+      }
+      if (++this.unreported < this.slide || this.windowSize < this.size) {
+        return null;
+      }
+      this.unreported = 0;
+      return Either.right(this.aggregator.result());
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  /**
+   * Collects the elements of a backing iterator into batches which are finished when they are
+   * full or when a timer expires, see
+   * {@link AsyncIterator#batch(Collector, int, long, TimeUnit, ScheduledExecutorService)}.
+   *
+   * <p>
+   * The backing iterator is always accessed sequentially. Each batch is owned either by the thread
+   * that completed the latest backing stage, while it accumulates that element, or by the timer
+   * once the batch is waiting for the backing iterator and has expired. The {@code state} of the
+   * batch decides which of them finishes it. A backing stage which completes after its batch was
+   * finished by the timer is left in {@code pending}, and is the first element of the next batch.
+   */
+  static final class TimedBatchAsyncIterator<T, A, R> implements AsyncIterator<R> {
+    private static final int WAITING = 0;
+    private static final int ACCUMULATING = 1;
+    private static final int FINISHED = 2;
+
+    private final AsyncIterator<T> backingIterator;
+    private final Supplier<A> supplier;
+    private final BiConsumer<A, ? super T> accumulator;
+    private final Function<A, R> finisher;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    // the latest stage requested from the backing iterator which has not been accumulated
+    private volatile CompletionStage<Either<End, T>> pending;
+    private boolean ended;
+
+    TimedBatchAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Collector<? super T, A, R> collector,
+        final int batchSize,
+        final long maxDelayNanos,
+        final ScheduledExecutorService scheduler) {
+      this(backingIterator, collector.supplier(), collector.accumulator(),
+          container -> finishContainer(container, collector), batchSize, maxDelayNanos,
+          scheduler);
+    }
+
+    /**
+     * Accumulates the batches with functions rather than a {@link Collector}, for aggregations
+     * which can't be combined, like the {@link WindowAggregator WindowAggregators} of
+     * {@link AsyncIterator#window(long, TimeUnit, ScheduledExecutorService, Supplier)}.
+     */
+    TimedBatchAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Supplier<A> supplier,
+        final BiConsumer<A, ? super T> accumulator,
+        final Function<A, R> finisher,
+        final int batchSize,
+        final long maxDelayNanos,
+        final ScheduledExecutorService scheduler) {
+      if (batchSize < 1) {
+        throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+      }
+      this.backingIterator = backingIterator;
+      this.supplier = supplier;
+      this.accumulator = accumulator;
+      this.finisher = finisher;
+      this.batchSize = batchSize;
+      this.maxDelayNanos = maxDelayNanos;
+      this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletionStage<Either<End, R>> nextStage() {
+      if (this.ended) {
+        return End.endStage();
+      }
+      if (this.pending == null) {
+        this.pending = convertSynchronousException(this.backingIterator::nextStage);
+      }
+      final Batch batch = new Batch();
+      AsyncTrampoline.asyncWhile(() -> this.pending.handle(batch::offer));
+      return batch.result;
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+
+    private final class Batch {
+      private final CompletableFuture<Either<End, R>> result = new CompletableFuture<>();
+      private final AtomicInteger state = new AtomicInteger(WAITING);
+      private final A container = TimedBatchAsyncIterator.this.supplier.get();
+      private int size;
+      private volatile boolean expired;
+      private ScheduledFuture<?> timer;
+
+      /**
+       * Accumulates the result of the pending stage into this batch if the batch has not been
+       * finished yet, returning whether the next element should be accumulated too
+       */
+      Boolean offer(final Either<End, T> either, final Throwable ex) {
+        if (!this.state.compareAndSet(WAITING, ACCUMULATING)) {
+          // the timer finished this batch, the element belongs to the next one
+          return false;
+        }
+        final TimedBatchAsyncIterator<T, A, R> it = TimedBatchAsyncIterator.this;
+        it.pending = null;
+        if (ex != null) {
+          cancelTimer();
+          this.state.set(FINISHED);
+          this.result.completeExceptionally(ex);
+          return false;
+        }
+        if (!either.isRight()) {
+          it.ended = true;
+          cancelTimer();
+          this.state.set(FINISHED);
+          if (this.size == 0) {
+            this.result.complete(End.end());
+          } else {
+            finish();
+          }
+          return false;
+        }
+        try {
+          it.accumulator.accept(this.container, either.right().get());
+        } catch (final Throwable e) {
+          cancelTimer();
+          this.state.set(FINISHED);
+          this.result.completeExceptionally(e);
+          return false;
+        }
+        if (++this.size == 1 && this.size < it.batchSize) {
+          this.timer =
+              it.scheduler.schedule(this::expire, it.maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        if (this.size == it.batchSize) {
+          cancelTimer();
+          this.state.set(FINISHED);
+          finish();
+          return false;
+        }
+        it.pending = convertSynchronousException(it.backingIterator::nextStage);
+        this.state.set(WAITING);
+        if (this.expired && this.state.compareAndSet(WAITING, FINISHED)) {
+          // the timer expired while we were accumulating
+          finish();
+          return false;
+        }
+        // the timer may have finished the batch since it was set to WAITING
+        return this.state.get() == WAITING;
+      }
+
+      private void expire() {
+        this.expired = true;
+        if (this.state.compareAndSet(WAITING, FINISHED)) {
+          finish();
+        }
+      }
+
+      private void cancelTimer() {
+        if (this.timer != null) {
+          this.timer.cancel(false);
+        }
+      }
+
+      private void finish() {
+        try {
+          this.result.complete(
+              Either.right(TimedBatchAsyncIterator.this.finisher.apply(this.container)));
+        } catch (final Throwable e) {
+          this.result.completeExceptionally(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies an asynchronous mapping to the elements of a backing iterator with up to
+   * {@code executeAhead} elements requested ahead of the consumer, and emits the results in
+   * iteration order.
+   *
+   * <p>
+   * The mapped stages are handed to the consumer in the order they were requested through an
+   * unbounded {@link AsyncQueue}, so neither side has to wait for a lock. The backing iterator is
+   * only accessed by whichever thread wins the {@code wip} counter, which keeps requesting elements
+   * until {@code executeAhead} more elements have been requested than the consumer has asked for,
+   * and then rechecks whether the consumer asked for more in the meantime.
+   */
   static class PartiallyEagerAsyncIterator<T, U> implements AsyncIterator<U> {
     private final AsyncIterator<T> backingIterator;
     private final int executeAhead;
     private final Function<U, CompletionStage<Void>> closeFn;
     private final Function<Either<End, T>, CompletionStage<Either<End, U>>> mappingFn;
-    private final Queue<CompletionStage<Either<End, U>>> pendingResults;
-    private final FairAsyncLock lock;
-    private boolean closed;
+    private final AsyncQueue<CompletionStage<Either<End, U>>> pendingResults =
+        AsyncQueues.unbounded();
 
+    // number of requests to fill, only the thread which increments it from 0 may fill
+    private final AtomicInteger wip = new AtomicInteger();
+    // completes once the backing iterator is no longer accessed after close
+    private final CompletableFuture<Void> fillingStopped = new CompletableFuture<>();
+    // number of calls to nextStage, only written by the consumer
+    private volatile long requested;
+    // only accessed while filling
+    private long pulled;
+    private boolean ended;
+    private volatile boolean closed;
 
     PartiallyEagerAsyncIterator(
         final AsyncIterator<T> backingIterator,
@@ -176,108 +988,91 @@ class AsyncIterators {
           ? u -> StageSupport.voidStage()
           : u -> AsyncIterators.convertSynchronousException(() -> closeFn.apply(u));
       this.mappingFn = mappingFn;
-      this.pendingResults = new ArrayDeque<>(executeAhead);
-      this.lock = new FairAsyncLock();
-      this.closed = false;
     }
 
-    /* return whether we need to keep filling */
-    private CompletionStage<Either<End, T>> fillMore() {
-      if (this.pendingResults.size() >= this.executeAhead) {
-        // don't call nextStage, we already have enough stuff pending
-        return End.endStage();
-      } else {
-        // keep filling up the ahead queue
-        final CompletionStage<Either<End, T>> nxt =
-            AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
-        this.pendingResults.add(nxt.thenCompose(this.mappingFn));
-        return nxt;
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
       }
+      // nextStage is not called concurrently, so this is the only writer
+      this.requested = this.requested + 1;
+      fill();
+      return this.pendingResults.nextStage().thenCompose(either -> either.fold(
+          end -> End.endStage(),
+          result -> result));
+    }
+
+    private void fill() {
+      if (this.wip.getAndIncrement() != 0) {
+        return;
+      }
+      AsyncTrampoline.asyncWhile(
+          missed -> missed != 0,
+          missed -> fillUntilFull().thenApply(ig -> this.wip.addAndGet(-missed)),
+          1);
     }
 
     /**
-     * Get a nextStage either from the queue or the backing iterator and apply the mappingFn.
-     *
-     * @param listener stage is completed when the mapping function finishes
-     * @return stage that is complete when any calls that this method made to nextStage are complete
+     * Requests elements from the backing iterator until the look-ahead limit is reached, the
+     * backing iterator ends, or this iterator is closed.
      */
-    private CompletionStage<Void> attachListener(final CompletableFuture<Either<End, U>> listener) {
-      return StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
+    private CompletionStage<Void> fillUntilFull() {
+      return AsyncTrampoline.asyncWhile(() -> {
         if (this.closed) {
-          final IllegalStateException ex =
-              new IllegalStateException("nextStage called after async iterator was closed");
-          listener.completeExceptionally(ex);
-          throw ex;
+          this.pendingResults.terminate();
+          this.fillingStopped.complete(null);
+          return StageSupport.completedStage(false);
         }
-
-        final CompletionStage<Either<End, U>> poll = this.pendingResults.poll();
-        if (poll == null) {
-
-          // there was nothing in the queue, associate our returned future with a new
-          // safeNextFuture call
-          final CompletionStage<Either<End, T>> nxt =
-              AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
-
-          // don't bother adding it to the queue, because we are already listening on it
-          AsyncIterators.listen(nxt.thenCompose(this.mappingFn), listener);
-
-          return StageSupport.voided(nxt);
-        } else {
-          // let our future be tied to the first result that was in the queue
-          AsyncIterators.listen(poll, listener);
-          return StageSupport.voidStage();
+        if (this.ended || this.pulled - this.requested >= this.executeAhead) {
+          // don't call nextStage, we already have enough stuff pending
+          return StageSupport.completedStage(false);
         }
+        this.pulled++;
+        final CompletionStage<Either<End, T>> nxt =
+            AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
+        this.pendingResults.send(nxt.thenCompose(this.mappingFn));
+        return nxt.handle((either, ex) -> {
+          // exceptional futures get added to the queue same as normal ones, we may continue
+          // filling
+          if (ex == null && !either.isRight()) {
+            this.ended = true;
+            this.pendingResults.terminate();
+          }
+          return true;
+        });
       });
     }
 
-    @Override
-    public CompletionStage<Either<End, U>> nextStage() {
-      final CompletableFuture<Either<End, U>> listener = new CompletableFuture<>();
-      final CompletionStage<Void> nextFinished = attachListener(listener);
-
-      nextFinished.thenRun(() -> {
-        AsyncTrampoline
-            .asyncWhile(() -> StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
-              if (this.closed) {
-                return StageSupport.completedStage(false);
-              }
-              return fillMore()
-                  .thenApply(Either::isRight)
-                  // exceptional futures get added to the queue same as normal ones,
-                  // we may continue filling
-                  .exceptionally(e -> true);
-            }));
-      });
-
-      return listener;
-    }
-
-    /*
-     * wait for all pending results and then call close. epoch guarantees no more new results will
-     * come in
-     */
+    /*
+     * wait until the backing iterator is no longer accessed, call closeFn on all results that were
+     * never consumed, and then close the backing iterator
+     */
     @Override
     public CompletionStage<Void> close() {
-      return StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
-        this.closed = true;
+      this.closed = true;
+      fill();
+      return this.fillingStopped.thenCompose(ig -> {
         // call closeFn on all extra eagerly evaluated results
-        final List<CompletionStage<Void>> closeFutures = this.pendingResults
-            .stream()
-            .map(f -> f.thenCompose(
-                either -> either.fold(
-                    end -> StageSupport.voidStage(),
-                    this.closeFn)))
-            .collect(Collectors.toList());
+        final List<CompletionStage<Void>> closeFutures = new ArrayList<>();
+        Optional<CompletionStage<Either<End, U>>> pending;
+        while ((pending = this.pendingResults.poll()).isPresent()) {
+          closeFutures.add(pending.get().thenCompose(
+              either -> either.fold(
+                  end -> StageSupport.voidStage(),
+                  this.closeFn)));
+        }
 
         // wait for all to complete
         final CompletionStage<Void> extraClose = Combinators.allOf(closeFutures);
         return StageSupport.thenComposeOrRecover(
             extraClose,
-            (ig, extraCloseError) -> {
+            (ig2, extraCloseError) -> {
               // call close on the source iterator
               return StageSupport.thenComposeOrRecover(
                   AsyncIterators.convertSynchronousException(this.backingIterator::close),
-                  (ig2, backingCloseError) -> {
+                  (ig3, backingCloseError) -> {
                     if (extraCloseError != null) {
                       return StageSupport.<Void>exceptionalStage(extraCloseError);
                     } else if (backingCloseError != null) {
@@ -290,6 +1085,1522 @@ class AsyncIterators {
     }
   }
 
+  /**
+   * Applies an asynchronous function to the elements of a backing iterator with up to
+   * {@code executeAhead} applications outstanding, and emits the results in the order they
+   * complete.
+   *
+   * <p>
+   * Results are handed to the consumer through an unbounded {@link AsyncQueue}. An application is
+   * outstanding from when the element is requested from the backing iterator until its result is
+   * consumed, so the queue never holds more than {@code executeAhead} results. The backing
+   * iterator is only accessed by whichever thread wins the {@code wip} counter, which keeps
+   * requesting elements until the outstanding limit is reached and then rechecks whether any
+   * results were consumed in the meantime.
+   */
+  static final class UnorderedEagerAsyncIterator<T, U> implements AsyncIterator<U> {
+    private final AsyncIterator<T> backingIterator;
+    private final int executeAhead;
+    private final Function<? super T, ? extends CompletionStage<U>> fn;
+    private final Function<U, CompletionStage<Void>> closeFn;
+    private final AsyncQueue<Either<Throwable, U>> results = AsyncQueues.unbounded();
+
+    // number of requests to fill, only the thread which increments it from 0 may fill
+    private final AtomicInteger wip = new AtomicInteger();
+    // applications that have been started but whose result has not been consumed
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // applications whose result has not been sent yet, plus one until filling is done
+    private final AtomicInteger unsent = new AtomicInteger(1);
+    // completes once the backing iterator is no longer accessed and all results have been sent
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    // only accessed while filling
+    private boolean fillingDone;
+    private volatile boolean closed;
+
+    UnorderedEagerAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final int executeAhead,
+        final Function<? super T, ? extends CompletionStage<U>> fn,
+        final Function<U, CompletionStage<Void>> closeFn) {
+      if (executeAhead < 1) {
+        throw new IllegalArgumentException("executeAhead must be positive: " + executeAhead);
+      }
+      this.backingIterator = backingIterator;
+      this.executeAhead = executeAhead;
+      this.fn = Objects.requireNonNull(fn);
+      this.closeFn = closeFn == null
+          ? u -> StageSupport.voidStage()
+          : u -> AsyncIterators.convertSynchronousException(() -> closeFn.apply(u));
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      fill();
+      return this.results.nextStage().thenCompose(either -> either.fold(
+          end -> End.endStage(),
+          result -> {
+            // a result was consumed, allow another application
+            this.outstanding.decrementAndGet();
+            fill();
+            return result.fold(
+                StageSupport::exceptionalStage,
+                u -> StageSupport.completedStage(Either.right(u)));
+          }));
+    }
+
+    private void fill() {
+      if (this.wip.getAndIncrement() != 0) {
+        return;
+      }
+      AsyncTrampoline.asyncWhile(
+          missed -> missed != 0,
+          missed -> fillUntilFull().thenApply(ig -> this.wip.addAndGet(-missed)),
+          1);
+    }
+
+    /**
+     * Requests elements from the backing iterator until the outstanding limit is reached, the
+     * backing iterator ends, or this iterator is closed.
+     */
+    private CompletionStage<Void> fillUntilFull() {
+      return AsyncTrampoline.asyncWhile(() -> {
+        if (this.fillingDone) {
+          return StageSupport.completedStage(false);
+        }
+        if (this.closed) {
+          finishFilling();
+          return StageSupport.completedStage(false);
+        }
+        if (this.outstanding.get() >= this.executeAhead) {
+          return StageSupport.completedStage(false);
+        }
+        this.outstanding.incrementAndGet();
+        this.unsent.incrementAndGet();
+        return AsyncIterators.convertSynchronousException(this.backingIterator::nextStage)
+            .handle((either, ex) -> {
+              if (ex != null) {
+                // exceptions from the backing iterator are emitted like results, we may continue
+                send(Either.left(ex));
+                return true;
+              }
+              return either.fold(
+                  end -> {
+                    this.outstanding.decrementAndGet();
+                    sent();
+                    finishFilling();
+                    return false;
+                  },
+                  t -> {
+                    if (this.closed) {
+                      // don't start new work after close, the element is dropped
+                      this.outstanding.decrementAndGet();
+                      sent();
+                    } else {
+                      AsyncIterators.convertSynchronousException(() -> this.fn.apply(t))
+                          .whenComplete((u, uex) -> send(
+                              uex != null ? Either.left(uex) : Either.right(u)));
+                    }
+                    return true;
+                  });
+            });
+      });
+    }
+
+    private void send(final Either<Throwable, U> result) {
+      this.results.send(result);
+      sent();
+    }
+
+    private void sent() {
+      if (this.unsent.decrementAndGet() == 0) {
+        this.results.terminate();
+        this.finished.complete(null);
+      }
+    }
+
+    private void finishFilling() {
+      this.fillingDone = true;
+      sent();
+    }
+
+    /*
+     * stop requesting elements, wait for all outstanding applications, close the results that were
+     * never consumed, and then close the backing iterator
+     */
+    @Override
+    public CompletionStage<Void> close() {
+      this.closed = true;
+      fill();
+      return this.finished.thenCompose(ig -> {
+        final List<CompletionStage<Void>> closeFutures = new ArrayList<>();
+        Optional<Either<Throwable, U>> unconsumed;
+        while ((unconsumed = this.results.poll()).isPresent()) {
+          unconsumed.get().forEach(ex -> {
+          }, u -> closeFutures.add(this.closeFn.apply(u)));
+        }
+        return StageSupport.thenComposeOrRecover(
+            Combinators.allOf(closeFutures),
+            (ig2, unconsumedCloseError) -> StageSupport.thenComposeOrRecover(
+                AsyncIterators.convertSynchronousException(this.backingIterator::close),
+                (ig3, backingCloseError) -> {
+                  if (unconsumedCloseError != null) {
+                    return StageSupport.<Void>exceptionalStage(unconsumedCloseError);
+                  } else if (backingCloseError != null) {
+                    return StageSupport.<Void>exceptionalStage(backingCloseError);
+                  }
+                  return StageSupport.voidStage();
+                }));
+      });
+    }
+  }
+
+  /**
+   * Completes the stages of a backing iterator on an executor once per batch, see
+   * {@link AsyncIterator#observeOn(Executor, int)}.
+   *
+   * <p>
+   * The elements of the latest batch are retained until they are consumed, and only the batch
+   * retrieval is hopped to the executor.
+   */
+  static final class ObserveOnAsyncIterator<T> implements AsyncIterator<T> {
+    private final AsyncIterator<T> backingIterator;
+    private final Executor executor;
+    private final int maxBatch;
+    // the elements of the latest batch which have not been consumed, or null
+    private List<T> remaining;
+    private int remainingIndex;
+
+    ObserveOnAsyncIterator(
+        final AsyncIterator<T> backingIterator, final Executor executor, final int maxBatch) {
+      this.backingIterator = backingIterator;
+      this.executor = executor;
+      this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      final Either<End, T> next = tryNext();
+      if (next != null) {
+        return StageSupport.completedStage(next);
+      }
+      return nextBatchOnExecutor(this.maxBatch).thenApply(eitherBatch -> eitherBatch.map(batch -> {
+        if (batch.size() > 1) {
+          this.remaining = batch;
+          this.remainingIndex = 1;
+        }
+        return batch.get(0);
+      }));
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      final List<T> remaining = this.remaining;
+      if (remaining == null) {
+        return null;
+      }
+      final T t = remaining.get(this.remainingIndex++);
+      if (this.remainingIndex == remaining.size()) {
+        this.remaining = null;
+      }
+      return Either.right(t);
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      checkBatchSize(maxBatchSize);
+      final List<T> remaining = this.remaining;
+      if (remaining != null) {
+        final int from = this.remainingIndex;
+        final int to = Math.min(remaining.size(), from + maxBatchSize);
+        if (to == remaining.size()) {
+          this.remaining = null;
+        } else {
+          this.remainingIndex = to;
+        }
+        return StageSupport.completedStage(Either.right(remaining.subList(from, to)));
+      }
+      return nextBatchOnExecutor(Math.min(maxBatchSize, this.maxBatch));
+    }
+
+    private CompletionStage<Either<End, List<T>>> nextBatchOnExecutor(final int maxBatchSize) {
+      // handle rather than thenApply so exceptional stages are also completed on the executor
+      return convertSynchronousException(() -> this.backingIterator.nextBatchStage(maxBatchSize))
+          .handleAsync((eitherBatch, ex) -> {
+            if (ex != null) {
+              throw rethrow(ex);
+            }
+            return eitherBatch;
+          }, this.executor);
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  /**
+   * Records the timing of the requests to a backing iterator, see
+   * {@link AsyncIterator#instrument(String, MetricsSink)}.
+   *
+   * <p>
+   * The time an element was delivered is written by the stage which delivers it, before the
+   * consumer can observe the element, so the consumer's next request always sees it.
+   */
+  static final class InstrumentedAsyncIterator<T> implements AsyncIterator<T> {
+    private final AsyncIterator<T> backingIterator;
+    private final String name;
+    private final MetricsSink sink;
+    // the time the latest element was delivered, if it hasn't been requested after yet
+    private long delivered;
+    private boolean hasDelivered;
+
+    InstrumentedAsyncIterator(
+        final AsyncIterator<T> backingIterator, final String name, final MetricsSink sink) {
+      this.backingIterator = backingIterator;
+      this.name = name;
+      this.sink = sink;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      final long requested = request();
+      return convertSynchronousException(this.backingIterator::nextStage)
+          .whenComplete(
+              (either, ex) -> record(requested, either != null && either.isRight() ? 1 : 0, ex));
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      final long requested = request();
+      return convertSynchronousException(() -> this.backingIterator.nextBatchStage(maxBatchSize))
+          .whenComplete((either, ex) -> record(
+              requested, either == null ? 0 : either.fold(end -> 0, List::size), ex));
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      final long requested = request();
+      final Either<End, T> next;
+      try {
+        next = this.backingIterator.tryNext();
+      } catch (final Throwable ex) {
+        record(requested, 0, ex);
+        throw ex;
+      }
+      if (next != null) {
+        record(requested, next.isRight() ? 1 : 0, null);
+      }
+      return next;
+    }
+
+    private long request() {
+      final long now = System.nanoTime();
+      if (this.hasDelivered) {
+        this.sink.downstream(this.name, now - this.delivered);
+        this.hasDelivered = false;
+      }
+      return now;
+    }
+
+    private void record(final long requested, final int count, final Throwable ex) {
+      final long now = System.nanoTime();
+      if (ex != null) {
+        this.sink.failure(this.name, now - requested, ex);
+      } else {
+        this.sink.elements(this.name, count, now - requested);
+      }
+      if (count != 0) {
+        this.delivered = now;
+        this.hasDelivered = true;
+      }
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      final long start = System.nanoTime();
+      return convertSynchronousException(this.backingIterator::close)
+          .whenComplete((ig, ex) -> this.sink.closed(this.name, System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Iterates over a collection of backing iterators concurrently and emits their elements in the
+   * order they complete, see {@link AsyncIterator#merge(Collection, int)}. A merge of a single
+   * iterator buffers it, see {@link AsyncIterator#buffer(int, Executor)}.
+   *
+   * <p>
+   * Elements are handed to the consumer through an unbounded {@link AsyncQueue}. Every backing
+   * iterator is only accessed by whichever thread wins its {@code wip} counter, which keeps
+   * requesting elements until {@code prefetch} of that iterator's elements are outstanding. An
+   * element is outstanding from when it is requested until it is consumed, so the queue never
+   * holds more than {@code prefetch} elements of any backing iterator. If an executor is given,
+   * the winner of a {@code wip} counter requests elements on that executor.
+   */
+  static final class MergeAsyncIterator<T> implements AsyncIterator<T> {
+    private final List<MergeSource> sources;
+    private final int prefetch;
+    private final Executor executor;
+    private final AsyncQueue<Arrival<T>> arrivals = AsyncQueues.unbounded();
+    // backing iterators which have not ended
+    private final AtomicInteger remaining;
+    // only accessed by the consumer
+    private boolean started;
+    private volatile boolean closed;
+
+    MergeAsyncIterator(
+        final Collection<? extends AsyncIterator<T>> backingIterators,
+        final int prefetch,
+        final Executor executor) {
+      if (prefetch < 1) {
+        throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+      }
+      this.prefetch = prefetch;
+      this.executor = executor;
+      this.sources = new ArrayList<>(backingIterators.size());
+      for (final AsyncIterator<T> it : backingIterators) {
+        this.sources.add(new MergeSource(Objects.requireNonNull(it)));
+      }
+      this.remaining = new AtomicInteger(this.sources.size());
+      if (this.sources.isEmpty()) {
+        this.arrivals.terminate();
+      }
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      start();
+      return this.arrivals.nextStage().thenApply(either -> either.fold(
+          end -> End.end(),
+          arrival -> {
+            arrival.source.consumed();
+            if (arrival.exception != null) {
+              throw rethrow(arrival.exception);
+            }
+            return Either.right(arrival.value);
+          }));
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      if (this.closed) {
+        throw new IllegalStateException("tryNext called after async iterator was closed");
+      }
+      start();
+      final Either<End, Arrival<T>> either = this.arrivals.tryNext();
+      if (either == null || !either.isRight()) {
+        return either == null ? null : End.end();
+      }
+      final Arrival<T> arrival = either.right().get();
+      arrival.source.consumed();
+      if (arrival.exception != null) {
+        throw rethrow(arrival.exception);
+      }
+      return Either.right(arrival.value);
+    }
+
+    private void start() {
+      if (!this.started) {
+        this.started = true;
+        for (final MergeSource source : this.sources) {
+          source.fill();
+        }
+      }
+    }
+
+    /*
+     * stop requesting elements, wait for all outstanding requests, and then close every backing
+     * iterator
+     */
+    @Override
+    public CompletionStage<Void> close() {
+      this.closed = true;
+      final List<CompletionStage<Void>> stopped = new ArrayList<>(this.sources.size());
+      for (final MergeSource source : this.sources) {
+        source.fill();
+        stopped.add(source.stopped);
+      }
+      return Combinators.allOf(stopped).thenCompose(ig -> {
+        final List<CompletionStage<Void>> closeFutures = new ArrayList<>(this.sources.size());
+        for (final MergeSource source : this.sources) {
+          closeFutures.add(
+              AsyncIterators.convertSynchronousException(source.backingIterator::close));
+        }
+        return Combinators.allOf(closeFutures);
+      });
+    }
+
+    private static final class Arrival<T> {
+      private final MergeAsyncIterator<T>.MergeSource source;
+      private final T value;
+      private final Throwable exception;
+
+      Arrival(final MergeAsyncIterator<T>.MergeSource source, final T value,
+          final Throwable exception) {
+        this.source = source;
+        this.value = value;
+        this.exception = exception;
+      }
+    }
+
+    private final class MergeSource {
+      private final AsyncIterator<T> backingIterator;
+      // number of requests to fill, only the thread which increments it from 0 may fill
+      private final AtomicInteger wip = new AtomicInteger();
+      // elements which have arrived but have not been consumed
+      private final AtomicInteger outstanding = new AtomicInteger();
+      // completes once the backing iterator is no longer accessed
+      private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+      // only accessed while filling
+      private boolean ended;
+
+      MergeSource(final AsyncIterator<T> backingIterator) {
+        this.backingIterator = backingIterator;
+      }
+
+      void consumed() {
+        this.outstanding.decrementAndGet();
+        fill();
+      }
+
+      void fill() {
+        if (this.wip.getAndIncrement() != 0) {
+          return;
+        }
+        if (MergeAsyncIterator.this.executor == null) {
+          drain();
+        } else {
+          MergeAsyncIterator.this.executor.execute(this::drain);
+        }
+      }
+
+      private void drain() {
+        int missed = 1;
+        // fill synchronously while the backing iterator has elements immediately available
+        while (fillReady()) {
+          missed = this.wip.addAndGet(-missed);
+          if (missed == 0) {
+            return;
+          }
+        }
+        AsyncTrampoline.asyncWhile(
+            m -> m != 0,
+            m -> fillUntilFull().thenApply(ig -> this.wip.addAndGet(-m)),
+            missed);
+      }
+
+      /** Checks whether another element may be requested from the backing iterator */
+      private boolean mayRequest() {
+        if (this.ended) {
+          return false;
+        }
+        if (MergeAsyncIterator.this.closed) {
+          this.stopped.complete(null);
+          return false;
+        }
+        return this.outstanding.get() < MergeAsyncIterator.this.prefetch;
+      }
+
+      /**
+       * Requests elements with {@link AsyncIterator#tryNext()} until no more may be requested,
+       * returning false if the backing iterator had no element immediately available
+       */
+      private boolean fillReady() {
+        while (mayRequest()) {
+          final Either<End, T> next;
+          try {
+            next = this.backingIterator.tryNext();
+          } catch (final Throwable e) {
+            arrive(null, e);
+            continue;
+          }
+          if (next == null) {
+            return false;
+          }
+          if (!next.isRight()) {
+            end();
+            return true;
+          }
+          arrive(next.right().get(), null);
+        }
+        return true;
+      }
+
+      /**
+       * Requests elements from the backing iterator until the prefetch limit is reached, the
+       * backing iterator ends, or the merged iterator is closed.
+       */
+      private CompletionStage<Void> fillUntilFull() {
+        return AsyncTrampoline.asyncWhile(() -> {
+          if (!mayRequest()) {
+            return StageSupport.completedStage(false);
+          }
+          return AsyncIterators.convertSynchronousException(this.backingIterator::nextStage)
+              .handle((either, ex) -> {
+                if (ex != null) {
+                  // exceptions from the backing iterator are emitted like elements, we may
+                  // continue
+                  arrive(null, ex);
+                  return true;
+                }
+                if (!either.isRight()) {
+                  end();
+                  return false;
+                }
+                arrive(either.right().get(), null);
+                return true;
+              });
+        });
+      }
+
+      private void arrive(final T t, final Throwable ex) {
+        this.outstanding.incrementAndGet();
+        MergeAsyncIterator.this.arrivals.send(new Arrival<>(this, t, ex));
+      }
+
+      private void end() {
+        this.ended = true;
+        this.stopped.complete(null);
+        if (MergeAsyncIterator.this.remaining.decrementAndGet() == 0) {
+          MergeAsyncIterator.this.arrivals.terminate();
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits a backing iterator into groups of elements which share a key, see
+   * {@link AsyncIterator#groupBy(Function, int, int)}.
+   *
+   * <p>
+   * The backing iterator is advanced by a single loop, which routes each element to the
+   * {@link AsyncQueues#buffered(int) buffered queue} of its group and waits for the send to be
+   * accepted before advancing again. Open groups are tracked in a concurrent map, and a group is
+   * removed from it when it is closed. The grouping iterator and every group each hold a reference,
+   * and the backing iterator is closed by whichever close releases the last one.
+   */
+  static final class GroupByAsyncIterator<K, T>
+      implements AsyncIterator<GroupedAsyncIterator<K, T>> {
+    private static final CompletionStage<Boolean> TRUE = StageSupport.completedStage(true);
+    private static final CompletionStage<Boolean> FALSE = StageSupport.completedStage(false);
+
+    private final AsyncIterator<T> backingIterator;
+    private final Function<? super T, ? extends K> keyFn;
+    private final int maxGroups;
+    private final int perGroupBuffer;
+    private final ConcurrentHashMap<K, Group> groups = new ConcurrentHashMap<>();
+    private final AsyncQueue<Either<Throwable, Group>> emitted = AsyncQueues.unbounded();
+    // one for this iterator and one for each open group
+    private final AtomicInteger references = new AtomicInteger(1);
+    // completes once the backing iterator is no longer advanced
+    private final CompletableFuture<Void> advancingStopped = new CompletableFuture<>();
+    // completed when a group is closed, while an element waits for a free slot
+    private volatile CompletableFuture<Void> slotWaiter;
+    private volatile boolean released;
+    private volatile boolean closed;
+    // only accessed by the consumer
+    private boolean started;
+
+    GroupByAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Function<? super T, ? extends K> keyFn,
+        final int maxGroups,
+        final int perGroupBuffer) {
+      if (maxGroups < 1) {
+        throw new IllegalArgumentException("maxGroups must be positive: " + maxGroups);
+      }
+      if (perGroupBuffer < 1) {
+        throw new IllegalArgumentException("perGroupBuffer must be positive: " + perGroupBuffer);
+      }
+      this.backingIterator = backingIterator;
+      this.keyFn = keyFn;
+      this.maxGroups = maxGroups;
+      this.perGroupBuffer = perGroupBuffer;
+    }
+
+    @Override
+    public CompletionStage<Either<End, GroupedAsyncIterator<K, T>>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      if (!this.started) {
+        this.started = true;
+        advance();
+      }
+      return this.emitted.nextStage().thenApply(either -> either.fold(
+          end -> End.end(),
+          result -> result.fold(
+              ex -> {
+                throw rethrow(ex);
+              },
+              group -> {
+                group.claimed = true;
+                return Either.right(group);
+              })));
+    }
+
+    private void advance() {
+      AsyncTrampoline
+          .asyncWhile(() -> {
+            if (this.released) {
+              return FALSE;
+            }
+            return StageSupport.thenComposeOrRecover(
+                AsyncIterators.convertSynchronousException(this.backingIterator::nextStage),
+                (either, ex) -> {
+                  if (ex != null) {
+                    this.emitted.send(Either.left(ex));
+                    return TRUE;
+                  }
+                  return either.fold(
+                      end -> {
+                        this.emitted.terminate();
+                        for (final Group group : this.groups.values()) {
+                          group.queue.terminate();
+                        }
+                        return FALSE;
+                      },
+                      this::route);
+                });
+          })
+          .whenComplete((ig, ex) -> this.advancingStopped.complete(null));
+    }
+
+    /** Sends an element to its group, returning a stage that completes once it was accepted */
+    private CompletionStage<Boolean> route(final T t) {
+      final K key;
+      try {
+        key = Objects.requireNonNull(this.keyFn.apply(t), "groupBy key must not be null");
+      } catch (final Throwable e) {
+        this.emitted.send(Either.left(e));
+        return TRUE;
+      }
+      final Group group = this.groups.get(key);
+      if (group != null) {
+        // the group may be closed concurrently, in which case the element starts a new group
+        return group.queue.send(t).thenCompose(accepted -> accepted ? TRUE : route(t));
+      }
+      return awaitSlot().thenCompose(ig -> {
+        if (this.closed || !acquireReference()) {
+          // new groups can no longer be consumed, discard the element
+          return TRUE;
+        }
+        final Group created = new Group(key);
+        this.groups.put(key, created);
+        this.emitted.send(Either.right(created));
+        if (this.closed) {
+          // this iterator was closed concurrently and may have missed the new group
+          closeUnclaimed();
+        }
+        return created.queue.send(t).thenCompose(accepted -> accepted ? TRUE : route(t));
+      });
+    }
+
+    private CompletionStage<Void> awaitSlot() {
+      return AsyncTrampoline.asyncWhile(() -> {
+        if (this.closed || this.groups.size() < this.maxGroups) {
+          return FALSE;
+        }
+        final CompletableFuture<Void> waiter = new CompletableFuture<>();
+        this.slotWaiter = waiter;
+        // recheck in case a group was closed before the waiter was published
+        if (this.closed || this.groups.size() < this.maxGroups) {
+          return FALSE;
+        }
+        return waiter.thenApply(ig -> true);
+      });
+    }
+
+    private void signalSlot() {
+      final CompletableFuture<Void> waiter = this.slotWaiter;
+      if (waiter != null) {
+        waiter.complete(null);
+      }
+    }
+
+    private boolean acquireReference() {
+      int refs;
+      do {
+        refs = this.references.get();
+        if (refs == 0) {
+          return false;
+        }
+      } while (!this.references.compareAndSet(refs, refs + 1));
+      return true;
+    }
+
+    private CompletionStage<Void> release() {
+      if (this.references.decrementAndGet() != 0) {
+        return StageSupport.voidStage();
+      }
+      this.released = true;
+      return this.advancingStopped.thenCompose(
+          ig -> AsyncIterators.convertSynchronousException(this.backingIterator::close));
+    }
+
+    private List<CompletionStage<Void>> closeUnclaimed() {
+      final List<CompletionStage<Void>> closeFutures = new ArrayList<>();
+      for (final Group group : this.groups.values()) {
+        if (!group.claimed) {
+          closeFutures.add(group.close());
+        }
+      }
+      return closeFutures;
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      if (this.closed) {
+        return StageSupport.voidStage();
+      }
+      this.closed = true;
+      if (!this.started) {
+        this.advancingStopped.complete(null);
+      }
+      signalSlot();
+      final List<CompletionStage<Void>> closeFutures = closeUnclaimed();
+      closeFutures.add(release());
+      return Combinators.allOf(closeFutures);
+    }
+
+    private final class Group implements GroupedAsyncIterator<K, T> {
+      private final K key;
+      private final BoundedAsyncQueue<T> queue =
+          AsyncQueues.buffered(GroupByAsyncIterator.this.perGroupBuffer);
+      private final AtomicBoolean groupClosed = new AtomicBoolean();
+      // whether the group has been consumed from the grouping iterator
+      private volatile boolean claimed;
+
+      Group(final K key) {
+        this.key = key;
+      }
+
+      @Override
+      public K getKey() {
+        return this.key;
+      }
+
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        return this.queue.nextStage();
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+        return this.queue.nextBatchStage(maxBatchSize);
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        return this.queue.tryNext();
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        if (!this.groupClosed.compareAndSet(false, true)) {
+          return StageSupport.voidStage();
+        }
+        GroupByAsyncIterator.this.groups.remove(this.key, this);
+        signalSlot();
+        // release before discarding, which may resume advancing on this thread
+        final CompletionStage<Void> released = release();
+        this.queue.terminate();
+        // discard the buffered elements, which also releases a pending send into this group
+        Either<End, T> discarded;
+        while ((discarded = this.queue.tryNext()) != null && discarded.isRight()) {
+        }
+        return released;
+      }
+
+      @Override
+      public String toString() {
+        return "Group(" + this.key + ")";
+      }
+    }
+  }
+
+  /**
+   * Shares the elements of a backing iterator between several iterators through a ring buffer,
+   * see {@link AsyncIterator#tee(int, int)}.
+   *
+   * <p>
+   * The backing iterator is only advanced by whichever thread wins the {@code wip} counter, which
+   * writes each element to the next slot of the buffer and then publishes it by incrementing
+   * {@code produced}. Each iterator only advances its own {@code position}, so a slot may be
+   * overwritten once it is behind the position of every open iterator. Exceptional stages of the
+   * backing iterator are stored in the buffer as {@link Failure Failures}.
+   */
+  static final class TeeBuffer<T> {
+    private final AsyncIterator<T> backingIterator;
+    private final Object[] buffer;
+    private final List<Tee> tees;
+    private final AtomicInteger open;
+    // number of requests to advance, only the thread which increments it from 0 may advance
+    private final AtomicInteger wip = new AtomicInteger();
+    // completes once the backing iterator is no longer advanced after every tee was closed
+    private final CompletableFuture<Void> advancingStopped = new CompletableFuture<>();
+    // only written while advancing
+    private volatile long produced;
+    private volatile boolean ended;
+    private volatile boolean allClosed;
+
+    TeeBuffer(final AsyncIterator<T> backingIterator, final int n, final int bufferSize) {
+      if (n < 1) {
+        throw new IllegalArgumentException("n must be positive: " + n);
+      }
+      if (bufferSize < 1) {
+        throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+      }
+      this.backingIterator = backingIterator;
+      this.buffer = new Object[bufferSize];
+      this.open = new AtomicInteger(n);
+      final List<Tee> tees = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        tees.add(new Tee());
+      }
+      this.tees = tees;
+    }
+
+    List<AsyncIterator<T>> iterators() {
+      return Collections.unmodifiableList(this.tees);
+    }
+
+    private void advance() {
+      if (this.wip.getAndIncrement() != 0) {
+        return;
+      }
+      AsyncTrampoline.asyncWhile(
+          missed -> missed != 0,
+          missed -> advanceWhileDemanded().thenApply(ig -> this.wip.addAndGet(-missed)),
+          1);
+    }
+
+    /**
+     * Advances the backing iterator while the fastest open tee has consumed every element and the
+     * slowest open tee is less than a buffer behind
+     */
+    private CompletionStage<Void> advanceWhileDemanded() {
+      return AsyncTrampoline.asyncWhile(() -> {
+        if (this.allClosed) {
+          this.advancingStopped.complete(null);
+          return StageSupport.completedStage(false);
+        }
+        if (this.ended) {
+          return StageSupport.completedStage(false);
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (final Tee tee : this.tees) {
+          if (!tee.closed) {
+            final long position = tee.position;
+            min = Math.min(min, position);
+            max = Math.max(max, position);
+          }
+        }
+        final long produced = this.produced;
+        if (max < produced || produced - min >= this.buffer.length) {
+          return StageSupport.completedStage(false);
+        }
+        return AsyncIterators.convertSynchronousException(this.backingIterator::nextStage)
+            .handle((either, ex) -> {
+              if (ex != null) {
+                publish(new Failure(ex));
+                return true;
+              }
+              return either.fold(
+                  end -> {
+                    this.ended = true;
+                    wakeAll();
+                    return false;
+                  },
+                  t -> {
+                    publish(t);
+                    return true;
+                  });
+            });
+      });
+    }
+
+    private void publish(final Object element) {
+      final long produced = this.produced;
+      this.buffer[(int) (produced % this.buffer.length)] = element;
+      this.produced = produced + 1;
+      wakeAll();
+    }
+
+    private void wakeAll() {
+      for (final Tee tee : this.tees) {
+        final CompletableFuture<Void> waiter = tee.waiter;
+        if (waiter != null) {
+          waiter.complete(null);
+        }
+      }
+    }
+
+    /** An exceptional stage of the backing iterator */
+    private static final class Failure {
+      private final Throwable exception;
+
+      Failure(final Throwable exception) {
+        this.exception = exception;
+      }
+    }
+
+    private final class Tee implements AsyncIterator<T> {
+      // only written by the consumer of this tee
+      private volatile long position;
+      private volatile boolean closed;
+      private volatile CompletableFuture<Void> waiter;
+      // a failure consumed by tryNextImpl which has yet to be reported
+      private Failure failure;
+
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        if (this.closed) {
+          return StageSupport.exceptionalStage(
+              new IllegalStateException("nextStage called after async iterator was closed"));
+        }
+        final Either<End, T> next = tryNextImpl();
+        if (next != null) {
+          return StageSupport.completedStage(next);
+        }
+        final Failure failure = tryFailure();
+        if (failure != null) {
+          return StageSupport.exceptionalStage(failure.exception);
+        }
+        final CompletableFuture<Void> waiter = new CompletableFuture<>();
+        this.waiter = waiter;
+        // recheck in case an element was published before the waiter
+        if (this.position < TeeBuffer.this.produced || TeeBuffer.this.ended) {
+          return nextStage();
+        }
+        advance();
+        return waiter.thenCompose(ig -> nextStage());
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        if (this.closed) {
+          throw new IllegalStateException("tryNext called after async iterator was closed");
+        }
+        final Either<End, T> next = tryNextImpl();
+        if (next != null) {
+          return next;
+        }
+        final Failure failure = tryFailure();
+        if (failure != null) {
+          throw rethrow(failure.exception);
+        }
+        return null;
+      }
+
+      /**
+       * Consumes the next element if it is available, returning null if there is none yet or it is
+       * a failure, which is then held in {@code failure}
+       */
+      @SuppressWarnings("unchecked")
+      private Either<End, T> tryNextImpl() {
+        final long position = this.position;
+        final long produced = TeeBuffer.this.produced;
+        if (position >= produced) {
+          // the backing iterator may have ended after producing more elements
+          return TeeBuffer.this.ended && position >= TeeBuffer.this.produced ? End.end() : null;
+        }
+        final Object[] buffer = TeeBuffer.this.buffer;
+        final Object element = buffer[(int) (position % buffer.length)];
+        this.position = position + 1;
+        if (produced - position >= buffer.length) {
+          // this tee may have been holding back the backing iterator
+          advance();
+        }
+        if (element instanceof Failure) {
+          this.failure = (Failure) element;
+          return null;
+        }
+        return Either.right((T) element);
+      }
+
+      private Failure tryFailure() {
+        final Failure failure = this.failure;
+        this.failure = null;
+        return failure;
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        if (this.closed) {
+          return StageSupport.voidStage();
+        }
+        this.closed = true;
+        if (TeeBuffer.this.open.decrementAndGet() != 0) {
+          // this tee may have been the slowest
+          advance();
+          return StageSupport.voidStage();
+        }
+        TeeBuffer.this.allClosed = true;
+        advance();
+        return TeeBuffer.this.advancingStopped.thenCompose(
+            ig -> AsyncIterators.convertSynchronousException(
+                TeeBuffer.this.backingIterator::close));
+      }
+    }
+  }
+
+  /**
+   * Traverses chunks of a spliterator in parallel, see
+   * {@link AsyncIterator#fromSpliterator(Spliterator, int, Executor)}.
+   */
+  static <T> AsyncIterator<T> fromSpliterator(
+      final Spliterator<T> spliterator,
+      final int parallelism,
+      final Executor executor,
+      final Runnable onClose) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    Objects.requireNonNull(executor);
+    final AsyncIterator<Spliterator<T>> chunks =
+        new SpliteratorChunks<>(spliterator, executor, onClose);
+    final Function<Spliterator<T>, CompletionStage<AsyncIterator<T>>> traverse = chunk -> {
+      final SpliteratorPieces<T> pieces = new SpliteratorPieces<>(chunk, executor);
+      return CompletableFuture.runAsync(pieces::traversePiece, executor).thenApply(ig -> pieces);
+    };
+    return spliterator.hasCharacteristics(Spliterator.ORDERED)
+        ? chunks.thenFlattenAhead(traverse, parallelism)
+        : chunks.thenFlattenAheadUnordered(traverse, parallelism);
+  }
+
+  /**
+   * Splits a spliterator into chunks of at most {@link #SPLITERATOR_CHUNK_SIZE} elements (where the
+   * spliterator can be split that far), in encounter order.
+   *
+   * <p>
+   * Splitting is lazy: the suffixes which haven't been split yet are kept in {@code pending}, with
+   * the next one in encounter order first. Since {@link Spliterator#trySplit()} roughly halves a
+   * sized spliterator, there are only logarithmically many of them. Splitting may have to traverse
+   * elements, as with spliterators over an {@link Iterator}, so each split runs on the executor.
+   * The requests for chunks are sequential, so {@code pending} is only accessed by one split at a
+   * time.
+   */
+  private static final class SpliteratorChunks<T> implements AsyncIterator<Spliterator<T>> {
+    private final ArrayDeque<Spliterator<T>> pending = new ArrayDeque<>();
+    private final Executor executor;
+    private final Runnable onClose;
+
+    SpliteratorChunks(
+        final Spliterator<T> spliterator, final Executor executor, final Runnable onClose) {
+      this.pending.add(spliterator);
+      this.executor = executor;
+      this.onClose = onClose;
+    }
+
+    @Override
+    public CompletionStage<Either<End, Spliterator<T>>> nextStage() {
+      return CompletableFuture.supplyAsync(this::split, this.executor);
+    }
+
+    private Either<End, Spliterator<T>> split() {
+      Spliterator<T> chunk = this.pending.poll();
+      if (chunk == null) {
+        return End.end();
+      }
+      Spliterator<T> prefix;
+      while (chunk.estimateSize() > SPLITERATOR_CHUNK_SIZE && (prefix = chunk.trySplit()) != null) {
+        this.pending.addFirst(chunk);
+        chunk = prefix;
+      }
+      return Either.right(chunk);
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      this.pending.clear();
+      if (this.onClose == null) {
+        return StageSupport.voidStage();
+      }
+      try {
+        this.onClose.run();
+        return StageSupport.voidStage();
+      } catch (final Throwable ex) {
+        return StageSupport.exceptionalStage(ex);
+      }
+    }
+  }
+
+  /**
+   * Traverses a chunk of a spliterator on an executor, at most {@link #SPLITERATOR_CHUNK_SIZE}
+   * elements at a time, so that a chunk which couldn't be split that far is never held in memory
+   * at once. The first piece is traversed before the iterator is handed to the consumer, and each
+   * further piece once the consumer has reached the end of the previous one.
+   */
+  private static final class SpliteratorPieces<T> implements AsyncIterator<T> {
+    private final Spliterator<T> chunk;
+    private final Executor executor;
+    private final List<T> piece = new ArrayList<>();
+    private int pieceIndex;
+    private boolean exhausted;
+
+    SpliteratorPieces(final Spliterator<T> chunk, final Executor executor) {
+      this.chunk = chunk;
+      this.executor = executor;
+    }
+
+    void traversePiece() {
+      this.piece.clear();
+      this.pieceIndex = 0;
+      while (this.piece.size() < SPLITERATOR_CHUNK_SIZE && this.chunk.tryAdvance(this.piece::add)) {
+      }
+      this.exhausted = this.piece.size() < SPLITERATOR_CHUNK_SIZE;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      final Either<End, T> next = tryNext();
+      return next != null
+          ? StageSupport.completedStage(next)
+          : CompletableFuture.runAsync(this::traversePiece, this.executor)
+              .thenCompose(ig -> nextStage());
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      if (this.pieceIndex < this.piece.size()) {
+        return Either.right(this.piece.get(this.pieceIndex++));
+      }
+      return this.exhausted ? End.end() : null;
+    }
+  }
+
+  /**
+   * A spliterator of the elements of an AsyncIterator, see {@link AsyncIterator#toStream(int)}.
+   *
+   * <p>
+   * Elements are retrieved in batches, and up to {@code parallelism} batches are requested ahead of
+   * the stream. Splitting hands a whole batch to another thread. The requests are chained so that
+   * the iterator is still advanced sequentially, and once {@link #close()} is called the chain
+   * stops requesting batches so that the iterator can be closed after the outstanding requests.
+   */
+  static final class AsyncIteratorSpliterator<T> implements Spliterator<T> {
+    private final AsyncIterator<T> iterator;
+    private final int parallelism;
+    private final ArrayDeque<CompletionStage<Either<End, List<T>>>> ahead = new ArrayDeque<>();
+    private List<T> batch = Collections.emptyList();
+    private int batchIndex;
+    private boolean ended;
+    private volatile boolean closed;
+
+    AsyncIteratorSpliterator(final AsyncIterator<T> iterator, final int parallelism) {
+      this.iterator = iterator;
+      this.parallelism = parallelism;
+    }
+
+    /**
+     * @return whether there is a batch with an element left, waiting for one if necessary
+     */
+    private boolean advanceBatch() {
+      while (this.batchIndex == this.batch.size()) {
+        if (this.ended) {
+          return false;
+        }
+        requestAhead();
+        final Either<End, List<T>> next = this.ahead.poll().toCompletableFuture().join();
+        if (next.isRight()) {
+          this.batch = next.right().get();
+          this.batchIndex = 0;
+        } else {
+          this.ended = true;
+          this.ahead.clear();
+        }
+      }
+      return true;
+    }
+
+    private void requestAhead() {
+      while (this.ahead.size() < this.parallelism) {
+        final CompletionStage<Either<End, List<T>>> last = this.ahead.peekLast();
+        this.ahead.add(last == null
+            ? convertSynchronousException(() -> this.iterator.nextBatchStage(TERMINAL_BATCH_SIZE))
+            : last.thenCompose(either -> either.isRight() && !this.closed
+                ? this.iterator.nextBatchStage(TERMINAL_BATCH_SIZE)
+                : End.endStage()));
+      }
+    }
+
+    /**
+     * Stops requesting batches, waits for the outstanding requests (ignoring their exceptions)
+     * and then closes the iterator.
+     */
+    CompletionStage<Void> close() {
+      this.closed = true;
+      final List<CompletionStage<Either<End, List<T>>>> outstanding = new ArrayList<>(this.ahead);
+      this.ahead.clear();
+      return Combinators.allOf(outstanding)
+          .handle((ig, ex) -> null)
+          .thenCompose(ig -> this.iterator.close());
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+      if (!advanceBatch()) {
+        return false;
+      }
+      action.accept(this.batch.get(this.batchIndex++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+      while (advanceBatch()) {
+        final List<T> batch = this.batch;
+        for (int i = this.batchIndex; i < batch.size(); i++) {
+          this.batchIndex = i + 1;
+          action.accept(batch.get(i));
+        }
+      }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (this.parallelism == 1 || !advanceBatch()) {
+        return null;
+      }
+      final Spliterator<T> split = Spliterators.spliterator(
+          this.batch.subList(this.batchIndex, this.batch.size()).toArray(), ORDERED);
+      this.batchIndex = this.batch.size();
+      return split;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED;
+    }
+  }
+
+  /**
+   * Reads a blocking iterator on an executor, see
+   * {@link AsyncIterator#fromBlockingIterator(Iterator, Executor, int)}.
+   *
+   * <p>
+   * A single reader task moves the elements (or the exceptions thrown while reading them) into a
+   * buffered queue, and waits for the queue to accept more before reading the next element. The
+   * reader runs as a {@link FutureTask} so that closing can interrupt it only while it is running.
+   * {@code state} decides whether the reader ever runs: if the iterator is closed before the
+   * reader starts, the reader does nothing.
+   */
+  static final class BlockingIteratorAsyncIterator<T> implements AsyncIterator<T> {
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int STOPPED = 2;
+
+    private final Iterator<? extends T> iterator;
+    private final Executor executor;
+    private final BoundedAsyncQueue<Either<Throwable, T>> buffer;
+    private final FutureTask<Void> reader = new FutureTask<>(this::read, null);
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private final CompletableFuture<Void> readerStopped = new CompletableFuture<>();
+    // only accessed by the consumer
+    private boolean started;
+    private volatile boolean closed;
+
+    BlockingIteratorAsyncIterator(
+        final Iterator<? extends T> iterator, final Executor executor, final int prefetch) {
+      if (prefetch < 1) {
+        throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+      }
+      this.iterator = iterator;
+      this.executor = executor;
+      this.buffer = AsyncQueues.buffered(prefetch);
+    }
+
+    private void read() {
+      if (!this.state.compareAndSet(NEW, RUNNING)) {
+        return;
+      }
+      try {
+        while (!this.closed) {
+          Either<Throwable, T> next;
+          try {
+            if (!this.iterator.hasNext()) {
+              break;
+            }
+            next = Either.right(this.iterator.next());
+          } catch (final Throwable ex) {
+            next = Either.left(ex);
+          }
+          // wait until the buffer has room before reading ahead any further
+          if (!this.buffer.send(next).toCompletableFuture().get()) {
+            break;
+          }
+        }
+      } catch (final InterruptedException | ExecutionException e) {
+        // interrupted by close
+      } finally {
+        this.buffer.terminate();
+        this.state.set(STOPPED);
+        this.readerStopped.complete(null);
+      }
+    }
+
+    private void start() {
+      if (!this.started) {
+        this.started = true;
+        try {
+          this.executor.execute(this.reader);
+        } catch (final Throwable ex) {
+          this.buffer.send(Either.left(ex));
+          this.buffer.terminate();
+          if (this.state.compareAndSet(NEW, STOPPED)) {
+            this.readerStopped.complete(null);
+          }
+        }
+      }
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      start();
+      return this.buffer.nextStage().thenApply(BlockingIteratorAsyncIterator::unwrap);
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      if (this.closed) {
+        throw new IllegalStateException("tryNext called after async iterator was closed");
+      }
+      start();
+      final Either<End, Either<Throwable, T>> next = this.buffer.tryNext();
+      return next == null ? null : unwrap(next);
+    }
+
+    private static <T> Either<End, T> unwrap(final Either<End, Either<Throwable, T>> next) {
+      return next.fold(
+          end -> End.end(),
+          either -> either.fold(
+              ex -> {
+                throw rethrow(ex);
+              },
+              Either::right));
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      this.closed = true;
+      if (this.state.compareAndSet(NEW, STOPPED)) {
+        // the reader never ran, and never will
+        this.readerStopped.complete(null);
+      } else {
+        this.reader.cancel(true);
+      }
+      return this.readerStopped.thenCompose(ig -> {
+        if (this.iterator instanceof AutoCloseable) {
+          try {
+            ((AutoCloseable) this.iterator).close();
+          } catch (final Throwable ex) {
+            return StageSupport.exceptionalStage(ex);
+          }
+        }
+        return StageSupport.voidStage();
+      });
+    }
+  }
+
+  static final class FromIteratorAsyncIterator<T> implements AsyncIterator<T> {
+    private final Iterator<? extends T> iterator;
+    private Throwable deferredException;
+
+    FromIteratorAsyncIterator(final Iterator<? extends T> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        return StageSupport.exceptionalStage(ex);
+      }
+      return StageSupport.completedStage(
+          this.iterator.hasNext() ? Either.right(this.iterator.next()) : End.end());
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        throw rethrow(ex);
+      }
+      return this.iterator.hasNext() ? Either.right(this.iterator.next()) : End.end();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      checkBatchSize(maxBatchSize);
+      if (this.deferredException != null) {
+        final Throwable ex = this.deferredException;
+        this.deferredException = null;
+        return StageSupport.exceptionalStage(ex);
+      }
+      if (!this.iterator.hasNext()) {
+        return End.endStage();
+      }
+      final List<T> batch = new ArrayList<>(Math.min(maxBatchSize, 16));
+      batch.add(this.iterator.next());
+      try {
+        while (batch.size() < maxBatchSize && this.iterator.hasNext()) {
+          batch.add(this.iterator.next());
+        }
+      } catch (final Throwable ex) {
+        // emit what we have so far, the exception is thrown on the next call
+        this.deferredException = ex;
+      }
+      return StageSupport.completedStage(Either.right(batch));
+    }
+  }
+
+  /** An immutable list of the longs in [start, end) */
+  static final class LongRangeList extends AbstractList<Long> implements RandomAccess {
+    private final long start;
+    private final int size;
+
+    LongRangeList(final long start, final long end) {
+      assert end - start <= Integer.MAX_VALUE;
+      this.start = start;
+      this.size = (int) (end - start);
+    }
+
+    @Override
+    public Long get(final int index) {
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+      }
+      return this.start + index;
+    }
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+  }
+
   private static class FailOnceAsyncIterator<T> implements AsyncIterator<T> {
     private Throwable exception;
 
@@ -312,6 +2623,8 @@ class AsyncIterators {
   static class ConcatAsyncIterator<T> implements AsyncIterator<T> {
     private final Iterator<? extends AsyncIterator<T>> asyncIterators;
     private AsyncIterator<T> current;
+    // whether tryNext has already consumed the end of the current iterator
+    private boolean currentEnded;
   
     public ConcatAsyncIterator(final Iterator<? extends AsyncIterator<T>> asyncIterators) {
       assert asyncIterators.hasNext();
@@ -321,6 +2634,36 @@ class AsyncIterators {
   
     @Override
     public CompletionStage<Either<AsyncIterator.End, T>> nextStage() {
+      return next(AsyncIterator::nextStage);
+    }
+
+    @Override
+    public CompletionStage<Either<AsyncIterator.End, List<T>>> nextBatchStage(
+        final int maxBatchSize) {
+      checkBatchSize(maxBatchSize);
+      return next(it -> it.nextBatchStage(maxBatchSize));
+    }
+
+    @Override
+    public Either<AsyncIterator.End, T> tryNext() {
+      if (this.currentEnded) {
+        return null;
+      }
+      final Either<AsyncIterator.End, T> next = this.current.tryNext();
+      if (next != null && !next.isRight() && this.asyncIterators.hasNext()) {
+        // moving on to the next iterator requires closing the current one, leave that to nextStage
+        this.currentEnded = true;
+        return null;
+      }
+      return next;
+    }
+
+    /**
+     * Get a result from the current iterator with {@code fetch}, moving on to the next iterator
+     * whenever the current one is out of elements
+     */
+    private <R> CompletionStage<Either<AsyncIterator.End, R>> next(
+        final Function<AsyncIterator<T>, CompletionStage<Either<AsyncIterator.End, R>>> fetch) {
       return asyncWhileAsyncInitial(
           et -> !et.isRight() && this.asyncIterators.hasNext(),
           /*
@@ -337,9 +2680,18 @@ class AsyncIterators {
                     throwable == null
                         ? this.asyncIterators.next()
                         : errorOnce(throwable);
-                return this.current.nextStage();
+                return fetch.apply(this.current);
               }),
-          this.current.nextStage());
+          fetchCurrent(fetch));
+    }
+
+    private <R> CompletionStage<Either<AsyncIterator.End, R>> fetchCurrent(
+        final Function<AsyncIterator<T>, CompletionStage<Either<AsyncIterator.End, R>>> fetch) {
+      if (this.currentEnded) {
+        this.currentEnded = false;
+        return End.endStage();
+      }
+      return fetch.apply(this.current);
     }
   
     @Override
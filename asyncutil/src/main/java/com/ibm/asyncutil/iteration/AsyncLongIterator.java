@@ -0,0 +1,233 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+import com.ibm.asyncutil.util.AsyncCloseable;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * A primitive specialization of {@link AsyncIterator} for {@code long} elements, which never boxes
+ * its elements or wraps them in an {@link com.ibm.asyncutil.util.Either Either}.
+ *
+ * <p>
+ * Elements are retrieved in batches with {@link #nextBatch(int, LongConsumer)}, which passes each
+ * element directly to a consumer and produces a single {@link CompletionStage} per batch. As with
+ * {@link AsyncIterator}, the intermediate methods are lazy, and the terminal methods (such as
+ * {@link #sum()} or {@link #collectToArray()}) consume the iterator.
+ *
+ * <pre>
+ * {@code
+ * // the sum of the squares of the odd numbers below 1000000, without boxing any of them
+ * CompletionStage<Long> sum = AsyncLongIterator.range(0, 1000000)
+ *    .filter(i -> i % 2 == 1)
+ *    .map(i -> i * i)
+ *    .sum();
+ * }
+ * </pre>
+ *
+ * <p>
+ * An AsyncLongIterator can be created from an {@link AsyncIterator} with
+ * {@link AsyncIterator#mapToLong(ToLongFunction)}, and converted back with {@link #boxed()} or
+ * {@link #mapToObj(LongFunction)}.
+ *
+ * <p>
+ * Unlike {@link AsyncIterator#nextStage()}, iteration can not continue past an exception: if a
+ * source or one of the functions passed to the intermediate methods throws, the stage returned by
+ * {@link #nextBatch(int, LongConsumer)} completes exceptionally, and the elements that remained in
+ * that batch are lost.
+ *
+ * @see AsyncIterator
+ * @see AsyncIntIterator
+ */
+public interface AsyncLongIterator extends AsyncCloseable {
+
+  /**
+   * Passes the next elements of {@code this} iterator to {@code action}, and returns a stage that
+   * completes when at least one element has been passed, or when there are no more elements.
+   *
+   * <p>
+   * At most {@code maxBatchSize} elements are passed, and the method never waits to fill the
+   * batch. Like {@link AsyncIterator#nextStage()}, this method is <b>not thread safe</b>, and
+   * sequential calls should not be made until the {@link CompletionStage} returned by the previous
+   * call has completed. {@code action} may be called on the calling thread or on the thread which
+   * completes the returned stage.
+   *
+   * @param maxBatchSize the maximum number of elements to pass to {@code action}, must be positive
+   * @param action the consumer of the elements of the batch
+   * @return a {@link CompletionStage} which completes with {@code true} after passing between one
+   *         and {@code maxBatchSize} elements to {@code action}, or with {@code false} without
+   *         passing any elements if the iterator has no more elements. If {@code action} throws,
+   *         the stage completes exceptionally.
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive
+   */
+  CompletionStage<Boolean> nextBatch(int maxBatchSize, LongConsumer action);
+
+  /**
+   * Relinquishes any resources associated with this iterator. See {@link AsyncIterator#close()}.
+   *
+   * @return a {@link CompletionStage} that completes when all resources associated with this
+   *         iterator have been relinquished.
+   */
+  @Override
+  default CompletionStage<Void> close() {
+    return StageSupport.voidStage();
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncLongIterator that iterates over the results of
+   * {@code fn} applied to the elements of {@code this}.
+   *
+   * <p>
+   * This is a lazy <i>intermediate</i> method.
+   *
+   * @param fn a function applied to each element of {@code this}
+   * @return A new AsyncLongIterator which produces the results of {@code fn}
+   */
+  default AsyncLongIterator map(final LongUnaryOperator fn) {
+    return new PrimitiveAsyncIterators.MapLongIterator(this, fn);
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncLongIterator that only returns the elements that
+   * satisfy {@code predicate}.
+   *
+   * <p>
+   * This is a lazy <i>intermediate</i> method.
+   *
+   * @param predicate a predicate applied to each element of {@code this}
+   * @return A new AsyncLongIterator which produces the elements of {@code this} for which
+   *         {@code predicate} returns true
+   */
+  default AsyncLongIterator filter(final LongPredicate predicate) {
+    return new PrimitiveAsyncIterators.FilterLongIterator(this, predicate);
+  }
+
+  /**
+   * Transforms {@code this} into an {@link AsyncIterator} of the results of {@code fn} applied to
+   * the elements of {@code this}.
+   *
+   * <p>
+   * This is a lazy <i>intermediate</i> method.
+   *
+   * @param fn a function applied to each element of {@code this}
+   * @param <T> the type of the elements of the returned iterator
+   * @return An {@link AsyncIterator} which produces the results of {@code fn}
+   */
+  default <T> AsyncIterator<T> mapToObj(final LongFunction<? extends T> fn) {
+    return new PrimitiveAsyncIterators.BoxingAsyncIterator<>(
+        (maxBatchSize, action) -> nextBatch(maxBatchSize, l -> action.accept(fn.apply(l))),
+        this);
+  }
+
+  /**
+   * Converts {@code this} into an {@link AsyncIterator} of {@link Long Longs}.
+   *
+   * <p>
+   * This is a lazy <i>intermediate</i> method.
+   *
+   * @return An {@link AsyncIterator} of the elements of {@code this}
+   */
+  default AsyncIterator<Long> boxed() {
+    return mapToObj(Long::valueOf);
+  }
+
+  /**
+   * Performs the side effecting action until the end of iteration is reached.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param action a side-effecting action that takes a long
+   * @return a {@link CompletionStage} that completes when there are no elements left to apply
+   *         {@code action} to, or an exception has been encountered
+   */
+  default CompletionStage<Void> forEach(final LongConsumer action) {
+    return AsyncTrampoline.asyncWhile(
+        () -> AsyncIterators.convertSynchronousException(
+            () -> nextBatch(AsyncIterators.TERMINAL_BATCH_SIZE, action)));
+  }
+
+  /**
+   * Sequentially accumulates the elements of {@code this} iterator, starting with
+   * {@code identity}.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param identity the initial value of the accumulation
+   * @param accumulator a function that takes the current accumulated value and an element to fold
+   *        in (in that order), and produces a new accumulated value
+   * @return a {@link CompletionStage} of the result of repeated application of
+   *         {@code accumulator}
+   */
+  default CompletionStage<Long> fold(final long identity, final LongBinaryOperator accumulator) {
+    final long[] acc = {identity};
+    return forEach(l -> acc[0] = accumulator.applyAsLong(acc[0], l)).thenApply(ig -> acc[0]);
+  }
+
+  /**
+   * Sums the elements of {@code this} iterator.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @return a {@link CompletionStage} of the sum of the elements of {@code this}
+   */
+  default CompletionStage<Long> sum() {
+    return fold(0, Long::sum);
+  }
+
+  /**
+   * Collects the elements of {@code this} iterator into an array.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @return a {@link CompletionStage} of an array of the elements of {@code this}, in iteration
+   *         order
+   */
+  default CompletionStage<long[]> collectToArray() {
+    final PrimitiveAsyncIterators.LongArrayBuilder builder =
+        new PrimitiveAsyncIterators.LongArrayBuilder();
+    return forEach(builder).thenApply(ig -> builder.toArray());
+  }
+
+  /**
+   * Creates an AsyncLongIterator for a range.
+   *
+   * <p>
+   * Similar to {@code for(i = start; i < end; i++)}. The stages returned by
+   * {@link #nextBatch(int, LongConsumer)} will be already completed.
+   *
+   * @param start the start point of iteration (inclusive)
+   * @param end the end point of iteration (exclusive)
+   * @return an AsyncLongIterator that will return longs from start to end
+   * @see AsyncIterator#range(long, long)
+   */
+  static AsyncLongIterator range(final long start, final long end) {
+    return new PrimitiveAsyncIterators.LongRangeIterator(start, end);
+  }
+
+  /**
+   * Creates an infinite AsyncLongIterator starting at {@code start}.
+   *
+   * @param start the start point of iteration (inclusive)
+   * @return an AsyncLongIterator that will return longs starting with start
+   * @see AsyncIterator#infiniteRange(long)
+   */
+  static AsyncLongIterator infiniteRange(final long start) {
+    return new PrimitiveAsyncIterators.InfiniteLongRangeIterator(start);
+  }
+}
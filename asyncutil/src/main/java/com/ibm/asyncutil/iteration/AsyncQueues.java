@@ -6,6 +6,8 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -157,17 +159,44 @@ public final class AsyncQueues {
     }
 
     @Override
-    public Optional<T> poll() {
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      AsyncIterators.checkBatchSize(maxBatchSize);
+      return this.head.thenApply(res -> res.fold(
+          end -> End.end(),
+          first -> {
+            // the head was completed with a value, take it along with any other values that have
+            // already been sent without waiting on uncompleted nodes
+            final List<T> batch = new ArrayList<>(Math.min(maxBatchSize, 16));
+            batch.add(first);
+            Node<T> node = this.head.next;
+            Either<End, T> next;
+            while (batch.size() < maxBatchSize
+                && (next = node.getNow(null)) != null
+                && next.isRight()) {
+              batch.add(next.fold(end -> null, t -> t));
+              node = node.next;
+            }
+            this.head = node;
+            return Either.right(batch);
+          }));
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
       // head can never complete exceptionally so this should never throw
       final Either<End, T> currentResult = this.head.getNow(null);
       if (currentResult != null) {
         // we're going to consume a value, move the header pointer forward
         this.head = this.head.next;
-        return currentResult.right();
       }
+      return currentResult;
+    }
 
+    @Override
+    public Optional<T> poll() {
+      final Either<End, T> currentResult = tryNext();
       // future wasn't completed
-      return Optional.empty();
+      return currentResult == null ? Optional.empty() : currentResult.right();
     }
 
     @Override
@@ -240,6 +269,17 @@ public final class AsyncQueues {
           });
     }
 
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      return this.backingQueue
+          .nextBatchStage(maxBatchSize)
+          .thenApply(res -> {
+            res.forEach(ig -> {
+            }, batch -> this.sendThrottle.release(batch.size()));
+            return res;
+          });
+    }
+
     @Override
     // acquire a permit and enqueue a node on the backing queue
     public CompletionStage<Boolean> send(final T item) {
@@ -273,6 +313,16 @@ public final class AsyncQueues {
           });
     }
 
+    @Override
+    public Either<End, T> tryNext() {
+      final Either<End, T> next = this.backingQueue.tryNext();
+      // if we got a value, we should release a permit
+      if (next != null && next.isRight()) {
+        this.sendThrottle.release();
+      }
+      return next;
+    }
+
     @Override
     public Optional<T> poll() {
       final Optional<T> poll = this.backingQueue.poll();
@@ -0,0 +1,48 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * An {@link AsyncIterator} of the elements of a source iterator which share a key, as produced by
+ * {@link AsyncIterator#groupBy(Function, int, int)}.
+ *
+ * <p>
+ * The elements of a group are buffered until they are consumed, and a full buffer stops the source
+ * iterator from being advanced for every group. Each group should therefore be consumed
+ * independently of the other groups, rather than waiting for one group to end before consuming the
+ * next.
+ *
+ * <p>
+ * A group must be {@link #close() closed} once it is no longer needed, which frees its slot for a
+ * new group. Elements with the key of a closed group that arrive afterwards start a new group. The
+ * stage returned by {@link #close()} completes after the source iterator has been closed if this
+ * was the last open group and the grouping iterator has already been closed.
+ *
+ * @param <K> the type of the key of this group
+ * @param <T> the type of the elements of this group
+ * @see AsyncIterator#groupBy(Function, int, int)
+ */
+public interface GroupedAsyncIterator<K, T> extends AsyncIterator<T> {
+
+  /**
+   * Returns the key shared by all of the elements of this group.
+   *
+   * @return the key of this group
+   */
+  K getKey();
+
+  /**
+   * Relinquishes this group, discarding any of its elements which have not been consumed.
+   *
+   * @return a {@link CompletionStage} that completes when this group has been relinquished
+   */
+  @Override
+  CompletionStage<Void> close();
+}
@@ -0,0 +1,308 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.AsyncCloseable;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Package private methods to use in {@link AsyncLongIterator} and {@link AsyncIntIterator}
+ */
+class PrimitiveAsyncIterators {
+
+  private PrimitiveAsyncIterators() {}
+
+  static final CompletionStage<Boolean> TRUE = StageSupport.completedStage(true);
+  static final CompletionStage<Boolean> FALSE = StageSupport.completedStage(false);
+
+  /** A source of batches of T, see {@link AsyncLongIterator#nextBatch(int, LongConsumer)} */
+  @FunctionalInterface
+  interface BatchSource<T> {
+    CompletionStage<Boolean> nextBatch(int maxBatchSize, Consumer<? super T> action);
+  }
+
+  /**
+   * Adapts a primitive iterator to an {@link AsyncIterator}, boxing each element into batches
+   * retrieved from the primitive iterator.
+   */
+  static final class BoxingAsyncIterator<T> implements AsyncIterator<T> {
+    private final BatchSource<T> source;
+    private final AsyncCloseable closeable;
+
+    BoxingAsyncIterator(final BatchSource<T> source, final AsyncCloseable closeable) {
+      this.source = source;
+      this.closeable = closeable;
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      return nextBatchStage(1).thenApply(either -> either.map(batch -> batch.get(0)));
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatchStage(final int maxBatchSize) {
+      AsyncIterators.checkBatchSize(maxBatchSize);
+      final List<T> batch = new ArrayList<>(Math.min(maxBatchSize, 16));
+      return this.source
+          .nextBatch(maxBatchSize, batch::add)
+          .thenApply(more -> more ? Either.right(batch) : End.end());
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.closeable.close();
+    }
+  }
+
+  /** Adapts an {@link AsyncIterator} to a primitive iterator's batches */
+  static <T> CompletionStage<Boolean> nextBatch(final AsyncIterator<T> it,
+      final int maxBatchSize, final Consumer<? super T> action) {
+    return it.nextBatchStage(maxBatchSize).thenApply(eitherBatch -> eitherBatch.fold(
+        end -> false,
+        batch -> {
+          for (final T t : batch) {
+            action.accept(t);
+          }
+          return true;
+        }));
+  }
+
+  static final class LongRangeIterator implements AsyncLongIterator {
+    private long counter;
+    private final long end;
+
+    LongRangeIterator(final long start, final long end) {
+      this.counter = start;
+      this.end = end;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final LongConsumer action) {
+      AsyncIterators.checkBatchSize(maxBatchSize);
+      if (this.counter >= this.end) {
+        return FALSE;
+      }
+      // the distance may overflow for ranges longer than Long.MAX_VALUE
+      final long remaining = this.end - this.counter;
+      final long batchEnd =
+          this.counter + (remaining > 0 && remaining < maxBatchSize ? remaining : maxBatchSize);
+      try {
+        while (this.counter < batchEnd) {
+          action.accept(this.counter++);
+        }
+      } catch (final Throwable e) {
+        return StageSupport.exceptionalStage(e);
+      }
+      return TRUE;
+    }
+  }
+
+  static final class InfiniteLongRangeIterator implements AsyncLongIterator {
+    private long counter;
+
+    InfiniteLongRangeIterator(final long start) {
+      this.counter = start;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final LongConsumer action) {
+      AsyncIterators.checkBatchSize(maxBatchSize);
+      try {
+        for (int i = 0; i < maxBatchSize; i++) {
+          action.accept(this.counter++);
+        }
+      } catch (final Throwable e) {
+        return StageSupport.exceptionalStage(e);
+      }
+      return TRUE;
+    }
+  }
+
+  static final class MapLongIterator implements AsyncLongIterator {
+    private final AsyncLongIterator backingIterator;
+    private final LongUnaryOperator fn;
+
+    MapLongIterator(final AsyncLongIterator backingIterator, final LongUnaryOperator fn) {
+      this.backingIterator = backingIterator;
+      this.fn = fn;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final LongConsumer action) {
+      return this.backingIterator.nextBatch(
+          maxBatchSize, l -> action.accept(this.fn.applyAsLong(l)));
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  static final class FilterLongIterator implements AsyncLongIterator {
+    private final AsyncLongIterator backingIterator;
+    private final LongPredicate predicate;
+
+    FilterLongIterator(final AsyncLongIterator backingIterator, final LongPredicate predicate) {
+      this.backingIterator = backingIterator;
+      this.predicate = predicate;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final LongConsumer action) {
+      final LongPredicate predicate = this.predicate;
+      final int[] accepted = new int[1];
+      final LongConsumer filtered = l -> {
+        if (predicate.test(l)) {
+          accepted[0]++;
+          action.accept(l);
+        }
+      };
+      // keep requesting batches while every element of the batch was filtered
+      return AsyncTrampoline.asyncWhile(
+          more -> more && accepted[0] == 0,
+          ig -> this.backingIterator.nextBatch(maxBatchSize, filtered),
+          true);
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  static final class IntRangeIterator implements AsyncIntIterator {
+    private int counter;
+    private final int end;
+
+    IntRangeIterator(final int start, final int end) {
+      this.counter = start;
+      this.end = end;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final IntConsumer action) {
+      AsyncIterators.checkBatchSize(maxBatchSize);
+      if (this.counter >= this.end) {
+        return FALSE;
+      }
+      final int batchEnd =
+          this.counter + (int) Math.min(maxBatchSize, (long) this.end - this.counter);
+      try {
+        while (this.counter < batchEnd) {
+          action.accept(this.counter++);
+        }
+      } catch (final Throwable e) {
+        return StageSupport.exceptionalStage(e);
+      }
+      return TRUE;
+    }
+  }
+
+  static final class MapIntIterator implements AsyncIntIterator {
+    private final AsyncIntIterator backingIterator;
+    private final IntUnaryOperator fn;
+
+    MapIntIterator(final AsyncIntIterator backingIterator, final IntUnaryOperator fn) {
+      this.backingIterator = backingIterator;
+      this.fn = fn;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final IntConsumer action) {
+      return this.backingIterator.nextBatch(
+          maxBatchSize, i -> action.accept(this.fn.applyAsInt(i)));
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  static final class FilterIntIterator implements AsyncIntIterator {
+    private final AsyncIntIterator backingIterator;
+    private final IntPredicate predicate;
+
+    FilterIntIterator(final AsyncIntIterator backingIterator, final IntPredicate predicate) {
+      this.backingIterator = backingIterator;
+      this.predicate = predicate;
+    }
+
+    @Override
+    public CompletionStage<Boolean> nextBatch(final int maxBatchSize, final IntConsumer action) {
+      final IntPredicate predicate = this.predicate;
+      final int[] accepted = new int[1];
+      final IntConsumer filtered = i -> {
+        if (predicate.test(i)) {
+          accepted[0]++;
+          action.accept(i);
+        }
+      };
+      // keep requesting batches while every element of the batch was filtered
+      return AsyncTrampoline.asyncWhile(
+          more -> more && accepted[0] == 0,
+          ig -> this.backingIterator.nextBatch(maxBatchSize, filtered),
+          true);
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
+  /** Accumulates longs into a growing array */
+  static final class LongArrayBuilder implements LongConsumer {
+    private long[] elements = new long[16];
+    private int size;
+
+    @Override
+    public void accept(final long l) {
+      if (this.size == this.elements.length) {
+        this.elements = Arrays.copyOf(this.elements, this.size * 2);
+      }
+      this.elements[this.size++] = l;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(this.elements, this.size);
+    }
+  }
+
+  /** Accumulates ints into a growing array */
+  static final class IntArrayBuilder implements IntConsumer {
+    private int[] elements = new int[16];
+    private int size;
+
+    @Override
+    public void accept(final int i) {
+      if (this.size == this.elements.length) {
+        this.elements = Arrays.copyOf(this.elements, this.size * 2);
+      }
+      this.elements[this.size++] = i;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(this.elements, this.size);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * An incrementally maintained aggregate of the elements in a window of an {@link AsyncIterator},
+ * as used by {@link AsyncIterator#window(int, int, Supplier)}.
+ *
+ * <p>
+ * Rather than recomputing the aggregate of each window from all of its elements, a sliding window
+ * {@link #add(Object) adds} each element as it enters the window and {@link #remove(Object)
+ * removes} it as it leaves, so that advancing the window costs a constant number of calls no
+ * matter how large it is. For example, a moving sum:
+ *
+ * <pre>
+ * {@code
+ * class Sum implements WindowAggregator<Long, Long> {
+ *   long sum;
+ *
+ *   public void add(Long l) { sum += l; }
+ *   public void remove(Long l) { sum -= l; }
+ *   public Long result() { return sum; }
+ * }
+ * AsyncIterator<Long> movingSums = values.window(100, 1, Sum::new);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Elements are removed in the same order that they were added. An aggregator is only used by one
+ * window iterator and is never accessed concurrently.
+ *
+ * @param <T> the type of the elements of the window
+ * @param <R> the type of the result of the aggregation
+ * @see AsyncIterator#window(int, int, Supplier)
+ * @see AsyncIterator#window(long, TimeUnit, ScheduledExecutorService, Supplier)
+ */
+public interface WindowAggregator<T, R> {
+
+  /**
+   * Adds an element which has entered the window to the aggregate.
+   *
+   * @param t the element which entered the window
+   */
+  void add(T t);
+
+  /**
+   * Removes an element which has left the window from the aggregate. This is always the oldest
+   * element that was added and has not yet been removed.
+   *
+   * <p>
+   * Tumbling windows, which don't overlap, use a new aggregator for each window and never call
+   * this method.
+   *
+   * @param t the element which left the window
+   */
+  void remove(T t);
+
+  /**
+   * Returns the aggregate of the elements currently in the window. This may be called several
+   * times over the lifetime of a sliding window, so it should not modify the aggregate.
+   *
+   * @return the aggregate of the elements in the window
+   */
+  R result();
+}
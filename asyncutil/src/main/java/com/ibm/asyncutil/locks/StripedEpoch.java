@@ -27,7 +27,7 @@ import com.ibm.asyncutil.util.StageSupport;
  * <li>When two threads both try to update at the same time and one fails due to CAS contention, we
  * will allocate an array of 2 counters and map each thread to one of the two.
  * <li>Every subsequent collision the array will be doubled until it is larger than the number of
- * cores.
+ * cores (or the maximum number of cells given at construction).
  * <li>Collisions after that will rehash the index associated with a thread. If threads are affine
  * to cores, on an oversubscribed system this will eventually lead to all threads on a given core to
  * mapping to the same index.
@@ -68,6 +68,11 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
   private static final AtomicReferenceFieldUpdater<StripedEpoch, EpochCell[]> cellArrayUpdater =
       AtomicReferenceFieldUpdater.newUpdater(StripedEpoch.class, EpochCell[].class, "cells");
 
+  /**
+   * cells will not be grown any further once they reach at least this length
+   */
+  private final int maxCells;
+
   /**
    * entrants go here when this epoch is uncontended
    */
@@ -76,11 +81,27 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
   /**
    * If there is contention, cells will be initialized, and later grown via
    * {@link #growCells(EpochCell[]) on subsequent contention. If there is never contention, updates
-   * will go to base. length is always power of 2, max length=2^(ceil(lg(NCPU)))
+   * will go to base. length is always power of 2, max length=2^(ceil(lg(maxCells)))
    **/
   private volatile EpochCell[] cells;
   private final CountdownFuture terminateFuture = new CountdownFuture();
 
+  StripedEpoch() {
+    this(NCPU);
+  }
+
+  /**
+   * @param maxCells the number of cells after which contention will rehash threads rather than
+   *        grow the cell array. Primarily useful for measuring the tradeoff between footprint and
+   *        scalability, otherwise the number of available processors should be used.
+   */
+  StripedEpoch(final int maxCells) {
+    if (maxCells < 1) {
+      throw new IllegalArgumentException("maxCells must be positive");
+    }
+    this.maxCells = maxCells;
+  }
+
   /**
    * If cells is null, try to enter base. if not null, skip right to entering a cell via
    * {@link #enterContended(EpochCell[]) If we entered base, or base was terminated - done.
@@ -109,7 +130,7 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
    * this path will always be taken.
    * 
    * Finds the index associated with this thread, and attempts to enter the corresponding cell. If
-   * contention is encountered and we can still grow cells (have less than #cpus), we attempt to
+   * contention is encountered and we can still grow cells (have less than maxCells), we attempt to
    * grow and retry entering. If we already have the maximum number of cells, we rehash the thread's
    * index and retry.
    * 
@@ -130,7 +151,7 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
       } else if (er == UpdateResult.CLOSED) {
         return Optional.empty();
       } else if (er == UpdateResult.CONFLICT) {
-        if (localCells.length < NCPU) {
+        if (localCells.length < this.maxCells) {
           /*
            * We collided with another thread, and we haven't fully grown are cell array. Double the
            * size of the array to make collisions less likely, and then try again
@@ -180,7 +201,7 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
       final EpochCell myCell = localCells[threadIndex & (localCells.length - 1)];
       final UpdateResult er = StripedEpoch.tryUpdate(cellUpdater, myCell, -2);
       if (er == UpdateResult.CONFLICT) {
-        if (localCells.length < NCPU) {
+        if (localCells.length < this.maxCells) {
           /*
            * We collided with another thread, and we haven't fully grown are cell array. Double the
            * size of the array to make collisions less likely, and then try again
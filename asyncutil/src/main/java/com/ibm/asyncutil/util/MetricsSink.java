@@ -0,0 +1,80 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.util;
+
+/**
+ * A receiver of timing measurements of an asynchronous source, such as a stage of an
+ * {@link com.ibm.asyncutil.iteration.AsyncIterator AsyncIterator} pipeline instrumented with
+ * {@link com.ibm.asyncutil.iteration.AsyncIterator#instrument(String, MetricsSink)
+ * AsyncIterator.instrument}.
+ *
+ * <p>
+ * Implementations adapt these measurements to a metrics library, for example by updating a
+ * counter and a histogram per {@code name}. Every method has an empty default implementation, so
+ * an implementation only needs to override the measurements it is interested in. All durations
+ * are in nanoseconds, as measured by {@link System#nanoTime()}.
+ *
+ * <p>
+ * The methods are called inline by the instrumented source, possibly concurrently for different
+ * names (and, for sources that may be used concurrently, for the same name), so they should be
+ * cheap and thread safe.
+ *
+ * <pre>
+ * {@code
+ * // find which stage of a pipeline is the bottleneck
+ * AsyncIterator<Record> records = blocks
+ *     .instrument("read", sink)
+ *     .thenApply(Block::decode)
+ *     .instrument("decode", sink);
+ * }
+ * </pre>
+ *
+ * <p>
+ * A stage which is the bottleneck of a pipeline spends most of its time pending, while the stages
+ * downstream of it spend most of their time waiting for it. Conversely, a slow consumer shows up as
+ * time spent {@link #downstream(String, long) downstream} with elements produced without waiting.
+ */
+public interface MetricsSink {
+
+  /**
+   * Records the production of elements. Elements per second can be derived from the sum of
+   * {@code count}.
+   *
+   * @param name the name of the instrumented source
+   * @param count the number of elements produced, which may be 0 when the source reports that it
+   *        has no more elements
+   * @param pendingNanos how long the request for the elements was pending, which is close to 0
+   *        for elements which were already available
+   */
+  default void elements(final String name, final int count, final long pendingNanos) {}
+
+  /**
+   * Records the time between an element being produced and the next element being requested, which
+   * is the time the consumer spent processing the element or blocked further downstream.
+   *
+   * @param name the name of the instrumented source
+   * @param nanos the time between the production of an element and the next request
+   */
+  default void downstream(final String name, final long nanos) {}
+
+  /**
+   * Records a request which completed exceptionally.
+   *
+   * @param name the name of the instrumented source
+   * @param pendingNanos how long the request was pending before it failed
+   * @param exception the exception of the request
+   */
+  default void failure(final String name, final long pendingNanos, final Throwable exception) {}
+
+  /**
+   * Records the closing of the instrumented source.
+   *
+   * @param name the name of the instrumented source
+   * @param nanos how long the source took to close, whether or not it closed exceptionally
+   */
+  default void closed(final String name, final long nanos) {}
+}
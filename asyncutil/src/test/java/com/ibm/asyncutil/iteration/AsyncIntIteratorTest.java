@@ -0,0 +1,75 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.TestUtil;
+
+public class AsyncIntIteratorTest {
+
+  @Test
+  public void testRange() {
+    Assert.assertArrayEquals(new int[0],
+        TestUtil.join(AsyncIntIterator.range(3, 3).collectToArray()));
+    Assert.assertArrayEquals(IntStream.range(-500, 500).toArray(),
+        TestUtil.join(AsyncIntIterator.range(-500, 500).collectToArray()));
+    Assert.assertArrayEquals(new int[] {Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1},
+        TestUtil.join(
+            AsyncIntIterator.range(Integer.MAX_VALUE - 2, Integer.MAX_VALUE).collectToArray()));
+    Assert.assertEquals(Arrays.asList(Integer.MIN_VALUE, Integer.MIN_VALUE + 1),
+        TestUtil.join(AsyncIntIterator.range(Integer.MIN_VALUE, Integer.MAX_VALUE)
+            .boxed()
+            .take(2)
+            .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testMapFilterSum() {
+    final int expected = IntStream.range(0, 10000).filter(i -> i % 2 == 0).map(i -> i / 2).sum();
+    Assert.assertEquals(expected,
+        TestUtil.join(AsyncIntIterator.range(0, 10000)
+            .filter(i -> i % 2 == 0)
+            .map(i -> i / 2)
+            .sum()).intValue());
+  }
+
+  @Test
+  public void testAsLongIterator() {
+    // would overflow an int sum
+    final long expected = IntStream.range(0, 100000).asLongStream().sum();
+    Assert.assertEquals(expected,
+        TestUtil.join(AsyncIntIterator.range(0, 100000).asLongIterator().sum()).longValue());
+  }
+
+  @Test
+  public void testMapToInt() {
+    final List<String> strings = Arrays.asList("a", "bb", "ccc");
+    Assert.assertArrayEquals(new int[] {1, 2, 3},
+        TestUtil.join(AsyncIterator.fromIterator(strings.iterator())
+            .mapToInt(String::length)
+            .collectToArray()));
+    Assert.assertEquals(Arrays.asList("x", "xx", "xxx"),
+        TestUtil.join(AsyncIterator.fromIterator(strings.iterator())
+            .mapToInt(String::length)
+            .mapToObj(i -> String.join("", Collections.nCopies(i, "x")))
+            .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testFold() {
+    Assert.assertEquals(4,
+        TestUtil.join(AsyncIntIterator.range(0, 5).fold(-1, Math::max)).intValue());
+  }
+}
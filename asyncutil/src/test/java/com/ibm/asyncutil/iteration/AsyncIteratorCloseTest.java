@@ -11,10 +11,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -139,6 +143,123 @@ public class AsyncIteratorCloseTest {
     Assert.assertTrue(it3.closed);
   }
 
+  @Test
+  public void testMergeClose() {
+    final CloseableIterator it1 = new CloseableIterator(AsyncIterator.range(0, 3));
+    final CloseableIterator it2 = new CloseableIterator(AsyncIterator.range(0, 3), testException);
+    final CloseableIterator it3 = new CloseableIterator(AsyncIterator.range(0, 3));
+    final AsyncIterator<Long> merged = AsyncIterator.merge(Arrays.asList(it1, it2, it3));
+    TestUtil.join(merged.nextStage());
+
+    try {
+      TestUtil.join(merged.close());
+      Assert.fail("exception expected");
+    } catch (final RuntimeException expected) {
+    }
+
+    // partially consumed and exceptionally closing inputs are all closed
+    Assert.assertTrue(it1.closed);
+    Assert.assertTrue(it2.closed);
+    Assert.assertTrue(it3.closed);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNextFutureAfterCloseMergeIllegal() throws Throwable {
+    final AsyncIterator<Long> merged =
+        AsyncIterator.merge(Arrays.asList(AsyncIterator.range(0, 3), AsyncIterator.range(3, 6)));
+    TestUtil.join(merged.nextStage());
+    TestUtil.join(merged.close());
+    try {
+      TestUtil.join(merged.nextStage());
+    } catch (final CompletionException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Test
+  public void testBufferClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final AsyncIterator<Long> buffered = it.buffer(3);
+    Assert.assertEquals(0L, TestUtil.join(buffered.nextStage()).right().get().longValue());
+    TestUtil.join(buffered.close());
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testGroupByClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final AsyncIterator<GroupedAsyncIterator<Long, Long>> groups = it.groupBy(i -> i % 3, 3, 1);
+    final GroupedAsyncIterator<Long, Long> first = TestUtil.join(groups.nextStage()).right().get();
+
+    // the groups which were not consumed are closed with the grouping iterator
+    TestUtil.join(groups.close());
+    Assert.assertFalse(it.closed);
+    TestUtil.join(first.close());
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testTeeClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final List<AsyncIterator<Long>> tees = it.tee(2, 2);
+    Assert.assertEquals(0L, TestUtil.join(tees.get(0).nextStage()).right().get().longValue());
+
+    // the source is closed along with the last iterator
+    TestUtil.join(tees.get(0).close());
+    Assert.assertFalse(it.closed);
+    TestUtil.join(tees.get(1).close());
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testToStreamClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    try (Stream<Long> stream = it.toStream(2)) {
+      Assert.assertEquals(0L, stream.findFirst().get().longValue());
+      Assert.assertFalse(it.closed);
+    }
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testToStreamCloseOutstanding() throws InterruptedException {
+    final AtomicBoolean usedAfterClose = new AtomicBoolean();
+    final AsyncIterator<Long> it = new AsyncIterator<Long>() {
+      private volatile boolean closed;
+      private long next;
+
+      @Override
+      public CompletionStage<Either<End, Long>> nextStage() {
+        if (this.closed) {
+          usedAfterClose.set(true);
+          return StageSupport.exceptionalStage(new IllegalStateException("used after close"));
+        }
+        final long value = this.next++;
+        return CompletableFuture.supplyAsync(() -> {
+          try {
+            Thread.sleep(10);
+          } catch (final InterruptedException e) {
+            throw new CompletionException(e);
+          }
+          return Either.right(value);
+        });
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        this.closed = true;
+        return StageSupport.voidStage();
+      }
+    };
+    try (Stream<Long> stream = it.toStream(4)) {
+      Assert.assertEquals(Arrays.asList(0L),
+          stream.limit(1).collect(Collectors.toList()));
+    }
+    // give any requests chained after the close a chance to run
+    Thread.sleep(100);
+    Assert.assertFalse(usedAfterClose.get());
+  }
+
   @Test
   public void testConcatCloseException() {
     final CloseableIterator it1 = new CloseableIterator(AsyncIterator.once(1L));
@@ -270,6 +391,50 @@ public class AsyncIteratorCloseTest {
     ahead.close().toCompletableFuture().join();
   }
 
+  @Test
+  public void testEagerFlattenUnorderedClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 15));
+    final Deque<CloseableIterator> closeables = new ConcurrentLinkedDeque<CloseableIterator>();
+    final CompletableFuture<Void> release = new CompletableFuture<>();
+    final AsyncIterator<Long> ahead =
+        it.thenFlattenAheadUnordered(
+            i -> {
+              final CloseableIterator closeable =
+                  new CloseableIterator(AsyncIterator.range(0, 3));
+              closeables.addLast(closeable);
+              // the first iterator is produced immediately, the rest are held back
+              return i == 0
+                  ? StageSupport.completedStage(closeable)
+                  : release.thenApply(ig -> closeable);
+            },
+            5);
+    Assert.assertEquals(0, TestUtil.join(ahead.nextStage()).right().get().intValue());
+    Assert.assertEquals(6, closeables.size());
+
+    // close waits for the outstanding stages before closing their iterators
+    final CompletableFuture<Void> closed = ahead.close().toCompletableFuture();
+    Assert.assertFalse(closed.isDone());
+    Assert.assertFalse(it.closed);
+    release.complete(null);
+    TestUtil.join(closed);
+    Assert.assertTrue(it.closed);
+    Assert.assertTrue(closeables.stream().allMatch(closeableIterator -> closeableIterator.closed));
+    Assert.assertEquals(6, closeables.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNextFutureAfterCloseUnorderedIllegal() throws Throwable {
+    final AsyncIterator<Long> ahead = AsyncIterator.range(0, 15)
+        .thenComposeAheadUnordered(i -> StageSupport.completedStage(i + 1), 5);
+    TestUtil.join(ahead.nextStage());
+    TestUtil.join(ahead.close());
+    try {
+      TestUtil.join(ahead.nextStage());
+    } catch (final CompletionException e) {
+      throw e.getCause();
+    }
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testNextFutureAfterCloseIllegal() throws Throwable {
     final AsyncIterator<Long> it = AsyncIterator.range(0, 15);
@@ -16,25 +16,41 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.ibm.asyncutil.iteration.AsyncIterator.End;
 import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.MetricsSink;
 import com.ibm.asyncutil.util.StageSupport;
 import com.ibm.asyncutil.util.TestUtil;
 
@@ -143,6 +159,128 @@ public class AsyncIteratorTest {
     TestUtil.join(AsyncIterator.concat(iteratorIterator).consume());
   }
 
+  @Test
+  public void testMerge() {
+    final AsyncQueue<Integer> q1 = AsyncQueues.unbounded();
+    final AsyncQueue<Integer> q2 = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> merged = AsyncIterator.merge(Arrays.asList(q1, q2));
+
+    final CompletableFuture<Either<End, Integer>> first = merged.nextStage().toCompletableFuture();
+    Assert.assertFalse(first.isDone());
+    q2.send(1);
+    Assert.assertEquals(1, TestUtil.join(first).right().get().intValue());
+    q1.send(0);
+    Assert.assertEquals(0, TestUtil.join(merged.nextStage()).right().get().intValue());
+    q1.send(2);
+    q2.send(3);
+    Assert.assertEquals(2, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertEquals(3, TestUtil.join(merged.nextStage()).right().get().intValue());
+
+    // only ends once every source has ended
+    q1.terminate();
+    final CompletableFuture<Either<End, Integer>> last = merged.nextStage().toCompletableFuture();
+    Assert.assertFalse(last.isDone());
+    q2.send(4);
+    Assert.assertEquals(4, TestUtil.join(last).right().get().intValue());
+    q2.terminate();
+    Assert.assertFalse(TestUtil.join(merged.nextStage()).isRight());
+    TestUtil.join(merged.close());
+  }
+
+  @Test
+  public void testMergePreservesSourceOrder() {
+    final List<AsyncIterator<Integer>> sources = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final int source = i;
+      sources.add(intIterator(100).thenApply(j -> j * 100 + source));
+    }
+    final List<Integer> list =
+        TestUtil.join(AsyncIterator.merge(sources, 4).collect(Collectors.toList()));
+    Assert.assertEquals(10000, list.size());
+    final int[] last = new int[100];
+    Arrays.fill(last, -1);
+    for (final int i : list) {
+      Assert.assertTrue(i / 100 > last[i % 100]);
+      last[i % 100] = i / 100;
+    }
+  }
+
+  @Test
+  public void testMergeNoIterators() {
+    Assert.assertFalse(
+        TestUtil.join(AsyncIterator.merge(Collections.<AsyncIterator<Integer>>emptyList())
+            .nextStage())
+            .isRight());
+  }
+
+  @Test
+  public void testMergePrefetch() {
+    final AtomicInteger requested = new AtomicInteger();
+    final AsyncIterator<Integer> source = AsyncIterator
+        .supply(() -> StageSupport.completedStage(Either.right(requested.getAndIncrement())));
+    final AsyncIterator<Integer> merged =
+        AsyncIterator.merge(Arrays.asList(source, AsyncIterator.<Integer>empty()), 3);
+    Assert.assertEquals(0, requested.get());
+
+    // consuming one element allows one more to be requested
+    Assert.assertEquals(0, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertEquals(4, requested.get());
+    Assert.assertEquals(1, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertEquals(5, requested.get());
+    TestUtil.join(merged.close());
+    Assert.assertEquals(5, requested.get());
+  }
+
+  @Test
+  public void testMergeException() {
+    final AsyncIterator<Integer> throwing = intIterator(3).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    final AsyncIterator<Integer> merged =
+        AsyncIterator.merge(Arrays.asList(AsyncIterator.empty(), throwing));
+    Assert.assertEquals(0, TestUtil.join(merged.nextStage()).right().get().intValue());
+    try {
+      TestUtil.join(merged.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // the source continues after the exception
+    Assert.assertEquals(2, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertFalse(TestUtil.join(merged.nextStage()).isRight());
+  }
+
+  @Test
+  public void testMergeTryNext() {
+    final AsyncQueue<Integer> q = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> merged = AsyncIterator.merge(Arrays.asList(q, intIterator(1)));
+    Assert.assertEquals(0, merged.tryNext().right().get().intValue());
+    Assert.assertNull(merged.tryNext());
+    q.send(5);
+    Assert.assertEquals(5, merged.tryNext().right().get().intValue());
+    q.terminate();
+    Assert.assertFalse(merged.tryNext().isRight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeNonPositivePrefetch() {
+    AsyncIterator.merge(Arrays.asList(intIterator(3)), 0);
+  }
+
+  @Test
+  public void testMergeStackOverflow() {
+    final List<AsyncIterator<Integer>> iterators = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      iterators.add(AsyncIterator.empty());
+    }
+    iterators.add(intIterator(100000));
+    Assert.assertEquals(100000, TestUtil.join(AsyncIterator.merge(iterators)
+        .fold(0, (acc, i) -> acc + 1)).intValue());
+  }
+
   @Test
   public void testForEachEmptyList() {
     final AsyncIterator<Integer> iterator = AsyncIterator.empty();
@@ -323,6 +461,632 @@ public class AsyncIteratorTest {
     fjp.awaitTermination(1, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void testThenComposeAheadBounded() {
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    final AsyncIterator<Integer> it = intIterator(10).thenComposeAhead(i -> {
+      final CompletableFuture<Integer> f = new CompletableFuture<>();
+      futures.add(f);
+      return f;
+    }, 3);
+
+    // the requested element plus 3 ahead
+    final CompletableFuture<Either<End, Integer>> first = it.nextStage().toCompletableFuture();
+    Assert.assertEquals(4, futures.size());
+    futures.get(2).complete(2);
+    futures.get(1).complete(1);
+    Assert.assertFalse(first.isDone());
+    futures.get(0).complete(0);
+    Assert.assertEquals(0, TestUtil.join(first).right().get().intValue());
+    Assert.assertEquals(4, futures.size());
+
+    // results are still emitted in order
+    Assert.assertEquals(1, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(5, futures.size());
+    Assert.assertEquals(2, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(6, futures.size());
+    futures.forEach(f -> f.complete(-1));
+    TestUtil.join(it.close());
+  }
+
+  @Test
+  public void testBuffer() {
+    Assert.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()),
+        TestUtil.join(intIterator(1000).buffer(8).collect(Collectors.toList())));
+    Assert.assertFalse(TestUtil.join(AsyncIterator.empty().buffer(8).nextStage()).isRight());
+  }
+
+  @Test
+  public void testBufferBounded() {
+    final AtomicInteger requested = new AtomicInteger();
+    final AsyncIterator<Integer> buffered = AsyncIterator
+        .supply(() -> StageSupport.completedStage(Either.right(requested.getAndIncrement())))
+        .buffer(5);
+    Assert.assertEquals(0, requested.get());
+
+    // one element consumed, 5 buffered
+    Assert.assertEquals(0, TestUtil.join(buffered.nextStage()).right().get().intValue());
+    Assert.assertEquals(6, requested.get());
+    Assert.assertEquals(1, TestUtil.join(buffered.nextStage()).right().get().intValue());
+    Assert.assertEquals(7, requested.get());
+    TestUtil.join(buffered.close());
+  }
+
+  @Test
+  public void testBufferPrefetchesAsync() throws InterruptedException {
+    final ForkJoinPool producer = new ForkJoinPool(1);
+    final AtomicInteger requested = new AtomicInteger();
+    // the consumed element and the 5 buffered ones
+    final CountDownLatch produced = new CountDownLatch(6);
+    final AsyncIterator<Integer> buffered = intIterator(20)
+        .thenCompose(i -> {
+          requested.incrementAndGet();
+          return CompletableFuture.supplyAsync(() -> {
+            produced.countDown();
+            return i;
+          }, producer);
+        })
+        .buffer(5);
+
+    Assert.assertEquals(0, TestUtil.join(buffered.nextStage()).right().get().intValue());
+    // while the consumer stalls, the upstream is advanced until 5 elements are buffered
+    Assert.assertTrue(produced.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(6, requested.get());
+
+    Assert.assertEquals(IntStream.range(1, 20).boxed().collect(Collectors.toList()),
+        TestUtil.join(buffered.collect(Collectors.toList())));
+    TestUtil.join(buffered.close());
+    producer.shutdown();
+    producer.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testBufferExecutor() throws InterruptedException {
+    final ExecutorService executor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "buffer-test"));
+    try {
+      final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+      final AtomicInteger count = new AtomicInteger();
+      final AsyncIterator<Integer> buffered = AsyncIterator.<Integer>supply(() -> {
+        threads.add(Thread.currentThread().getName());
+        final int i = count.getAndIncrement();
+        return StageSupport.completedStage(i < 100 ? Either.right(i) : End.end());
+      }).buffer(4, executor);
+      Assert.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()),
+          TestUtil.join(buffered.collect(Collectors.toList())));
+      Assert.assertEquals(Collections.singleton("buffer-test"), new HashSet<>(threads));
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBufferNonPositive() {
+    intIterator(3).buffer(0);
+  }
+
+  @Test
+  public void testObserveOn() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final AtomicInteger tasks = new AtomicInteger();
+      final Executor counting = r -> {
+        tasks.incrementAndGet();
+        executor.execute(r);
+      };
+      final List<Integer> elements = TestUtil.join(intIterator(1000)
+          .observeOn(counting, 100)
+          .collect(Collectors.toList()), 10, TimeUnit.SECONDS);
+      Assert.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), elements);
+      // one task per batch, and one to observe the end
+      Assert.assertTrue(tasks.get() + " tasks", tasks.get() <= 11);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testObserveOnPending() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Thread executorThread = executor.submit(Thread::currentThread).get();
+      final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+      final AsyncIterator<Integer> observed = queue.observeOn(executor, 10);
+      final CompletableFuture<Thread> first =
+          observed.nextStage().thenApply(ig -> Thread.currentThread()).toCompletableFuture();
+      queue.send(0);
+      Assert.assertEquals(executorThread, TestUtil.join(first, 1, TimeUnit.SECONDS));
+
+      queue.send(1);
+      queue.send(2);
+      Assert.assertEquals(1, TestUtil.join(observed.nextStage()).right().get().intValue());
+      // the rest of the batch is available without waiting
+      Assert.assertEquals(2, observed.tryNext().right().get().intValue());
+      Assert.assertNull(observed.tryNext());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testObserveOnException() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Thread executorThread = executor.submit(Thread::currentThread).get();
+      final CompletableFuture<Integer> future = new CompletableFuture<>();
+      final AsyncIterator<Integer> observed =
+          AsyncIterator.once(0).thenCompose(i -> future).observeOn(executor, 10);
+      final CompletableFuture<Thread> failed = observed.nextStage()
+          .handle((ig, ex) -> {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+            return Thread.currentThread();
+          })
+          .toCompletableFuture();
+      future.completeExceptionally(new IllegalStateException());
+      Assert.assertEquals(executorThread, TestUtil.join(failed, 1, TimeUnit.SECONDS));
+      Assert.assertFalse(TestUtil.join(observed.nextStage()).isRight());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testObserveOnStackOverflow() throws Exception {
+    Assert.assertEquals(100000, TestUtil.join(AsyncIterator.repeat(1)
+        .take(100000)
+        .observeOn(Runnable::run, 1)
+        .fold(0, (acc, i) -> acc + i), 10, TimeUnit.SECONDS).intValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testObserveOnNonPositive() {
+    intIterator(3).observeOn(Runnable::run, 0);
+  }
+
+  private static class RecordingSink implements MetricsSink {
+    final List<String> names = new ArrayList<>();
+    int elements;
+    int requests;
+    long pendingNanos;
+    int downstream;
+    long downstreamNanos;
+    final List<Throwable> failures = new ArrayList<>();
+    int closed;
+
+    @Override
+    public void elements(final String name, final int count, final long pendingNanos) {
+      this.names.add(name);
+      this.elements += count;
+      this.requests++;
+      this.pendingNanos += pendingNanos;
+    }
+
+    @Override
+    public void downstream(final String name, final long nanos) {
+      this.downstream++;
+      this.downstreamNanos += nanos;
+    }
+
+    @Override
+    public void failure(final String name, final long pendingNanos, final Throwable exception) {
+      this.failures.add(exception);
+    }
+
+    @Override
+    public void closed(final String name, final long nanos) {
+      this.closed++;
+    }
+  }
+
+  @Test
+  public void testInstrument() {
+    final RecordingSink sink = new RecordingSink();
+    final AsyncIterator<Integer> it = intIterator(10).instrument("source", sink);
+    Assert.assertEquals(0, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(1, it.tryNext().right().get().intValue());
+    Assert.assertEquals(Arrays.asList(2, 3, 4), TestUtil.join(it.nextBatchStage(3)).right().get());
+    Assert.assertEquals(Arrays.asList(5, 6, 7, 8, 9),
+        TestUtil.join(it.collect(Collectors.toList())));
+    TestUtil.join(it.close());
+
+    Assert.assertEquals(10, sink.elements);
+    Assert.assertTrue(sink.names.stream().allMatch("source"::equals));
+    // every request after the first follows a delivered element
+    Assert.assertEquals(sink.requests - 1, sink.downstream);
+    Assert.assertEquals(1, sink.closed);
+    Assert.assertTrue(sink.failures.isEmpty());
+  }
+
+  @Test
+  public void testInstrumentPending() throws InterruptedException {
+    final RecordingSink sink = new RecordingSink();
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> it = queue.instrument("queue", sink);
+    final CompletionStage<Either<End, Integer>> pending = it.nextStage();
+    Thread.sleep(20);
+    queue.send(1);
+    TestUtil.join(pending);
+    Assert.assertEquals(1, sink.elements);
+    Assert.assertTrue(sink.pendingNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+
+    // the consumer holds the element before requesting the next one
+    Thread.sleep(20);
+    queue.terminate();
+    Assert.assertFalse(TestUtil.join(it.nextStage()).isRight());
+    Assert.assertEquals(1, sink.downstream);
+    Assert.assertTrue(sink.downstreamNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  public void testInstrumentFailure() {
+    final RecordingSink sink = new RecordingSink();
+    final AsyncIterator<Integer> it = intIterator(3)
+        .thenApply(i -> {
+          if (i == 1) {
+            throw new IllegalStateException();
+          }
+          return i;
+        })
+        .instrument("failing", sink);
+    Assert.assertEquals(0, TestUtil.join(it.nextStage()).right().get().intValue());
+    try {
+      TestUtil.join(it.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(1, sink.failures.size());
+    Assert.assertEquals(Arrays.asList(2), TestUtil.join(it.collect(Collectors.toList())));
+    Assert.assertEquals(2, sink.elements);
+  }
+
+  @Test
+  public void testGroupBy() {
+    final List<CompletionStage<List<Integer>>> groups = new ArrayList<>();
+    final List<Integer> keys = new ArrayList<>();
+    TestUtil.join(intIterator(100).groupBy(i -> i % 3, 3, 4).forEach(group -> {
+      keys.add(group.getKey());
+      // consume every group concurrently
+      groups.add(group.collect(Collectors.toList())
+          .thenCompose(list -> group.close().thenApply(ig -> list)));
+    }));
+    Assert.assertEquals(Arrays.asList(0, 1, 2), keys);
+    for (int key = 0; key < 3; key++) {
+      final int k = key;
+      Assert.assertEquals(
+          IntStream.range(0, 100).filter(i -> i % 3 == k).boxed().collect(Collectors.toList()),
+          TestUtil.join(groups.get(key)));
+    }
+  }
+
+  @Test
+  public void testGroupByBuffer() {
+    final AtomicInteger requested = new AtomicInteger();
+    final AsyncIterator<GroupedAsyncIterator<Integer, Integer>> groups = AsyncIterator
+        .supply(() -> StageSupport.completedStage(Either.right(requested.getAndIncrement())))
+        .groupBy(i -> i % 2, 2, 2);
+    final GroupedAsyncIterator<Integer, Integer> evens =
+        TestUtil.join(groups.nextStage()).right().get();
+    final GroupedAsyncIterator<Integer, Integer> odds =
+        TestUtil.join(groups.nextStage()).right().get();
+    Assert.assertEquals(0, evens.getKey().intValue());
+    Assert.assertEquals(1, odds.getKey().intValue());
+
+    // 0 and 2 fill the even buffer, 4 waits for room
+    Assert.assertEquals(5, requested.get());
+    Assert.assertEquals(0, TestUtil.join(evens.nextStage()).right().get().intValue());
+    // 4 is accepted, 5 waits for room in the full odd buffer
+    Assert.assertEquals(6, requested.get());
+    Assert.assertEquals(1, TestUtil.join(odds.nextStage()).right().get().intValue());
+    Assert.assertEquals(7, requested.get());
+    Assert.assertEquals(2, TestUtil.join(evens.nextStage()).right().get().intValue());
+    Assert.assertEquals(4, TestUtil.join(evens.nextStage()).right().get().intValue());
+
+    TestUtil.join(groups.close());
+    TestUtil.join(odds.close());
+    TestUtil.join(evens.close());
+  }
+
+  @Test
+  public void testGroupByMaxGroups() {
+    final AsyncQueue<Integer> source = AsyncQueues.unbounded();
+    final AsyncIterator<GroupedAsyncIterator<Integer, Integer>> groups =
+        source.groupBy(i -> i, 2, 1);
+    source.send(0);
+    source.send(1);
+    source.send(2);
+    final GroupedAsyncIterator<Integer, Integer> first =
+        TestUtil.join(groups.nextStage()).right().get();
+    final GroupedAsyncIterator<Integer, Integer> second =
+        TestUtil.join(groups.nextStage()).right().get();
+    Assert.assertEquals(1, second.getKey().intValue());
+
+    // a third group waits until a slot is freed
+    final CompletableFuture<Either<End, GroupedAsyncIterator<Integer, Integer>>> third =
+        groups.nextStage().toCompletableFuture();
+    Assert.assertFalse(third.isDone());
+    TestUtil.join(first.close());
+    Assert.assertEquals(2, TestUtil.join(third).right().get().getKey().intValue());
+
+    // the key of a closed group starts a new group
+    TestUtil.join(second.close());
+    source.send(0);
+    Assert.assertEquals(0, TestUtil.join(groups.nextStage()).right().get().getKey().intValue());
+  }
+
+  @Test
+  public void testGroupByException() {
+    final AsyncIterator<GroupedAsyncIterator<Integer, Integer>> groups = intIterator(3)
+        .groupBy(i -> {
+          if (i == 1) {
+            throw new IllegalStateException();
+          }
+          return i;
+        }, 4, 4);
+    Assert.assertEquals(0, TestUtil.join(groups.nextStage()).right().get().getKey().intValue());
+    try {
+      TestUtil.join(groups.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    final GroupedAsyncIterator<Integer, Integer> two =
+        TestUtil.join(groups.nextStage()).right().get();
+    Assert.assertEquals(Arrays.asList(2), TestUtil.join(two.collect(Collectors.toList())));
+    Assert.assertFalse(TestUtil.join(groups.nextStage()).isRight());
+  }
+
+  @Test
+  public void testGroupByParallel() throws TimeoutException, InterruptedException {
+    final ForkJoinPool fjp = new ForkJoinPool(8);
+    final List<CompletionStage<Integer>> sums = new ArrayList<>();
+    final CompletionStage<Void> grouped = intIterator(10000)
+        .groupBy(i -> i % 8, 8, 16)
+        .forEach(group -> sums.add(group
+            .thenCompose(i -> CompletableFuture.supplyAsync(() -> i, fjp))
+            .fold(0, (acc, i) -> acc + i)));
+    TestUtil.join(grouped, 10, TimeUnit.SECONDS);
+    int total = 0;
+    for (final CompletionStage<Integer> sum : sums) {
+      total += TestUtil.join(sum, 10, TimeUnit.SECONDS);
+    }
+    Assert.assertEquals(IntStream.range(0, 10000).sum(), total);
+    fjp.shutdown();
+    fjp.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGroupByNonPositive() {
+    intIterator(3).groupBy(i -> i, 1, 0);
+  }
+
+  @Test
+  public void testTee() {
+    final List<AsyncIterator<Integer>> tees = intIterator(100).tee(3, 4);
+    Assert.assertEquals(3, tees.size());
+    final List<CompletionStage<List<Integer>>> lists = tees.stream()
+        .map(tee -> tee.collect(Collectors.toList()))
+        .collect(Collectors.toList());
+    for (final CompletionStage<List<Integer>> list : lists) {
+      Assert.assertEquals(
+          IntStream.range(0, 100).boxed().collect(Collectors.toList()), TestUtil.join(list));
+    }
+  }
+
+  @Test
+  public void testTeeBounded() {
+    final AtomicInteger supplied = new AtomicInteger();
+    final AsyncIterator<Integer> source = AsyncIterator.unfold(0, i -> {
+      supplied.incrementAndGet();
+      return StageSupport.completedStage(Either.right(i + 1));
+    });
+    final List<AsyncIterator<Integer>> tees = source.tee(2, 3);
+    final AsyncIterator<Integer> fast = tees.get(0);
+    final AsyncIterator<Integer> slow = tees.get(1);
+
+    // the fast iterator can only get a buffer ahead of the slow one
+    final List<Integer> consumed = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      consumed.add(TestUtil.join(fast.nextStage()).right().get());
+    }
+    Assert.assertEquals(Arrays.asList(0, 1, 2), consumed);
+    final CompletableFuture<Either<End, Integer>> blocked = fast.nextStage().toCompletableFuture();
+    Assert.assertFalse(blocked.isDone());
+    Assert.assertEquals(3, supplied.get());
+
+    // consuming the slowest element releases its slot
+    Assert.assertEquals(0, TestUtil.join(slow.nextStage()).right().get().intValue());
+    Assert.assertEquals(3, TestUtil.join(blocked).right().get().intValue());
+    Assert.assertEquals(4, supplied.get());
+    for (int i = 1; i < 4; i++) {
+      Assert.assertEquals(i, TestUtil.join(slow.nextStage()).right().get().intValue());
+    }
+  }
+
+  @Test
+  public void testTeeException() {
+    final List<AsyncIterator<Integer>> tees = intIterator(3)
+        .thenApply(i -> {
+          if (i == 1) {
+            throw new IllegalStateException();
+          }
+          return i;
+        })
+        .tee(2, 4);
+    for (final AsyncIterator<Integer> tee : tees) {
+      Assert.assertEquals(0, TestUtil.join(tee.nextStage()).right().get().intValue());
+      try {
+        TestUtil.join(tee.nextStage());
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      Assert.assertEquals(2, TestUtil.join(tee.nextStage()).right().get().intValue());
+      Assert.assertFalse(TestUtil.join(tee.nextStage()).isRight());
+    }
+  }
+
+  @Test
+  public void testTeeCloseReleases() {
+    final List<AsyncIterator<Integer>> tees = intIterator(10).tee(2, 1);
+    Assert.assertEquals(0, TestUtil.join(tees.get(0).nextStage()).right().get().intValue());
+    final CompletableFuture<Either<End, Integer>> blocked =
+        tees.get(0).nextStage().toCompletableFuture();
+    Assert.assertFalse(blocked.isDone());
+
+    // a closed iterator no longer holds back the others
+    TestUtil.join(tees.get(1).close());
+    Assert.assertEquals(1, TestUtil.join(blocked).right().get().intValue());
+    Assert.assertEquals(IntStream.range(2, 10).boxed().collect(Collectors.toList()),
+        TestUtil.join(tees.get(0).collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testTeeParallel() throws TimeoutException, InterruptedException {
+    final ForkJoinPool fjp = new ForkJoinPool(4);
+    final List<CompletionStage<Integer>> sums = intIterator(10000)
+        .tee(4, 8)
+        .stream()
+        .map(tee -> tee
+            .thenCompose(i -> CompletableFuture.supplyAsync(() -> i, fjp))
+            .fold(0, (acc, i) -> acc + i))
+        .collect(Collectors.toList());
+    for (final CompletionStage<Integer> sum : sums) {
+      Assert.assertEquals(IntStream.range(0, 10000).sum(),
+          TestUtil.join(sum, 10, TimeUnit.SECONDS).intValue());
+    }
+    fjp.shutdown();
+    fjp.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTeeNonPositive() {
+    intIterator(3).tee(2, 0);
+  }
+
+  @Test
+  public void testThenComposeAheadUnordered() {
+    final List<Integer> list = TestUtil.join(intIterator(1000)
+        .thenComposeAheadUnordered(c -> StageSupport.completedStage(c + 1), 2)
+        .collect(Collectors.toList()));
+    Collections.sort(list);
+    Assert.assertEquals(IntStream.range(1, 1001).boxed().collect(Collectors.toList()), list);
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedCompletionOrder() {
+    final List<CompletableFuture<Integer>> futures = IntStream.range(0, 4)
+        .mapToObj(i -> new CompletableFuture<Integer>())
+        .collect(Collectors.toList());
+    final AsyncIterator<Integer> it =
+        intIterator(4).thenComposeAheadUnordered(futures::get, 4);
+
+    final CompletableFuture<Either<End, Integer>> first = it.nextStage().toCompletableFuture();
+    Assert.assertFalse(first.isDone());
+    // the first element doesn't hold back later ones
+    futures.get(2).complete(2);
+    Assert.assertEquals(2, TestUtil.join(first).right().get().intValue());
+    futures.get(3).complete(3);
+    Assert.assertEquals(3, TestUtil.join(it.nextStage()).right().get().intValue());
+    futures.get(0).complete(0);
+    futures.get(1).complete(1);
+    Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(it.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedBounded() {
+    final AtomicInteger started = new AtomicInteger();
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    final AsyncIterator<Integer> it = intIterator(10).thenComposeAheadUnordered(i -> {
+      started.incrementAndGet();
+      final CompletableFuture<Integer> f = new CompletableFuture<>();
+      futures.add(f);
+      return f;
+    }, 3);
+
+    final CompletableFuture<Either<End, Integer>> first = it.nextStage().toCompletableFuture();
+    Assert.assertEquals(3, started.get());
+    futures.get(1).complete(1);
+    Assert.assertEquals(1, TestUtil.join(first).right().get().intValue());
+    Assert.assertEquals(4, started.get());
+
+    // completed but unconsumed results still count against the limit
+    futures.get(0).complete(0);
+    futures.get(2).complete(2);
+    Assert.assertEquals(4, started.get());
+    Assert.assertEquals(0, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(5, started.get());
+    futures.forEach(f -> f.complete(-1));
+    TestUtil.join(it.close());
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedException() {
+    final List<Either<Throwable, Integer>> results = new ArrayList<>();
+    final AsyncIterator<Integer> it = intIterator(5).thenComposeAheadUnordered(i -> {
+      if (i == 3) {
+        throw new IllegalStateException();
+      }
+      return StageSupport.completedStage(i);
+    }, 2);
+    Either<End, Integer> next;
+    do {
+      try {
+        next = TestUtil.join(it.nextStage());
+        next.forEach(end -> {
+        }, i -> results.add(Either.right(i)));
+      } catch (final CompletionException e) {
+        results.add(Either.left(e.getCause()));
+        next = null;
+      }
+    } while (next == null || next.isRight());
+    Assert.assertEquals(5, results.size());
+    Assert.assertEquals(1, results.stream().filter(Either::isLeft).count());
+    Assert.assertTrue(
+        results.stream().filter(Either::isLeft).findFirst().get().left().get()
+            instanceof IllegalStateException);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThenComposeAheadUnorderedNonPositive() {
+    intIterator(5).thenComposeAheadUnordered(StageSupport::completedStage, 0);
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedParallel()
+      throws TimeoutException, InterruptedException {
+    final ForkJoinPool fjp = new ForkJoinPool(10);
+    final AsyncIterator<Integer> mapped = intIterator(100).thenComposeAheadUnordered(
+        i -> CompletableFuture.supplyAsync(() -> {
+          try {
+            Thread.sleep(i % 10 == 0 ? 300 : 10);
+          } catch (final InterruptedException e) {
+          }
+          return i;
+        }, fjp),
+        10);
+    // slow elements only delay themselves
+    final List<Integer> list =
+        TestUtil.join(mapped.collect(Collectors.toList()), 1900, TimeUnit.MILLISECONDS);
+    Collections.sort(list);
+    Assert.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), list);
+    fjp.shutdown();
+    fjp.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFlattenAheadUnordered() {
+    final CompletableFuture<AsyncIterator<Integer>> slow = new CompletableFuture<>();
+    final AsyncIterator<Integer> flattened = intIterator(4).thenFlattenAheadUnordered(
+        i -> i == 0 ? slow : StageSupport.completedStage(repeat(i, i)), 4);
+    Assert.assertEquals(Arrays.asList(1, 2, 2, 3, 3, 3),
+        TestUtil.join(flattened.take(6).collect(Collectors.toList())));
+    slow.complete(repeat(0, 2));
+    Assert.assertEquals(Arrays.asList(0, 0),
+        TestUtil.join(flattened.collect(Collectors.toList())));
+  }
+
   @Test
   public void testFlatMap() {
     // should take [0,1,2,...,999] -> [1,2,2,3,3,3,4,4,4,4,...999,999]
@@ -404,6 +1168,599 @@ public class AsyncIteratorTest {
 
   }
 
+  @Test
+  public void testRangeBatch() {
+    final AsyncIterator<Long> it = AsyncIterator.range(0, 10);
+    Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L),
+        TestUtil.join(it.nextBatchStage(4)).right().get());
+    Assert.assertEquals(4L, TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(Arrays.asList(5L, 6L, 7L, 8L, 9L),
+        TestUtil.join(it.nextBatchStage(100)).right().get());
+    Assert.assertTrue(TestUtil.join(it.nextBatchStage(100)).isLeft());
+  }
+
+  @Test
+  public void testRangeBatchWide() {
+    // longer than Long.MAX_VALUE
+    final AsyncIterator<Long> it = AsyncIterator.range(Long.MIN_VALUE, Long.MAX_VALUE);
+    Assert.assertEquals(Arrays.asList(Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2),
+        TestUtil.join(it.nextBatchStage(3)).right().get());
+    Assert.assertEquals(Long.MIN_VALUE + 3,
+        TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(Long.MIN_VALUE + 4, TestUtil.join(it.nextBatchStage(256)).right().get()
+        .get(0).longValue());
+    Assert.assertEquals(Long.MIN_VALUE + 260, it.tryNext().right().get().longValue());
+
+    final AsyncIterator<Long> end = AsyncIterator.range(Long.MAX_VALUE - 3, Long.MAX_VALUE);
+    Assert.assertEquals(Arrays.asList(Long.MAX_VALUE - 3, Long.MAX_VALUE - 2, Long.MAX_VALUE - 1),
+        TestUtil.join(end.nextBatchStage(Integer.MAX_VALUE)).right().get());
+    Assert.assertTrue(TestUtil.join(end.nextBatchStage(1)).isLeft());
+  }
+
+  @Test
+  public void testRepeatBatch() {
+    Assert.assertEquals(Collections.nCopies(3, "a"),
+        TestUtil.join(AsyncIterator.repeat("a").nextBatchStage(3)).right().get());
+  }
+
+  @Test
+  public void testFromIteratorBatch() {
+    final AsyncIterator<Integer> it = intIterator(5);
+    Assert.assertEquals(Arrays.asList(0, 1, 2),
+        TestUtil.join(it.nextBatchStage(3)).right().get());
+    Assert.assertEquals(Arrays.asList(3, 4),
+        TestUtil.join(it.nextBatchStage(3)).right().get());
+    Assert.assertTrue(TestUtil.join(it.nextBatchStage(3)).isLeft());
+  }
+
+  @Test
+  public void testFromSpliterator() throws Exception {
+    final ForkJoinPool fjp = new ForkJoinPool(4);
+    try {
+      final List<Integer> source = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+      final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+      // each producer thread waits for a second one, which only arrives if chunks run concurrently
+      final CountDownLatch concurrent = new CountDownLatch(2);
+      final List<Integer> elements = TestUtil.join(
+          AsyncIterator.fromSpliterator(source.stream().parallel().map(i -> {
+            if (threads.add(Thread.currentThread())) {
+              concurrent.countDown();
+              try {
+                concurrent.await(10, TimeUnit.SECONDS);
+              } catch (final InterruptedException e) {
+                throw new CompletionException(e);
+              }
+            }
+            return i;
+          }).spliterator(), 4, fjp).collect(Collectors.toList()),
+          30, TimeUnit.SECONDS);
+      Assert.assertEquals(source, elements);
+      // the elements are produced on several threads of the executor
+      Assert.assertFalse(threads.contains(Thread.currentThread()));
+      Assert.assertTrue(threads.size() > 1);
+    } finally {
+      fjp.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromSpliteratorBounded() throws Exception {
+    final ForkJoinPool fjp = new ForkJoinPool(2);
+    try {
+      // an infinite source which can only be split into growing batches
+      final AtomicInteger produced = new AtomicInteger();
+      final Iterator<Integer> infinite = new Iterator<Integer>() {
+        @Override
+        public boolean hasNext() {
+          return true;
+        }
+
+        @Override
+        public Integer next() {
+          return produced.getAndIncrement();
+        }
+      };
+      final AsyncIterator<Integer> it = AsyncIterator.fromSpliterator(
+          Spliterators.spliteratorUnknownSize(infinite, Spliterator.ORDERED), 2, fjp);
+      Assert.assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()),
+          TestUtil.join(it.take(10).collect(Collectors.toList()), 10, TimeUnit.SECONDS));
+      Assert.assertTrue(produced.get() + " produced", produced.get() < 10000);
+      TestUtil.join(it.close());
+    } finally {
+      fjp.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromSpliteratorUnordered() throws Exception {
+    final Set<Integer> source = IntStream.range(0, 10000).boxed().collect(Collectors.toSet());
+    Assert.assertEquals(source,
+        TestUtil.join(AsyncIterator.fromSpliterator(source.spliterator(), 4, Runnable::run)
+            .collect(Collectors.toSet())));
+  }
+
+  @Test
+  public void testFromStream() throws Exception {
+    final AtomicInteger closed = new AtomicInteger();
+    final AsyncIterator<String> it = AsyncIterator.fromStream(
+        IntStream.range(0, 5000).mapToObj(Integer::toString).onClose(closed::incrementAndGet), 4);
+    Assert.assertEquals(
+        IntStream.range(0, 5000).mapToObj(Integer::toString).collect(Collectors.toList()),
+        TestUtil.join(it.collect(Collectors.toList()), 10, TimeUnit.SECONDS));
+    TestUtil.join(it.close());
+    Assert.assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testFromStreamParallel() throws Exception {
+    final List<Integer> source = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+    final AtomicInteger splits = new AtomicInteger();
+    final Spliterator<Integer> counting = new Spliterators.AbstractSpliterator<Integer>(
+        source.size(), Spliterator.ORDERED | Spliterator.SIZED) {
+      private final Spliterator<Integer> backing = source.spliterator();
+
+      @Override
+      public boolean tryAdvance(final Consumer<? super Integer> action) {
+        return this.backing.tryAdvance(action);
+      }
+
+      @Override
+      public Spliterator<Integer> trySplit() {
+        final Spliterator<Integer> prefix = this.backing.trySplit();
+        if (prefix != null) {
+          splits.incrementAndGet();
+        }
+        return prefix;
+      }
+    };
+    // a sequential stream with an intermediate operation, which can only be split in parallel
+    final AsyncIterator<Integer> it =
+        AsyncIterator.fromStream(StreamSupport.stream(counting, false).map(i -> i), 4);
+    Assert.assertEquals(source,
+        TestUtil.join(it.collect(Collectors.toList()), 10, TimeUnit.SECONDS));
+    Assert.assertTrue(splits.get() > 0);
+    TestUtil.join(it.close());
+  }
+
+  @Test
+  public void testFromSpliteratorUnsplittable() throws Exception {
+    final ForkJoinPool fjp = new ForkJoinPool(2);
+    try {
+      // the spliterator of a sequential stream with an intermediate operation can't be split
+      final AtomicInteger traversed = new AtomicInteger();
+      final AsyncIterator<Integer> it = AsyncIterator.fromSpliterator(
+          IntStream.range(0, 100000).boxed().peek(i -> traversed.incrementAndGet()).spliterator(),
+          2, fjp);
+      Assert.assertEquals(0, TestUtil.join(it.nextStage()).right().get().intValue());
+      // only a bounded piece of the chunk has been traversed
+      Assert.assertTrue(traversed.get() + " traversed", traversed.get() <= 1024);
+      Assert.assertEquals(IntStream.range(1, 100000).boxed().collect(Collectors.toList()),
+          TestUtil.join(it.collect(Collectors.toList()), 10, TimeUnit.SECONDS));
+      TestUtil.join(it.close());
+    } finally {
+      fjp.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromStreamException() {
+    final AsyncIterator<Integer> it = AsyncIterator.fromStream(IntStream.range(0, 10).boxed()
+        .map(i -> {
+          if (i == 5) {
+            throw new IllegalStateException();
+          }
+          return i;
+        }), 2);
+    try {
+      TestUtil.join(it.collect(Collectors.toList()));
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testFromBlockingIterator() throws Exception {
+    final ExecutorService executor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "blocking-reader"));
+    try {
+      final Set<String> threads = ConcurrentHashMap.newKeySet();
+      final Iterator<Integer> source = IntStream.range(0, 1000).peek(i -> {
+        threads.add(Thread.currentThread().getName());
+      }).iterator();
+      final List<Integer> elements = TestUtil.join(
+          AsyncIterator.fromBlockingIterator(source, executor, 16).collect(Collectors.toList()),
+          10, TimeUnit.SECONDS);
+      Assert.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), elements);
+      Assert.assertEquals(Collections.singleton("blocking-reader"), threads);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromBlockingIteratorBounded() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final AtomicInteger produced = new AtomicInteger();
+      final AsyncIterator<Integer> it = AsyncIterator.fromBlockingIterator(
+          IntStream.iterate(0, i -> i + 1).peek(i -> produced.incrementAndGet()).iterator(),
+          executor, 4);
+      Assert.assertEquals(Arrays.asList(0, 1),
+          TestUtil.join(it.take(2).collect(Collectors.toList()), 10, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      // 2 consumed, 4 buffered, and at most 1 more waiting to be buffered
+      Assert.assertTrue(produced.get() + " produced", produced.get() <= 7);
+      TestUtil.join(it.close(), 10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromBlockingIteratorException() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final AsyncIterator<Integer> it = AsyncIterator.fromBlockingIterator(
+          IntStream.range(0, 3).boxed().map(i -> {
+            if (i == 1) {
+              throw new IllegalStateException();
+            }
+            return i;
+          }).iterator(), executor, 2);
+      Assert.assertEquals(0, TestUtil.join(it.nextStage()).right().get().intValue());
+      try {
+        TestUtil.join(it.nextStage());
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      TestUtil.join(it.close(), 10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromBlockingIteratorCloseInterrupts() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final BlockingQueue<Integer> source = new LinkedBlockingQueue<>();
+      // counted down by the read of the first element, then by the read which blocks
+      final CountDownLatch blocked = new CountDownLatch(2);
+      final AtomicBoolean interrupted = new AtomicBoolean();
+      final Iterator<Integer> blockingIterator = new Iterator<Integer>() {
+        Integer next;
+
+        @Override
+        public boolean hasNext() {
+          if (this.next == null) {
+            try {
+              blocked.countDown();
+              this.next = source.take();
+            } catch (final InterruptedException e) {
+              interrupted.set(true);
+              throw new IllegalStateException(e);
+            }
+          }
+          return true;
+        }
+
+        @Override
+        public Integer next() {
+          hasNext();
+          final Integer ret = this.next;
+          this.next = null;
+          return ret;
+        }
+      };
+      final AsyncIterator<Integer> it = AsyncIterator.fromBlockingIterator(blockingIterator,
+          executor, 4);
+      source.add(1);
+      Assert.assertEquals(1, TestUtil.join(it.nextStage(), 10, TimeUnit.SECONDS).right().get()
+          .intValue());
+      Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      TestUtil.join(it.close(), 10, TimeUnit.SECONDS);
+      Assert.assertTrue(interrupted.get());
+      // the interrupted reader doesn't hold the executor
+      Assert.assertEquals(1, TestUtil.join(
+          CompletableFuture.supplyAsync(() -> 1, executor), 10, TimeUnit.SECONDS).intValue());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFromBlockingIteratorCloseBeforeStart() throws Exception {
+    final AtomicInteger executed = new AtomicInteger();
+    final AsyncIterator<Integer> it = AsyncIterator.fromBlockingIterator(
+        Arrays.asList(1, 2, 3).iterator(), r -> {
+          executed.incrementAndGet();
+          r.run();
+        }, 1);
+    TestUtil.join(it.close());
+    Assert.assertEquals(0, executed.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFromBlockingIteratorNonPositive() {
+    AsyncIterator.fromBlockingIterator(Arrays.asList(1).iterator(), Runnable::run, 0);
+  }
+
+  @Test
+  public void testToStream() {
+    try (Stream<Integer> stream = intIterator(10000).toStream(1)) {
+      Assert.assertFalse(stream.isParallel());
+      Assert.assertEquals(IntStream.range(0, 10000).boxed().collect(Collectors.toList()),
+          stream.collect(Collectors.toList()));
+    }
+    try (Stream<Integer> stream = intIterator(10000).toStream(4)) {
+      Assert.assertTrue(stream.isParallel());
+      Assert.assertEquals(IntStream.range(0, 10000).boxed().collect(Collectors.toList()),
+          stream.map(i -> i).collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testToStreamPending() throws Exception {
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final CompletableFuture<Integer> sum = CompletableFuture.supplyAsync(() -> {
+      try (Stream<Integer> stream = queue.toStream(4)) {
+        return stream.mapToInt(i -> i).sum();
+      }
+    });
+    for (int i = 0; i < 1000; i++) {
+      queue.send(i);
+    }
+    queue.terminate();
+    Assert.assertEquals(IntStream.range(0, 1000).sum(),
+        TestUtil.join(sum, 10, TimeUnit.SECONDS).intValue());
+  }
+
+  @Test
+  public void testToStreamException() {
+    final AsyncIterator<Integer> it = intIterator(10).thenApply(i -> {
+      if (i == 5) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    try (Stream<Integer> stream = it.toStream(1)) {
+      stream.forEach(i -> {
+      });
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testToStreamNonPositive() {
+    intIterator(3).toStream(0);
+  }
+
+  @Test
+  public void testConcatBatch() {
+    final AsyncIterator<Integer> it =
+        AsyncIterator.concat(sortedIts(Arrays.asList(2, 0, 3)));
+    // a batch does not span the concatenated iterators
+    Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(it.nextBatchStage(10)).right().get());
+    Assert.assertEquals(Arrays.asList(2, 3, 4),
+        TestUtil.join(it.nextBatchStage(10)).right().get());
+    Assert.assertTrue(TestUtil.join(it.nextBatchStage(10)).isLeft());
+  }
+
+  @Test
+  public void testThenApplyFilterBatch() {
+    final AsyncIterator<Integer> it =
+        intIterator(20).filter(i -> i % 2 == 0).thenApply(i -> i * 10);
+    // a batch may hold fewer elements than requested, but never more
+    final List<Integer> actual = new ArrayList<>();
+    Either<End, List<Integer>> batch;
+    while ((batch = TestUtil.join(it.nextBatchStage(3))).isRight()) {
+      final List<Integer> elements = batch.right().get();
+      Assert.assertTrue(elements.size() >= 1 && elements.size() <= 3);
+      actual.addAll(elements);
+      // interleave single elements with the batches
+      TestUtil.join(it.nextStage()).forEach(e -> {
+      }, actual::add);
+    }
+    Assert.assertEquals(
+        IntStream.range(0, 10).map(i -> i * 20).boxed().collect(Collectors.toList()), actual);
+  }
+
+  @Test
+  public void testThenApplyBatchThrows() {
+    final AsyncIterator<Integer> it = intIterator(5).thenApply(i -> {
+      if (i == 2) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    // elements before the failure are emitted, the exception is emitted by the next call
+    Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(it.nextBatchStage(5)).right().get());
+    try {
+      TestUtil.join(it.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(Arrays.asList(3, 4), TestUtil.join(it.nextBatchStage(5)).right().get());
+  }
+
+  @Test
+  public void testFilterBatchThrows() {
+    final AsyncIterator<Integer> it = intIterator(5).filter(i -> {
+      if (i == 0) {
+        throw new IllegalStateException();
+      }
+      return true;
+    });
+    try {
+      TestUtil.join(it.nextBatchStage(5));
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(Arrays.asList(1, 2, 3, 4),
+        TestUtil.join(it.nextBatchStage(5)).right().get());
+  }
+
+  @Test
+  public void testFusion() {
+    final AsyncIterator<String> fused = intIterator(20)
+        .thenApply(i -> i * 3)
+        .filter(i -> i % 2 == 0)
+        .thenApply(i -> i + 1)
+        .filterApply(i -> i % 4 == 1 ? Optional.of("" + i) : Optional.empty());
+    Assert.assertTrue(fused instanceof AsyncIterators.FusedAsyncIterator);
+    Assert.assertEquals(
+        IntStream.range(0, 20)
+            .map(i -> i * 3)
+            .filter(i -> i % 2 == 0)
+            .map(i -> i + 1)
+            .filter(i -> i % 4 == 1)
+            .mapToObj(i -> "" + i)
+            .collect(Collectors.toList()),
+        TestUtil.join(fused.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testFusionPending() {
+    // a filtered element is skipped while the fused iterator's stage is pending
+    final AtomicInteger stages = new AtomicInteger();
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> source = () -> {
+      stages.incrementAndGet();
+      return queue.nextStage();
+    };
+    final AsyncIterator<Integer> fused = source
+        .thenApply(i -> i + 1)
+        .thenApply(i -> i * 2)
+        .filter(i -> i > 2)
+        .thenApply(i -> i - 1);
+    final CompletableFuture<Either<End, Integer>> first = fused.nextStage().toCompletableFuture();
+    queue.send(0);
+    Assert.assertFalse(first.isDone());
+    queue.send(1);
+    Assert.assertEquals(3, TestUtil.join(first).right().get().intValue());
+    Assert.assertEquals(2, stages.get());
+  }
+
+  @Test
+  public void testFusionAfterAdvance() {
+    final AsyncIterator<Integer> mapped = intIterator(10).thenApply(i -> i * 2);
+    Assert.assertEquals(Arrays.asList(0, 2), TestUtil.join(mapped.nextBatchStage(2)).right().get());
+    // an iterator which was advanced isn't fused, so it doesn't lose its buffered elements
+    final AsyncIterator<Integer> filtered = mapped.filter(i -> i % 3 == 0);
+    Assert.assertFalse(filtered instanceof AsyncIterators.FusedAsyncIterator);
+    Assert.assertEquals(Arrays.asList(6, 12, 18),
+        TestUtil.join(filtered.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testFusionThrows() {
+    final AsyncIterator<Integer> fused = intIterator(5)
+        .thenApply(i -> {
+          if (i == 2) {
+            throw new IllegalStateException();
+          }
+          return i;
+        })
+        .filter(i -> i != 3)
+        .thenApply(i -> -i);
+    Assert.assertEquals(Arrays.asList(0, -1), TestUtil.join(fused.nextBatchStage(5)).right().get());
+    try {
+      TestUtil.join(fused.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(Arrays.asList(-4), TestUtil.join(fused.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testFusionFilterStackOverflow() {
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final CompletableFuture<Either<End, Integer>> next = queue
+        .thenApply(i -> i + 1)
+        .filter(i -> i > 100000)
+        .nextStage()
+        .toCompletableFuture();
+    for (int i = 0; i <= 100000; i++) {
+      queue.send(i);
+    }
+    Assert.assertEquals(100001, TestUtil.join(next).right().get().intValue());
+  }
+
+  @Test
+  public void testTryNext() {
+    final AsyncIterator<Long> it = AsyncIterator.range(0, 3);
+    Assert.assertEquals(0L, it.tryNext().right().get().longValue());
+    Assert.assertEquals(1L, TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(2L, it.tryNext().right().get().longValue());
+    Assert.assertTrue(it.tryNext().isLeft());
+
+    final AsyncIterator<Integer> filtered = intIterator(10).filter(i -> i > 6).thenApply(i -> -i);
+    Assert.assertEquals(-7, filtered.tryNext().right().get().intValue());
+    Assert.assertEquals(Arrays.asList(-8, -9),
+        TestUtil.join(filtered.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testTryNextPending() {
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> it = queue.thenApply(i -> i + 1);
+    Assert.assertNull(it.tryNext());
+    queue.send(1);
+    queue.send(2);
+    Assert.assertEquals(2, it.tryNext().right().get().intValue());
+    Assert.assertEquals(3, it.tryNext().right().get().intValue());
+    Assert.assertNull(it.tryNext());
+
+    // the default implementation never has an element ready
+    final AsyncIterator<Integer> composed =
+        intIterator(5).thenCompose(StageSupport::completedStage);
+    Assert.assertNull(composed.tryNext());
+    Assert.assertEquals(0, TestUtil.join(composed.nextStage()).right().get().intValue());
+  }
+
+  @Test
+  public void testTryNextThrows() {
+    final AsyncIterator<Integer> it = intIterator(3).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    Assert.assertEquals(0, it.tryNext().right().get().intValue());
+    try {
+      it.tryNext();
+      Assert.fail("expected exception");
+    } catch (final IllegalStateException e) {
+    }
+    Assert.assertEquals(2, it.tryNext().right().get().intValue());
+    Assert.assertTrue(it.tryNext().isLeft());
+  }
+
+  @Test
+  public void testConcatTryNext() throws Exception {
+    final AsyncIterator<Integer> it = AsyncIterator.concat(sortedIts(Arrays.asList(2, 3)));
+    Assert.assertEquals(0, it.tryNext().right().get().intValue());
+    Assert.assertEquals(1, it.tryNext().right().get().intValue());
+    // the end of the first iterator is left to nextStage
+    Assert.assertNull(it.tryNext());
+    Assert.assertNull(it.tryNext());
+    Assert.assertEquals(2, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(3, it.tryNext().right().get().intValue());
+    verifySorted(AsyncIterator.concat(sortedIts(Arrays.asList(2, 0, 3))), 5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveBatchSize() {
+    AsyncIterator.range(0, 5).nextBatchStage(0);
+  }
+
   @Test
   public void testZip() throws Exception {
     final List<Integer> zipped =
@@ -454,6 +1811,90 @@ public class AsyncIteratorTest {
         IntStream.range(0, 10).boxed().collect(Collectors.toList()));
   }
 
+  @Test
+  public void testParallelCollect() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Assert.assertEquals(IntStream.range(0, 100000).boxed().collect(Collectors.toSet()),
+          TestUtil.join(intIterator(100000).collect(Collectors.toSet(), 4, executor),
+              10, TimeUnit.SECONDS));
+      // non identity finisher
+      Assert.assertEquals(4.5,
+          TestUtil.join(intIterator(10).collect(Collectors.averagingInt(i -> i), 3, executor),
+              10, TimeUnit.SECONDS),
+          .001);
+      Assert.assertEquals(Collections.emptyList(),
+          TestUtil.join(intIterator(0).collect(Collectors.toList(), 4, executor)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelFold() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+      final AtomicInteger running = new AtomicInteger();
+      final AtomicInteger maxRunning = new AtomicInteger();
+      final CompletionStage<Long> sum = AsyncIterator.range(0, 100000)
+          .fold(0L, (acc, l) -> {
+            threads.add(Thread.currentThread());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            running.decrementAndGet();
+            return acc + l;
+          }, Long::sum, 4, executor);
+      Assert.assertEquals(LongStream.range(0, 100000).sum(),
+          TestUtil.join(sum, 10, TimeUnit.SECONDS).longValue());
+      Assert.assertTrue(maxRunning.get() <= 4);
+      Assert.assertTrue(threads.stream().noneMatch(Thread.currentThread()::equals));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelCollectException() {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final CompletionStage<Integer> accumulatorThrows = intIterator(1000)
+          .fold(0, (acc, i) -> {
+            if (i == 500) {
+              throw new IllegalStateException();
+            }
+            return acc + i;
+          }, Integer::sum, 2, executor);
+      try {
+        TestUtil.join(accumulatorThrows);
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+
+      final CompletionStage<List<Integer>> iteratorThrows = intIterator(1000)
+          .thenApply(i -> {
+            if (i == 500) {
+              throw new IllegalStateException();
+            }
+            return i;
+          })
+          .collect(Collectors.toList(), 2, executor);
+      try {
+        TestUtil.join(iteratorThrows);
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParallelCollectNonPositive() {
+    intIterator(3).collect(Collectors.toList(), 0, Runnable::run);
+  }
+
   @Test
   public void testUnordered() throws Exception {
     final List<CompletableFuture<Integer>> futures =
@@ -606,6 +2047,292 @@ public class AsyncIteratorTest {
                 .collect(Collectors.toSet())));
   }
 
+  @Test
+  public void testTimedBatchBySize() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      Assert.assertEquals(
+          Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7), Arrays.asList(8, 9)),
+          TestUtil.join(intIterator(10)
+              .batch(Collectors.toList(), 4, 1, TimeUnit.HOURS, scheduler)
+              .collect(Collectors.toList())));
+      Assert.assertEquals(Collections.emptyList(),
+          TestUtil.join(AsyncIterator.<Integer>empty()
+              .batch(Collectors.toList(), 4, 1, TimeUnit.HOURS, scheduler)
+              .collect(Collectors.toList())));
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimedBatchByTime() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+      final AsyncIterator<List<Integer>> batches =
+          queue.batch(Collectors.toList(), 10, 20, TimeUnit.MILLISECONDS, scheduler);
+      queue.send(1);
+      queue.send(2);
+      // the batch expires while the queue's nextStage is pending
+      Assert.assertEquals(Arrays.asList(1, 2),
+          TestUtil.join(batches.nextStage(), 1, TimeUnit.SECONDS).right().get());
+
+      // the element of the pending stage starts the next batch
+      final CompletableFuture<Either<End, List<Integer>>> second =
+          batches.nextStage().toCompletableFuture();
+      queue.send(3);
+      queue.terminate();
+      Assert.assertEquals(Arrays.asList(3),
+          TestUtil.join(second, 1, TimeUnit.SECONDS).right().get());
+      Assert.assertFalse(TestUtil.join(batches.nextStage()).isRight());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimedBatchException() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncIterator<List<Integer>> batches = intIterator(6)
+          .thenApply(i -> {
+            if (i == 3) {
+              throw new IllegalStateException();
+            }
+            return i;
+          })
+          .batch(Collectors.toList(), 2, 1, TimeUnit.HOURS, scheduler);
+      Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(batches.nextStage()).right().get());
+      try {
+        TestUtil.join(batches.nextStage());
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      Assert.assertEquals(Arrays.asList(4, 5), TestUtil.join(batches.nextStage()).right().get());
+      Assert.assertFalse(TestUtil.join(batches.nextStage()).isRight());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimedBatchConcurrent() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+      final CompletableFuture<Void> produced = CompletableFuture.runAsync(() -> {
+        for (int i = 0; i < 10000; i++) {
+          queue.send(i);
+          if (i % 100 == 0) {
+            try {
+              Thread.sleep(1);
+            } catch (final InterruptedException e) {
+            }
+          }
+        }
+        queue.terminate();
+      });
+      final List<List<Integer>> batches = TestUtil.join(
+          queue.batch(Collectors.toList(), 7, 100, TimeUnit.MICROSECONDS, scheduler)
+              .collect(Collectors.toList()),
+          10, TimeUnit.SECONDS);
+      TestUtil.join(produced);
+      final List<Integer> flattened = new ArrayList<>();
+      for (final List<Integer> batch : batches) {
+        Assert.assertTrue(batch.size() >= 1 && batch.size() <= 7);
+        flattened.addAll(batch);
+      }
+      Assert.assertEquals(IntStream.range(0, 10000).boxed().collect(Collectors.toList()),
+          flattened);
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTimedBatchNonPositiveSize() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      intIterator(3).batch(Collectors.toList(), 0, 1, TimeUnit.SECONDS, scheduler);
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private static class SumAggregator implements WindowAggregator<Integer, Integer> {
+    int sum;
+    int adds;
+    int removes;
+
+    @Override
+    public void add(final Integer i) {
+      this.sum += i;
+      this.adds++;
+    }
+
+    @Override
+    public void remove(final Integer i) {
+      this.sum -= i;
+      this.removes++;
+    }
+
+    @Override
+    public Integer result() {
+      return this.sum;
+    }
+  }
+
+  @Test
+  public void testWindowSliding() {
+    final SumAggregator aggregator = new SumAggregator();
+    final List<Integer> sums =
+        TestUtil.join(intIterator(20).window(5, 2, () -> aggregator).collect(Collectors.toList()));
+    final List<Integer> expected = new ArrayList<>();
+    for (int end = 5; end <= 20; end += 2) {
+      expected.add(IntStream.range(end - 5, end).sum());
+    }
+    // the trailing element is reflected in a final window
+    expected.add(IntStream.range(15, 20).sum());
+    Assert.assertEquals(expected, sums);
+
+    // each element is added and removed once rather than once per window
+    Assert.assertEquals(20, aggregator.adds);
+    Assert.assertEquals(15, aggregator.removes);
+  }
+
+  @Test
+  public void testWindowTumbling() {
+    final List<SumAggregator> aggregators = new ArrayList<>();
+    final Supplier<SumAggregator> supplier = () -> {
+      final SumAggregator aggregator = new SumAggregator();
+      aggregators.add(aggregator);
+      return aggregator;
+    };
+    Assert.assertEquals(Arrays.asList(0 + 1 + 2, 3 + 4 + 5, 6 + 7 + 8, 9),
+        TestUtil.join(intIterator(10).window(3, 3, supplier).collect(Collectors.toList())));
+    Assert.assertEquals(4, aggregators.size());
+    Assert.assertTrue(aggregators.stream().allMatch(a -> a.removes == 0));
+  }
+
+  @Test
+  public void testWindowPartial() {
+    Assert.assertEquals(Arrays.asList(0 + 1 + 2),
+        TestUtil.join(intIterator(3).window(5, 1, SumAggregator::new)
+            .collect(Collectors.toList())));
+    Assert.assertEquals(Arrays.asList(),
+        TestUtil.join(intIterator(0).window(5, 1, SumAggregator::new)
+            .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testWindowException() {
+    final AsyncIterator<Integer> windows = intIterator(6)
+        .thenApply(i -> {
+          if (i == 2) {
+            throw new IllegalStateException();
+          }
+          return i;
+        })
+        .window(2, 1, SumAggregator::new);
+    Assert.assertEquals(0 + 1, TestUtil.join(windows.nextStage()).right().get().intValue());
+    try {
+      TestUtil.join(windows.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // the failed element never entered the window
+    Assert.assertEquals(Arrays.asList(1 + 3, 3 + 4, 4 + 5),
+        TestUtil.join(windows.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testWindowAggregatorException() {
+    final AsyncIterator<Integer> rejectAdd = intIterator(6).window(2, 1, () -> new SumAggregator() {
+      @Override
+      public void add(final Integer i) {
+        if (i == 3) {
+          throw new IllegalStateException();
+        }
+        super.add(i);
+      }
+    });
+    Assert.assertEquals(Arrays.asList(0 + 1, 1 + 2),
+        TestUtil.join(rejectAdd.take(2).collect(Collectors.toList())));
+    try {
+      TestUtil.join(rejectAdd.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // the rejected element never entered the window
+    Assert.assertEquals(Arrays.asList(2 + 4, 4 + 5),
+        TestUtil.join(rejectAdd.collect(Collectors.toList())));
+
+    final AsyncIterator<Integer> rejectRemove =
+        intIterator(6).window(2, 1, () -> new SumAggregator() {
+          @Override
+          public void remove(final Integer i) {
+            if (i == 1) {
+              throw new IllegalStateException();
+            }
+            super.remove(i);
+          }
+        });
+    Assert.assertEquals(Arrays.asList(0 + 1, 1 + 2),
+        TestUtil.join(rejectRemove.take(2).collect(Collectors.toList())));
+    try {
+      TestUtil.join(rejectRemove.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // the aggregate no longer matches the window
+    Assert.assertTrue(TestUtil.join(rejectRemove.nextStage()).isLeft());
+  }
+
+  @Test
+  public void testWindowStackOverflow() {
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final CompletionStage<List<Integer>> sums =
+        queue.window(100000, 1, SumAggregator::new).collect(Collectors.toList());
+    for (int i = 0; i < 100000; i++) {
+      queue.send(1);
+    }
+    queue.terminate();
+    Assert.assertEquals(Arrays.asList(100000), TestUtil.join(sums));
+  }
+
+  @Test
+  public void testWindowByTime() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+      final AsyncIterator<Integer> windows =
+          queue.window(20, TimeUnit.MILLISECONDS, scheduler, SumAggregator::new);
+      queue.send(1);
+      queue.send(2);
+      Assert.assertEquals(3, TestUtil.join(windows.nextStage(), 1, TimeUnit.SECONDS)
+          .right().get().intValue());
+
+      final CompletableFuture<Either<End, Integer>> second =
+          windows.nextStage().toCompletableFuture();
+      queue.send(3);
+      Assert.assertEquals(3, TestUtil.join(second, 1, TimeUnit.SECONDS).right().get().intValue());
+      queue.terminate();
+      Assert.assertFalse(TestUtil.join(windows.nextStage()).isRight());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowSlideTooLarge() {
+    intIterator(3).window(2, 3, SumAggregator::new);
+  }
+
   @Test
   public void testFind() {
     Assert.assertEquals(
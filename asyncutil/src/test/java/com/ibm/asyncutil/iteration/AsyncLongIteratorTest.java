@@ -0,0 +1,151 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.TestUtil;
+
+public class AsyncLongIteratorTest {
+
+  @Test
+  public void testRange() {
+    Assert.assertArrayEquals(new long[0],
+        TestUtil.join(AsyncLongIterator.range(0, 0).collectToArray()));
+    Assert.assertArrayEquals(new long[] {-3, -2, -1, 0, 1, 2},
+        TestUtil.join(AsyncLongIterator.range(-3, 3).collectToArray()));
+    Assert.assertArrayEquals(
+        new long[] {Long.MAX_VALUE - 3, Long.MAX_VALUE - 2, Long.MAX_VALUE - 1},
+        TestUtil.join(
+            AsyncLongIterator.range(Long.MAX_VALUE - 3, Long.MAX_VALUE).collectToArray()));
+    Assert.assertArrayEquals(LongStream.range(0, 1000).toArray(),
+        TestUtil.join(AsyncLongIterator.range(0, 1000).collectToArray()));
+  }
+
+  @Test
+  public void testRangeBatch() {
+    final AsyncLongIterator it = AsyncLongIterator.range(Long.MIN_VALUE, Long.MAX_VALUE);
+    final List<Long> batch = new ArrayList<>();
+    Assert.assertTrue(TestUtil.join(it.nextBatch(3, batch::add)));
+    Assert.assertEquals(Arrays.asList(Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2),
+        batch);
+
+    final AsyncLongIterator small = AsyncLongIterator.range(0, 2);
+    batch.clear();
+    Assert.assertTrue(TestUtil.join(small.nextBatch(5, batch::add)));
+    Assert.assertEquals(Arrays.asList(0L, 1L), batch);
+    Assert.assertFalse(TestUtil.join(small.nextBatch(5, batch::add)));
+    Assert.assertEquals(2, batch.size());
+  }
+
+  @Test
+  public void testInfiniteRange() {
+    final List<Long> batch = new ArrayList<>();
+    Assert.assertTrue(TestUtil.join(AsyncLongIterator.infiniteRange(5).nextBatch(3, batch::add)));
+    Assert.assertEquals(Arrays.asList(5L, 6L, 7L), batch);
+    Assert.assertEquals(Arrays.asList(10L, 11L),
+        TestUtil.join(AsyncLongIterator.infiniteRange(10).boxed().take(2)
+            .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testMapFilterSum() {
+    final long count = 100000;
+    final long expected =
+        LongStream.range(0, count).filter(i -> i % 3 == 0).map(i -> i * 2).sum();
+    final CompletionStage<Long> actual = AsyncLongIterator.range(0, count)
+        .filter(i -> i % 3 == 0)
+        .map(i -> i * 2)
+        .sum();
+    Assert.assertEquals(expected, TestUtil.join(actual).longValue());
+  }
+
+  @Test
+  public void testFilterAll() {
+    Assert.assertArrayEquals(new long[0],
+        TestUtil.join(AsyncLongIterator.range(0, 10000).filter(i -> false).collectToArray()));
+  }
+
+  @Test
+  public void testFold() {
+    Assert.assertEquals(120L,
+        TestUtil.join(AsyncLongIterator.range(1, 6).fold(1, (a, b) -> a * b)).longValue());
+  }
+
+  @Test
+  public void testFromAsyncIterator() {
+    final List<String> strings = Arrays.asList("a", "bb", "ccc");
+    Assert.assertEquals(6L,
+        TestUtil.join(AsyncIterator.fromIterator(strings.iterator())
+            .mapToLong(String::length)
+            .sum()).longValue());
+
+    // through an iterator which doesn't have native batches
+    Assert.assertArrayEquals(new long[] {1, 2, 3},
+        TestUtil.join(AsyncIterator.fromIterator(strings.iterator())
+            .thenCompose(s -> AsyncIterator.once(s).collect(Collectors.joining()))
+            .mapToLong(String::length)
+            .collectToArray()));
+  }
+
+  @Test
+  public void testBoxed() {
+    final AsyncIterator<Long> boxed = AsyncLongIterator.range(0, 5).boxed();
+    Assert.assertEquals(0L, TestUtil.join(boxed.nextStage()).right().get().longValue());
+    Assert.assertEquals(Arrays.asList(1L, 2L),
+        TestUtil.join(boxed.nextBatchStage(2)).right().get());
+    Assert.assertEquals(Arrays.asList("3", "4"),
+        TestUtil.join(boxed.thenApply(String::valueOf).collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testMapThrows() {
+    final CompletionStage<Long> sum = AsyncLongIterator.range(0, 10)
+        .map(i -> {
+          if (i == 5) {
+            throw new IllegalStateException();
+          }
+          return i;
+        })
+        .sum();
+    try {
+      TestUtil.join(sum);
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testMapToLongThrows() {
+    final CompletionStage<long[]> array = AsyncIterator.range(0, 10)
+        .thenApply(i -> i == 5 ? null : i)
+        .mapToLong(Long::longValue)
+        .collectToArray();
+    try {
+      TestUtil.join(array);
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveBatchSize() {
+    AsyncLongIterator.range(0, 5).nextBatch(0, l -> {
+    });
+  }
+}
@@ -6,9 +6,18 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.TestUtil;
 
 public class AsyncQueueTest extends AbstractAsyncQueueTest {
 
@@ -39,6 +48,32 @@ public class AsyncQueueTest extends AbstractAsyncQueueTest {
     return this.queue.poll();
   }
 
+  @Test
+  public void nextBatchStageTest() {
+    this.queue.send(1);
+    this.queue.send(2);
+    this.queue.send(3);
+    Assert.assertEquals(Arrays.asList(1, 2),
+        TestUtil.join(this.queue.nextBatchStage(2)).right().get());
+    Assert.assertEquals(Arrays.asList(3),
+        TestUtil.join(this.queue.nextBatchStage(5)).right().get());
+
+    // a pending batch completes with the first element sent
+    final CompletableFuture<Either<End, List<Integer>>> waiting =
+        this.queue.nextBatchStage(5).toCompletableFuture();
+    Assert.assertFalse(waiting.isDone());
+    this.queue.send(4);
+    Assert.assertEquals(Arrays.asList(4), TestUtil.join(waiting).right().get());
+
+    // the end of the queue is not consumed by a batch
+    this.queue.send(5);
+    this.queue.terminate();
+    Assert.assertEquals(Arrays.asList(5),
+        TestUtil.join(this.queue.nextBatchStage(5)).right().get());
+    Assert.assertTrue(TestUtil.join(this.queue.nextBatchStage(5)).isLeft());
+    Assert.assertTrue(TestUtil.join(this.queue.nextStage()).isLeft());
+  }
+
 }
 
 
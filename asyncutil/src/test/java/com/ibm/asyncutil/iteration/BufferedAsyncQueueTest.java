@@ -6,6 +6,7 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -93,6 +94,32 @@ public class BufferedAsyncQueueTest extends AbstractAsyncQueueTest {
     this.queue.consume().toCompletableFuture().join();
   }
 
+  @Test
+  public void nextBatchStageReleasesTest() {
+    IntStream.range(0, BUFFER).forEach(this.queue::send);
+    final List<CompletableFuture<Boolean>> waiting = IntStream.range(BUFFER, BUFFER + 3)
+        .mapToObj(this.queue::send)
+        .map(CompletionStage::toCompletableFuture)
+        .collect(Collectors.toList());
+    Assert.assertFalse(waiting.stream().anyMatch(Future::isDone));
+
+    // taking a batch of 2 admits two of the waiting senders
+    Assert.assertEquals(Arrays.asList(0, 1),
+        this.queue.nextBatchStage(2).toCompletableFuture().join().right().get());
+    Assert.assertTrue(waiting.get(0).isDone());
+    Assert.assertTrue(waiting.get(1).isDone());
+    Assert.assertFalse(waiting.get(2).isDone());
+
+    Assert.assertEquals(Arrays.asList(2, 3, 4, 5, 6),
+        this.queue.nextBatchStage(BUFFER).toCompletableFuture().join().right().get());
+    Assert.assertTrue(waiting.get(2).join());
+
+    this.queue.terminate();
+    Assert.assertEquals(Arrays.asList(7),
+        this.queue.nextBatchStage(BUFFER).toCompletableFuture().join().right().get());
+    Assert.assertTrue(this.queue.nextBatchStage(BUFFER).toCompletableFuture().join().isLeft());
+  }
+
   @Test
   public void asyncCloseContractTest() {
     // accepted right away
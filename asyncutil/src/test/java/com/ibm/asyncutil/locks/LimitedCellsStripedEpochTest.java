@@ -0,0 +1,17 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+public class LimitedCellsStripedEpochTest extends AbstractAsyncEpochTest {
+
+  @Override
+  AsyncEpoch newEpoch() {
+    // contention rehashes after the first two cells instead of growing
+    return new StripedEpoch(2);
+  }
+
+}